@@ -0,0 +1,34 @@
+package org.checkerframework.checker.test.junit;
+
+import java.io.File;
+import java.util.List;
+import org.checkerframework.framework.test.CheckerFrameworkPerDirectoryTest;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * JUnit tests for the Nullness Checker with a stub file and an ajava directory that are read
+ * lazily, one class at a time.
+ */
+public class NullnessLazyAnnotationFilesTest extends CheckerFrameworkPerDirectoryTest {
+
+  /**
+   * Create a NullnessLazyAnnotationFilesTest.
+   *
+   * @param testFiles the files containing test code, which will be type-checked
+   */
+  public NullnessLazyAnnotationFilesTest(List<File> testFiles) {
+    super(
+        testFiles,
+        org.checkerframework.checker.nullness.NullnessChecker.class,
+        "nullness-lazy-annotation-files",
+        // Warnings about stub files require them to be processed eagerly.
+        "-AstubNoWarnIfNotFound",
+        "-Astubs=tests/nullness-lazy-annotation-files/lazy.astub",
+        "-Aajava=tests/nullness-lazy-annotation-files/ajava/");
+  }
+
+  @Parameters
+  public static String[] getTestDirs() {
+    return new String[] {"nullness-lazy-annotation-files"};
+  }
+}
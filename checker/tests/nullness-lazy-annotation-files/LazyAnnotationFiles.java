@@ -0,0 +1,26 @@
+// Tests that the annotations of a class in a stub file or an ajava file are used when they are
+// read lazily, the first time the class is used.
+
+public class LazyAnnotationFiles {
+
+  void stubClasses(StringBuffer buffer, Short s) {
+    // :: error: (dereference.of.nullable)
+    buffer.toString().length();
+    // :: error: (dereference.of.nullable)
+    s.toString().length();
+  }
+
+  // Both classes are declared in one ajava file, which is read once.
+  void ajavaClasses(StringBuilder builder, Integer i) {
+    // :: error: (dereference.of.nullable)
+    builder.toString().length();
+    // :: error: (dereference.of.nullable)
+    i.toString().length();
+  }
+
+  // The ajava file is found by the package that it declares, not by its directory.
+  void misplacedAjavaClass(Long l) {
+    // :: error: (dereference.of.nullable)
+    l.toString().length();
+  }
+}
@@ -131,6 +131,7 @@ import org.checkerframework.framework.util.ContractsFromMethod;
 import org.checkerframework.framework.util.FieldInvariants;
 import org.checkerframework.framework.util.JavaParserUtil;
 import org.checkerframework.framework.util.StringToJavaExpression;
+import org.checkerframework.framework.util.TimeBudget;
 import org.checkerframework.framework.util.typeinference8.InferenceResult;
 import org.checkerframework.javacutil.AnnotationBuilder;
 import org.checkerframework.javacutil.AnnotationMirrorSet;
@@ -427,6 +428,7 @@ public class BaseTypeVisitor<Factory extends GenericAnnotatedTypeFactory<?, ?, ?
     if (tree == null) {
       return null;
     }
+    atypeFactory.getTimeBudget().check();
     if (getCurrentPath() != null) {
       this.atypeFactory.setVisitorTreePath(new TreePath(getCurrentPath(), tree));
     }
@@ -577,21 +579,30 @@ public class BaseTypeVisitor<Factory extends GenericAnnotatedTypeFactory<?, ?, ?
     long startMillis = System.currentTimeMillis();
     Tree startSlowTypeCheckingTree = slowTypecheckingTree;
 
-    atypeFactory.preProcessClassTree(tree);
-
+    TimeBudget timeBudget = atypeFactory.getTimeBudget();
+    boolean startedBudget = timeBudget.startClass();
     TreePath preTreePath = atypeFactory.getVisitorTreePath();
     MethodTree preMT = methodTree;
+    try {
+      atypeFactory.preProcessClassTree(tree);
 
-    // Don't use atypeFactory.getPath, because that depends on the visitor path.
-    atypeFactory.setVisitorTreePath(TreePath.getPath(root, tree));
-    methodTree = null;
+      // Don't use atypeFactory.getPath, because that depends on the visitor path.
+      atypeFactory.setVisitorTreePath(TreePath.getPath(root, tree));
+      methodTree = null;
 
-    try {
       processClassTree(tree);
       atypeFactory.postProcessClassTree(tree);
+    } catch (RuntimeException e) {
+      TimeBudget.ExceededException exceeded = TimeBudget.getExceeded(e);
+      if (!startedBudget || exceeded == null || !exceeded.isClassBudget()) {
+        throw e;
+      }
+      checker.reportWarning(
+          tree, "class.time.budget.exceeded", timeBudget.getClassBudgetSeconds());
     } finally {
       atypeFactory.setVisitorTreePath(preTreePath);
       methodTree = preMT;
+      timeBudget.endClass();
     }
 
     checkSlowTypechecking(tree, startSlowTypeCheckingTree, startMillis);
@@ -1008,7 +1019,27 @@ public class BaseTypeVisitor<Factory extends GenericAnnotatedTypeFactory<?, ?, ?
     if (checker.shouldSkipDefs(enclosingClass, tree)) {
       return null;
     }
-    processMethodTree("<unknown from visitMethod>", tree);
+    TimeBudget timeBudget = atypeFactory.getTimeBudget();
+    if (timeBudget.isAbandoned(tree)) {
+      checker.reportWarning(
+          tree, "method.time.budget.exceeded", timeBudget.getMethodBudgetSeconds());
+      return null;
+    }
+    boolean startedBudget = timeBudget.startMethod();
+    try {
+      processMethodTree("<unknown from visitMethod>", tree);
+    } catch (RuntimeException e) {
+      TimeBudget.ExceededException exceeded = TimeBudget.getExceeded(e);
+      if (!startedBudget || exceeded == null || exceeded.isClassBudget()) {
+        throw e;
+      }
+      checker.reportWarning(
+          tree, "method.time.budget.exceeded", timeBudget.getMethodBudgetSeconds());
+    } finally {
+      if (startedBudget) {
+        timeBudget.endMethod();
+      }
+    }
     return null;
   }
 
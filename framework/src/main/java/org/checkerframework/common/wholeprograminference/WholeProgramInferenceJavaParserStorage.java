@@ -25,6 +25,7 @@ import com.github.javaparser.ast.expr.NormalAnnotationExpr;
 import com.github.javaparser.ast.expr.ObjectCreationExpr;
 import com.github.javaparser.ast.expr.SingleMemberAnnotationExpr;
 import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.javaparser.ast.type.Type;
 import com.github.javaparser.ast.type.TypeParameter;
@@ -710,6 +711,13 @@ public class WholeProgramInferenceJavaParserStorage
            */
           private int innerClassCount = 0;
 
+          @Override
+          protected boolean shouldVisitBody(BlockStmt javaParserBody) {
+            // Only classes, their members, and their fields are recorded, so a body matters only
+            // if it declares a class.
+            return containsClassDeclaration(javaParserBody);
+          }
+
           @Override
           public void processClass(
               ClassTree javacTree, ClassOrInterfaceDeclaration javaParserNode) {
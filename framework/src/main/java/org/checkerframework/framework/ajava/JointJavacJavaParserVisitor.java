@@ -304,7 +304,11 @@ public abstract class JointJavacJavaParserVisitor extends SimpleTreeVisitor<Void
   @Override
   public Void visitBlock(BlockTree javacTree, Node javaParserNode) {
     if (javaParserNode instanceof InitializerDeclaration) {
-      return javacTree.accept(this, ((InitializerDeclaration) javaParserNode).getBody());
+      BlockStmt body = ((InitializerDeclaration) javaParserNode).getBody();
+      if (!shouldVisitBody(body)) {
+        return null;
+      }
+      return javacTree.accept(this, body);
     }
 
     BlockStmt node = castNode(BlockStmt.class, javaParserNode, javacTree);
@@ -1112,7 +1116,7 @@ public abstract class JointJavacJavaParserVisitor extends SimpleTreeVisitor<Void
     visitLists(javacTree.getParameters(), javaParserNode.getParameters());
 
     visitLists(javacTree.getThrows(), javaParserNode.getThrownExceptions());
-    visitOptional(javacTree.getBody(), javaParserNode.getBody());
+    visitBody(javacTree.getBody(), javaParserNode.getBody());
   }
 
   /**
@@ -1129,7 +1133,7 @@ public abstract class JointJavacJavaParserVisitor extends SimpleTreeVisitor<Void
     visitOptional(javacTree.getReceiverParameter(), javaParserNode.getReceiverParameter());
     visitLists(javacTree.getParameters(), javaParserNode.getParameters());
     visitLists(javacTree.getThrows(), javaParserNode.getThrownExceptions());
-    javacTree.getBody().accept(this, javaParserNode.getBody());
+    visitBody(javacTree.getBody(), Optional.of(javaParserNode.getBody()));
   }
 
   /**
@@ -1144,7 +1148,7 @@ public abstract class JointJavacJavaParserVisitor extends SimpleTreeVisitor<Void
     processMethod(javacTree, javaParserNode);
     visitLists(javacTree.getTypeParameters(), javaParserNode.getTypeParameters());
     visitLists(javacTree.getThrows(), javaParserNode.getThrownExceptions());
-    javacTree.getBody().accept(this, javaParserNode.getBody());
+    visitBody(javacTree.getBody(), Optional.of(javaParserNode.getBody()));
   }
 
   /**
@@ -2382,6 +2386,57 @@ public abstract class JointJavacJavaParserVisitor extends SimpleTreeVisitor<Void
     }
   }
 
+  /**
+   * Visits the body of a method or constructor, unless {@link #shouldVisitBody} returns false for
+   * it. Iff the javac tree is non-null, the JavaParser optional is present.
+   *
+   * @param javacBody the body of a method or constructor, or null for an abstract method
+   * @param javaParserBody the corresponding JavaParser body, which might not be present
+   */
+  @SuppressWarnings("optional:optional.parameter") // interface with JavaParser
+  private void visitBody(@Nullable BlockTree javacBody, Optional<BlockStmt> javaParserBody) {
+    assert javacBody != null == javaParserBody.isPresent()
+        : String.format("visitBody(%s, %s)", javacBody, javaParserBody);
+    if (javacBody != null && shouldVisitBody(javaParserBody.get())) {
+      javacBody.accept(this, javaParserBody.get());
+    }
+  }
+
+  /**
+   * Returns true if this visitor should visit the given body of a method, constructor, or
+   * initializer block. Returns true by default.
+   *
+   * <p>Matching the statements and expressions of bodies is most of the work of this visitor. A
+   * subclass that only processes some constructs, such as declarations, can override this method
+   * to skip bodies that contain none of them. The check is done on the JavaParser node, which is
+   * much cheaper than matching it against the javac tree. See {@link #containsClassDeclaration}.
+   *
+   * @param javaParserBody the body of a method, constructor, or initializer block
+   * @return true if this visitor should visit {@code javaParserBody} and the corresponding javac
+   *     tree
+   */
+  protected boolean shouldVisitBody(BlockStmt javaParserBody) {
+    return true;
+  }
+
+  /**
+   * Returns true if the given JavaParser node contains the declaration of a local class, a local
+   * record, or an anonymous class.
+   *
+   * @param javaParserNode a JavaParser node
+   * @return true if {@code javaParserNode} contains a class declaration
+   */
+  public static boolean containsClassDeclaration(Node javaParserNode) {
+    return javaParserNode
+        .findFirst(
+            Node.class,
+            n ->
+                n instanceof TypeDeclaration<?>
+                    || (n instanceof ObjectCreationExpr
+                        && ((ObjectCreationExpr) n).getAnonymousClassBody().isPresent()))
+        .isPresent();
+  }
+
   /**
    * Visit an optional syntax construct. Iff the javac tree is non-null, the JavaParser optional is
    * present.
@@ -251,6 +251,8 @@ public abstract class CFAbstractAnalysis<
 
   @Override
   protected TransferResult<V, S> callTransferFunction(Node node, TransferInput<V, S> input) {
+    // Outside the try block, so that the exception is not wrapped.
+    atypeFactory.getTimeBudget().check();
     TransferResult<V, S> result;
     try {
       result = super.callTransferFunction(node, input);
@@ -20,6 +20,10 @@ import javax.tools.Diagnostic;
  * being printed. (See {@link #printOrStoreMessage(Diagnostic.Kind, String, Tree,
  * CompilationUnitTree)}.)
  *
+ * <p>When the compilation is split into shards with {@code -AcheckerShard}, component checkers that
+ * do not depend on one another may check the same compilation unit in different shards, and thus
+ * concurrently.
+ *
  * <p>This class delegates {@code AbstractTypeProcessor} responsibilities to each component checker.
  *
  * <p>Checker writers need to subclass this class and only override {@link #getSupportedCheckers()}
@@ -43,6 +47,11 @@ public abstract class AggregateChecker extends SourceChecker {
     return new LinkedHashSet<>(getSupportedCheckers());
   }
 
+  @Override
+  protected boolean usesSubcheckerResults() {
+    return false;
+  }
+
   @Override
   protected SourceVisitor<?, ?> createSourceVisitor() {
     return new SourceVisitor<Void, Void>(this) {
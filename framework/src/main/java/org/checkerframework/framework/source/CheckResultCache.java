@@ -0,0 +1,700 @@
+package org.checkerframework.framework.source;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.CompletionFailure;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.IntersectionType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.UnionType;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.javacutil.BugInCF;
+
+/**
+ * The diagnostics that a checker and its subcheckers issued for each top-level class, stored in the
+ * directory given by {@code -AresultCacheDir}, so that a later compilation can print them again
+ * instead of type-checking a class that has not changed.
+ *
+ * <p>A class is treated as unchanged if its fingerprint is. The fingerprint covers the checker,
+ * its version, and its options; the subcheckers that check the class, which {@code -AcheckerShard}
+ * may limit; the contents of the stub and ajava files passed on the command line; the source file
+ * that contains the class; and the signature of every class that the class refers to, and of their
+ * supertypes. The signature of a class consists of the declarations of its members, with their
+ * types, declaration annotations, and type annotations, and the annotations of its package. The
+ * fingerprint does not cover method bodies of other classes, which the Checker Framework does not
+ * read when it checks a class.
+ *
+ * <p>The fingerprint is a heuristic, not a guarantee that checking the class again would issue the
+ * same diagnostics. Among other things, it does not cover stub files that are not regular files,
+ * such as those in a jar; javac options other than {@code -A} options; the JDK, apart from the
+ * source version; or a change to a checker that does not change its version. After changing any of
+ * these, delete the directory.
+ *
+ * <p>The results for a class are only stored if every diagnostic that was issued while checking it
+ * can be replayed: for example, a crash or a diagnostic about an element rather than a tree
+ * prevents caching. The cache is best effort, so I/O errors are ignored.
+ */
+final class CheckResultCache {
+
+  /** The version of the format of the files in {@link #cacheDir}. */
+  private static final String RESULT_CACHE_VERSION = "checkresults 1";
+
+  /** The directory given by {@code -AresultCacheDir}. */
+  private final Path cacheDir;
+
+  /** The checker whose results, and those of its subcheckers, are cached. */
+  private final SourceChecker checker;
+
+  /** The element utilities. */
+  private final Elements elements;
+
+  /**
+   * The part of every fingerprint that does not depend on the class: the checker, its options, and
+   * its stub files.
+   */
+  private final String configuration;
+
+  /** Maps each top-level class to a digest of its signature; see {@link #getSignature}. */
+  private final Map<TypeElement, String> signatures = new HashMap<>();
+
+  /**
+   * The file that will hold the results of the class that is being checked, or null if its results
+   * are not being recorded.
+   */
+  private @Nullable Path resultFile = null;
+
+  /** The fingerprint of the class that is being checked; non-null iff {@link #resultFile} is. */
+  private @Nullable String fingerprint = null;
+
+  /** The diagnostics issued so far for the class that is being checked. */
+  private final List<CachedDiagnostic> diagnostics = new ArrayList<>();
+
+  /** True if a diagnostic was issued for the class that is being checked that cannot be cached. */
+  private boolean unreplayable = false;
+
+  /**
+   * Creates a CheckResultCache.
+   *
+   * @param cacheDir the directory given by {@code -AresultCacheDir}
+   * @param checker the checker whose results are cached; it must not be a subchecker
+   */
+  CheckResultCache(Path cacheDir, SourceChecker checker) {
+    this.cacheDir = cacheDir;
+    this.checker = checker;
+    this.elements = checker.getProcessingEnvironment().getElementUtils();
+    this.configuration = computeConfiguration(checker);
+  }
+
+  /**
+   * Prints the cached diagnostics of a top-level class, if the class is unchanged since they were
+   * cached. Otherwise, starts recording the diagnostics that are issued while the class is checked,
+   * for {@link #save}.
+   *
+   * @param element the class
+   * @param path the path to the class
+   * @return true if the cached diagnostics were printed, so the class need not be checked
+   */
+  boolean replay(TypeElement element, TreePath path) {
+    discard();
+    CompilationUnitTree root = path.getCompilationUnit();
+    // With -AcheckerShard, a shard stores the diagnostics of only some of the subcheckers.
+    String checkers = String.join(",", checker.getCheckersInShard(root));
+    String classFingerprint;
+    try {
+      classFingerprint = computeFingerprint(element, path) + "\n" + checkers;
+    } catch (IOException | CompletionFailure e) {
+      return false;
+    }
+    Path file =
+        cacheDir.resolve(
+            sha256(
+                    checkers
+                        + "\n"
+                        + root.getSourceFile().toUri()
+                        + "\n"
+                        + element.getQualifiedName())
+                + ".checkresults");
+    List<CachedDiagnostic> cached = readResults(file, classFingerprint);
+    if (cached != null) {
+      Map<Long, Tree> trees = findTrees(root, cached);
+      if (trees != null) {
+        if (checker.currentRoot != root) {
+          checker.setRoot(root);
+        }
+        for (CachedDiagnostic diagnostic : cached) {
+          Tree tree = trees.get(diagnostic.positionKey());
+          checker.printOrStoreMessage(
+              diagnostic.kind, diagnostic.message, tree, root, new StackTraceElement[0]);
+        }
+        return true;
+      }
+    }
+    resultFile = file;
+    fingerprint = classFingerprint;
+    return false;
+  }
+
+  /**
+   * Records a diagnostic that was printed for the class that is being checked.
+   *
+   * @param kind the kind of the diagnostic
+   * @param message the message text
+   * @param source the tree that the diagnostic is about
+   */
+  void record(Diagnostic.Kind kind, String message, Tree source) {
+    if (resultFile != null) {
+      JCTree tree = (JCTree) source;
+      diagnostics.add(
+          new CachedDiagnostic(
+              kind, TreeInfo.getStartPos(tree), tree.getPreferredPosition(), message));
+    }
+  }
+
+  /**
+   * Notes that a diagnostic was printed for the class that is being checked that cannot be
+   * recorded, so its results must not be cached.
+   */
+  void recordUnreplayable() {
+    unreplayable = true;
+  }
+
+  /**
+   * Stores the diagnostics recorded for the class that was checked, if all of them were recorded,
+   * and stops recording.
+   *
+   * @param errors the number of errors that javac printed while the class was checked
+   */
+  void save(int errors) {
+    Path file = resultFile;
+    String classFingerprint = fingerprint;
+    if (file == null || classFingerprint == null || unreplayable) {
+      discard();
+      return;
+    }
+    long recordedErrors =
+        diagnostics.stream().filter(d -> d.kind == Diagnostic.Kind.ERROR).count();
+    if (recordedErrors != errors) {
+      // Some error, such as a crash, was not recorded.
+      discard();
+      return;
+    }
+    StringBuilder contents = new StringBuilder();
+    contents.append(RESULT_CACHE_VERSION).append('\n');
+    contents.append(classFingerprint).append('\n');
+    for (CachedDiagnostic diagnostic : diagnostics) {
+      contents
+          .append(diagnostic.kind.name())
+          .append(' ')
+          .append(diagnostic.startPosition)
+          .append(' ')
+          .append(diagnostic.preferredPosition)
+          .append(' ')
+          .append(diagnostic.message.length())
+          .append('\n')
+          .append(diagnostic.message)
+          .append('\n');
+    }
+    discard();
+    try {
+      Files.createDirectories(cacheDir);
+      Path tmpFile = Files.createTempFile(cacheDir, "checkresults", ".tmp");
+      Files.write(tmpFile, contents.toString().getBytes(StandardCharsets.UTF_8));
+      // Another compiler process might be writing the same file concurrently.
+      Files.move(
+          tmpFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      // The cache is best effort.
+    }
+  }
+
+  /** Stops recording, without storing the diagnostics recorded so far. */
+  void discard() {
+    resultFile = null;
+    fingerprint = null;
+    diagnostics.clear();
+    unreplayable = false;
+  }
+
+  /**
+   * Reads the diagnostics written by {@link #save}.
+   *
+   * @param file the file that holds the diagnostics
+   * @param expectedFingerprint the fingerprint of the class
+   * @return the diagnostics, or null if the file does not exist, is not valid, or was written for a
+   *     different fingerprint
+   */
+  private static @Nullable List<CachedDiagnostic> readResults(
+      Path file, String expectedFingerprint) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try {
+      String contents = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+      String expectedHeader = RESULT_CACHE_VERSION + "\n" + expectedFingerprint + "\n";
+      if (!contents.startsWith(expectedHeader)) {
+        return null;
+      }
+      List<CachedDiagnostic> result = new ArrayList<>();
+      int index = expectedHeader.length();
+      while (index < contents.length()) {
+        int newline = contents.indexOf('\n', index);
+        if (newline < 0) {
+          return null;
+        }
+        String[] fields = contents.substring(index, newline).split(" ");
+        if (fields.length != 4) {
+          return null;
+        }
+        int start = newline + 1;
+        int end = start + Integer.parseInt(fields[3]);
+        if (end >= contents.length() || contents.charAt(end) != '\n') {
+          return null;
+        }
+        result.add(
+            new CachedDiagnostic(
+                Diagnostic.Kind.valueOf(fields[0]),
+                Integer.parseInt(fields[1]),
+                Integer.parseInt(fields[2]),
+                contents.substring(start, end)));
+        index = end + 1;
+      }
+      return result;
+    } catch (IOException | IllegalArgumentException e) {
+      // NumberFormatException is a subclass of IllegalArgumentException.
+      return null;
+    }
+  }
+
+  /**
+   * Finds the trees that the given diagnostics are about.
+   *
+   * @param root the compilation unit
+   * @param diagnostics the diagnostics
+   * @return a map from {@link CachedDiagnostic#positionKey} to a tree at that position, or null if
+   *     the tree of some diagnostic was not found
+   */
+  private static @Nullable Map<Long, Tree> findTrees(
+      CompilationUnitTree root, List<CachedDiagnostic> diagnostics) {
+    Map<Long, Tree> result = new HashMap<>();
+    if (diagnostics.isEmpty()) {
+      return result;
+    }
+    Set<Long> wanted = new HashSet<>();
+    for (CachedDiagnostic diagnostic : diagnostics) {
+      wanted.add(diagnostic.positionKey());
+    }
+    new TreeScanner<Void, Void>() {
+      @Override
+      public Void scan(Tree tree, Void p) {
+        if (tree != null && result.size() < wanted.size()) {
+          JCTree jcTree = (JCTree) tree;
+          Long key = positionKey(TreeInfo.getStartPos(jcTree), jcTree.getPreferredPosition());
+          if (wanted.contains(key)) {
+            result.putIfAbsent(key, tree);
+          }
+          super.scan(tree, p);
+        }
+        return null;
+      }
+    }.scan(root, null);
+    return result.size() == wanted.size() ? result : null;
+  }
+
+  /**
+   * Returns the fingerprint of a top-level class.
+   *
+   * @param element the class
+   * @param path the path to the class
+   * @return the fingerprint of the class
+   * @throws IOException if the source file cannot be read
+   */
+  private String computeFingerprint(TypeElement element, TreePath path) throws IOException {
+    StringBuilder text = new StringBuilder();
+    text.append(configuration).append('\n');
+    text.append(element.getQualifiedName()).append('\n');
+    text.append(path.getCompilationUnit().getSourceFile().getCharContent(true)).append('\n');
+    List<TypeElement> referenced = new ArrayList<>(getReferencedClasses(path.getLeaf()));
+    referenced.sort(Comparator.comparing(te -> te.getQualifiedName().toString()));
+    for (TypeElement type : referenced) {
+      text.append(type.getQualifiedName()).append(' ').append(getSignature(type)).append('\n');
+    }
+    return sha256(text.toString());
+  }
+
+  /**
+   * Returns the top-level classes that a tree refers to, and those of their supertypes.
+   *
+   * @param tree a tree
+   * @return the top-level classes that {@code tree} refers to, and those of their supertypes
+   */
+  private static Set<TypeElement> getReferencedClasses(Tree tree) {
+    Set<TypeElement> result = new HashSet<>();
+    new TreeScanner<Void, Void>() {
+      @Override
+      public Void scan(Tree tree, Void p) {
+        if (tree != null) {
+          JCTree jcTree = (JCTree) tree;
+          addClasses(jcTree.type, result);
+          Symbol sym = TreeInfo.symbolFor(jcTree);
+          if (sym != null) {
+            addOutermostClass(sym, result);
+          }
+        }
+        return super.scan(tree, p);
+      }
+    }.scan(tree, null);
+
+    ArrayDeque<TypeElement> worklist = new ArrayDeque<>(result);
+    while (!worklist.isEmpty()) {
+      Set<TypeElement> supertypes = new HashSet<>();
+      addSupertypes(worklist.remove(), supertypes);
+      for (TypeElement supertype : supertypes) {
+        if (result.add(supertype)) {
+          worklist.add(supertype);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds the top-level classes of the direct supertypes of a class and of its member classes.
+   *
+   * @param type a class
+   * @param result where to add the classes
+   */
+  private static void addSupertypes(TypeElement type, Set<TypeElement> result) {
+    addClasses(type.getSuperclass(), result);
+    for (TypeMirror iface : type.getInterfaces()) {
+      addClasses(iface, result);
+    }
+    for (Element member : type.getEnclosedElements()) {
+      if (member instanceof TypeElement) {
+        addSupertypes((TypeElement) member, result);
+      }
+    }
+  }
+
+  /**
+   * Adds the top-level classes of the classes that a type mentions.
+   *
+   * @param type a type, or null
+   * @param result where to add the classes
+   */
+  private static void addClasses(@Nullable TypeMirror type, Set<TypeElement> result) {
+    if (type == null) {
+      return;
+    }
+    switch (type.getKind()) {
+      case DECLARED:
+        DeclaredType declaredType = (DeclaredType) type;
+        if (addOutermostClass(declaredType.asElement(), result)) {
+          addClasses(declaredType.getEnclosingType(), result);
+        }
+        for (TypeMirror typeArg : declaredType.getTypeArguments()) {
+          addClasses(typeArg, result);
+        }
+        break;
+      case ARRAY:
+        addClasses(((ArrayType) type).getComponentType(), result);
+        break;
+      case WILDCARD:
+        addClasses(((WildcardType) type).getExtendsBound(), result);
+        addClasses(((WildcardType) type).getSuperBound(), result);
+        break;
+      case INTERSECTION:
+        for (TypeMirror bound : ((IntersectionType) type).getBounds()) {
+          addClasses(bound, result);
+        }
+        break;
+      case UNION:
+        for (TypeMirror alternative : ((UnionType) type).getAlternatives()) {
+          addClasses(alternative, result);
+        }
+        break;
+      default:
+        // Type variables are declared by a class or method whose class is already included.
+        break;
+    }
+  }
+
+  /**
+   * Adds the top-level class that encloses an element.
+   *
+   * @param element an element
+   * @param result where to add the class
+   * @return true if the class was not already in {@code result}
+   */
+  private static boolean addOutermostClass(Element element, Set<TypeElement> result) {
+    TypeElement outermost = null;
+    for (Element e = element;
+        e != null && !(e instanceof PackageElement);
+        e = e.getEnclosingElement()) {
+      if (e instanceof TypeElement) {
+        outermost = (TypeElement) e;
+      }
+    }
+    return outermost != null && result.add(outermost);
+  }
+
+  /**
+   * Returns a digest of the signature of a top-level class: the declarations of the class, its
+   * members, and its member classes, and the annotations of its package.
+   *
+   * @param type a top-level class
+   * @return a digest of the signature of {@code type}
+   */
+  private String getSignature(TypeElement type) {
+    String result = signatures.get(type);
+    if (result == null) {
+      StringBuilder signature = new StringBuilder();
+      signature.append(elements.getPackageOf(type).getAnnotationMirrors()).append('\n');
+      appendSignature(type, signature);
+      result = sha256(signature.toString());
+      signatures.put(type, result);
+    }
+    return result;
+  }
+
+  /**
+   * Appends the declaration of an element and, if it is a class, of its members.
+   *
+   * @param element an element
+   * @param signature where to append the declaration
+   */
+  private static void appendSignature(Element element, StringBuilder signature) {
+    signature
+        .append(element.getKind())
+        .append(' ')
+        .append(element.getModifiers())
+        .append(' ')
+        .append(element.getSimpleName())
+        .append(' ')
+        .append(element.asType())
+        .append(' ')
+        .append(element.getAnnotationMirrors())
+        .append(' ')
+        // Type annotations of an element that was read from a class file are not necessarily part
+        // of its type.
+        .append(((Symbol) element).getRawTypeAttributes());
+    if (element instanceof TypeElement) {
+      TypeElement type = (TypeElement) element;
+      signature.append(' ').append(type.getSuperclass()).append(' ').append(type.getInterfaces());
+      appendTypeParameters(type.getTypeParameters(), signature);
+    } else if (element instanceof ExecutableElement) {
+      ExecutableElement method = (ExecutableElement) element;
+      appendTypeParameters(method.getTypeParameters(), signature);
+      for (VariableElement param : method.getParameters()) {
+        signature.append(' ').append(param.getAnnotationMirrors());
+      }
+      signature.append(' ').append(method.getThrownTypes());
+      signature.append(' ').append(method.getDefaultValue());
+    } else if (element instanceof VariableElement) {
+      signature.append(' ').append(((VariableElement) element).getConstantValue());
+    }
+    signature.append('\n');
+    if (element instanceof TypeElement) {
+      for (Element member : element.getEnclosedElements()) {
+        appendSignature(member, signature);
+      }
+    }
+  }
+
+  /**
+   * Appends the bounds and annotations of type parameters.
+   *
+   * @param typeParameters type parameters
+   * @param signature where to append them
+   */
+  private static void appendTypeParameters(
+      List<? extends TypeParameterElement> typeParameters, StringBuilder signature) {
+    for (TypeParameterElement typeParameter : typeParameters) {
+      signature
+          .append(' ')
+          .append(typeParameter.getAnnotationMirrors())
+          .append(typeParameter.getBounds());
+    }
+  }
+
+  /**
+   * Returns the part of every fingerprint that does not depend on the class being checked.
+   *
+   * @param checker the checker
+   * @return the checker, its version, its options, and the contents of its stub files
+   */
+  private static String computeConfiguration(SourceChecker checker) {
+    StringJoiner result = new StringJoiner("\n");
+    result.add(RESULT_CACHE_VERSION);
+    result.add(checker.getClass().getName());
+    String checkerVersion;
+    try {
+      checkerVersion = checker.getCheckerVersion();
+    } catch (Exception e) {
+      // getCheckerVersion() throws an exception when invoked during Junit tests.
+      checkerVersion = "unknown";
+    }
+    result.add(checkerVersion);
+    result.add(checker.getProcessingEnvironment().getSourceVersion().toString());
+    Map<String, String> options = new TreeMap<>(checker.getOptions());
+    // This option does not affect the diagnostics of a class.
+    options.remove("resultCacheDir");
+    // The fingerprint of each class covers the checkers that the shard runs on it instead.
+    options.remove("checkerShard");
+    result.add(options.toString());
+    for (String option : new String[] {"stubs", "ajava"}) {
+      String files = options.get(option);
+      if (files != null) {
+        for (String file : files.split(File.pathSeparator)) {
+          result.add(file + " " + hashFiles(Paths.get(file)));
+        }
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * Returns a digest of the contents of a file, or of the files in a directory.
+   *
+   * @param path a file or directory
+   * @return a digest of the contents of {@code path}, or the empty string if it is neither a file
+   *     nor a directory, such as a stub file in a jar
+   */
+  private static String hashFiles(Path path) {
+    try {
+      if (Files.isRegularFile(path)) {
+        return sha256(Files.readAllBytes(path));
+      } else if (Files.isDirectory(path)) {
+        StringJoiner contents = new StringJoiner("\n");
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(path)) {
+          files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+          contents.add(file + " " + hashFiles(file));
+        }
+        return sha256(contents.toString());
+      }
+    } catch (IOException e) {
+      // Fall through.
+    }
+    return "";
+  }
+
+  /**
+   * Returns the SHA-256 digest of a string, in hexadecimal.
+   *
+   * @param text a string
+   * @return the SHA-256 digest of {@code text}
+   */
+  private static String sha256(String text) {
+    return sha256(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the SHA-256 digest of a byte array, in hexadecimal.
+   *
+   * @param bytes a byte array
+   * @return the SHA-256 digest of {@code bytes}
+   */
+  private static String sha256(byte[] bytes) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new BugInCF("SHA-256 is not available", e);
+    }
+    StringBuilder result = new StringBuilder();
+    for (byte b : digest.digest(bytes)) {
+      result.append(String.format("%02x", b));
+    }
+    return result.toString();
+  }
+
+  /**
+   * Returns a key for a pair of tree positions.
+   *
+   * @param startPosition the start position of a tree
+   * @param preferredPosition the preferred position of a tree, where diagnostics point
+   * @return a key for the pair of positions
+   */
+  private static long positionKey(int startPosition, int preferredPosition) {
+    return ((long) startPosition << 32) | (preferredPosition & 0xffffffffL);
+  }
+
+  /** A diagnostic, and the position of the tree that it is about. */
+  private static class CachedDiagnostic {
+
+    /** The kind of the diagnostic. */
+    final Diagnostic.Kind kind;
+
+    /** The start position of the tree that the diagnostic is about. */
+    final int startPosition;
+
+    /** The preferred position of the tree that the diagnostic is about. */
+    final int preferredPosition;
+
+    /** The message text. */
+    final String message;
+
+    /**
+     * Creates a CachedDiagnostic.
+     *
+     * @param kind the kind of the diagnostic
+     * @param startPosition the start position of the tree that the diagnostic is about
+     * @param preferredPosition the preferred position of the tree that the diagnostic is about
+     * @param message the message text
+     */
+    CachedDiagnostic(
+        Diagnostic.Kind kind, int startPosition, int preferredPosition, String message) {
+      this.kind = kind;
+      this.startPosition = startPosition;
+      this.preferredPosition = preferredPosition;
+      this.message = message;
+    }
+
+    /**
+     * Returns the key of the position of the tree that the diagnostic is about.
+     *
+     * @return the key of the position of the tree that the diagnostic is about
+     */
+    long positionKey() {
+      return CheckResultCache.positionKey(startPosition, preferredPosition);
+    }
+  }
+}
@@ -0,0 +1,268 @@
+package org.checkerframework.framework.source;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.LineMap;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.tree.JCTree;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.tools.Diagnostic;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.javacutil.UserError;
+
+/**
+ * Writes the diagnostics of a checker and its subcheckers to the file given by {@code
+ * -AsarifOutput}, in the Static Analysis Results Interchange Format (SARIF) 2.1.0.
+ *
+ * <p>Each diagnostic is written when it is printed, and the output is flushed after each top-level
+ * class, so the writer holds no diagnostics in memory and a reader can follow the file while the
+ * compilation runs. {@link #close} ends the JSON document.
+ */
+final class SarifWriter {
+
+  /** The file that is written. */
+  private final Path file;
+
+  /** The writer for {@link #file}. */
+  private final Writer out;
+
+  /** The source positions of trees. */
+  private final SourcePositions positions;
+
+  /** True if no result has been written yet. */
+  private boolean first = true;
+
+  /** True if {@link #close} has been called. */
+  private boolean closed = false;
+
+  /**
+   * Creates a SarifWriter and writes the beginning of the document.
+   *
+   * @param file the file to write
+   * @param checker the checker whose diagnostics, and those of its subcheckers, are written; it
+   *     must not be a subchecker
+   * @throws UserError if the file cannot be written
+   */
+  SarifWriter(Path file, SourceChecker checker) {
+    this.file = file;
+    this.positions = Trees.instance(checker.getProcessingEnvironment()).getSourcePositions();
+    try {
+      this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UserError("Cannot write %s: %s", file, e.getMessage());
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",");
+    sb.append("\"version\":\"2.1.0\",\"runs\":[{\"tool\":{\"driver\":{\"name\":");
+    appendString(sb, checker.getClass().getName());
+    String checkerVersion;
+    try {
+      checkerVersion = checker.getCheckerVersion();
+    } catch (Exception e) {
+      // getCheckerVersion() throws an exception when invoked during Junit tests.
+      checkerVersion = "unknown";
+    }
+    sb.append(",\"version\":");
+    appendString(sb, checkerVersion);
+    sb.append(",\"informationUri\":\"https://checkerframework.org/\"}},\"results\":[");
+    write(sb);
+  }
+
+  /**
+   * Writes one diagnostic. Does nothing if the writer is closed, as it is when a checker crashes at
+   * the end of the compilation.
+   *
+   * @param kind the kind of the diagnostic
+   * @param message the text of the diagnostic, as it is printed
+   * @param source the tree that the diagnostic is about, or null if it has no source location
+   * @param root the compilation unit that contains {@code source}, or null if {@code source} is
+   *     null
+   */
+  void write(
+      Diagnostic.Kind kind,
+      String message,
+      @Nullable Tree source,
+      @Nullable CompilationUnitTree root) {
+    if (closed) {
+      return;
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append(first ? "\n" : ",\n");
+    first = false;
+    sb.append("{");
+    String ruleId = getRuleId(message);
+    if (ruleId != null) {
+      sb.append("\"ruleId\":");
+      appendString(sb, ruleId);
+      sb.append(",");
+    }
+    sb.append("\"level\":\"").append(getLevel(kind)).append("\",\"message\":{\"text\":");
+    appendString(sb, message);
+    sb.append("}");
+    if (source != null && root != null) {
+      // The position at which javac reports a diagnostic about the tree.
+      long pos = ((JCTree) source).getPreferredPosition();
+      if (pos != Diagnostic.NOPOS) {
+        sb.append(",\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":");
+        appendString(sb, root.getSourceFile().toUri().toString());
+        sb.append("},\"region\":{");
+        LineMap lineMap = root.getLineMap();
+        appendLineAndColumn(sb, lineMap, pos, "start");
+        long endPos = positions.getEndPosition(root, source);
+        if (endPos > pos) {
+          sb.append(",");
+          appendLineAndColumn(sb, lineMap, endPos, "end");
+        }
+        sb.append("}}}]");
+      }
+    }
+    sb.append("}");
+    write(sb);
+  }
+
+  /** Writes the buffered output to the file. Does nothing if the writer is closed. */
+  void flush() {
+    if (closed) {
+      return;
+    }
+    try {
+      out.flush();
+    } catch (IOException e) {
+      throw new UserError("Cannot write %s: %s", file, e.getMessage());
+    }
+  }
+
+  /** Writes the end of the document and closes the file. Does nothing if already closed. */
+  void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      out.write("\n]}]}\n");
+      out.close();
+    } catch (IOException e) {
+      throw new UserError("Cannot write %s: %s", file, e.getMessage());
+    }
+  }
+
+  /**
+   * Writes text to the file.
+   *
+   * @param text the text to write
+   */
+  private void write(CharSequence text) {
+    try {
+      out.append(text);
+    } catch (IOException e) {
+      throw new UserError("Cannot write %s: %s", file, e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the SARIF level of a diagnostic kind.
+   *
+   * @param kind a diagnostic kind
+   * @return the SARIF level of {@code kind}
+   */
+  private static String getLevel(Diagnostic.Kind kind) {
+    switch (kind) {
+      case ERROR:
+        return "error";
+      case WARNING:
+      case MANDATORY_WARNING:
+        return "warning";
+      default:
+        return "note";
+    }
+  }
+
+  /**
+   * Returns the message key, possibly with a checker prefix, at the beginning of a diagnostic, such
+   * as "argument" in "[argument] incompatible argument ...".
+   *
+   * @param message the text of a diagnostic, as it is printed
+   * @return the message key that {@code message} starts with, or null if there is none
+   */
+  private static @Nullable String getRuleId(String message) {
+    char close;
+    if (message.startsWith("[")) {
+      close = ']';
+    } else if (message.startsWith("(")) {
+      // The format of -Anomsgtext.
+      close = ')';
+    } else {
+      return null;
+    }
+    int end = message.indexOf(close);
+    if (end <= 1) {
+      return null;
+    }
+    String key = message.substring(1, end);
+    for (int i = 0; i < key.length(); i++) {
+      if (Character.isWhitespace(key.charAt(i))) {
+        return null;
+      }
+    }
+    return key;
+  }
+
+  /**
+   * Appends the SARIF line and column properties of a source position. SARIF columns count
+   * characters, starting at 1.
+   *
+   * @param sb where to append
+   * @param lineMap the line map of the compilation unit
+   * @param pos a position in the compilation unit
+   * @param prefix "start" or "end"
+   */
+  private static void appendLineAndColumn(
+      StringBuilder sb, LineMap lineMap, long pos, String prefix) {
+    long line = lineMap.getLineNumber(pos);
+    long column = pos - lineMap.getStartPosition(line) + 1;
+    sb.append('"').append(prefix).append("Line\":").append(line);
+    sb.append(",\"").append(prefix).append("Column\":").append(column);
+  }
+
+  /**
+   * Appends a string as a JSON string literal.
+   *
+   * @param sb where to append
+   * @param s the string
+   */
+  private static void appendString(StringBuilder sb, String s) {
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    sb.append('"');
+  }
+}
@@ -29,6 +29,7 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayDeque;
@@ -38,6 +39,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
@@ -135,6 +138,15 @@ import org.plumelib.util.UtilPlume;
   "onlyFiles",
   "skipDirs", // Obsolete as of 2024-03-15, replaced by "skipFiles".
 
+  // Only check the compilation units in one of several shards
+  // org.checkerframework.framework.source.SourceChecker.isInShard
+  "checkerShard",
+
+  // Directory in which to store the diagnostics of each class, so that later compilations do not
+  // check a class whose fingerprint has not changed
+  // org.checkerframework.framework.source.CheckResultCache
+  "resultCacheDir",
+
   // Unsoundly assume all methods have no side effects, are deterministic, or both.
   "assumeSideEffectFree",
   "assumeDeterministic",
@@ -280,6 +292,10 @@ import org.plumelib.util.UtilPlume;
   "stubWarnIfRedundantWithBytecode",
   // Whether to issue a NOTE rather than a WARNING for -AstubWarn* command-line options
   "stubWarnNote",
+  // Directory in which to store an index of the types in each stub file, so that later
+  // compilations parse only the parts of a stub file that they use
+  // org.checkerframework.framework.stub.AnnotationFileParser.stubCacheDir
+  "stubCacheDir",
   // With this option, annotations in stub files are used EVEN IF THE SOURCE FILE IS
   // PRESENT. Only use this option when you intend to store types in stub files rather than
   // directly in source code, such as during whole-program inference. The annotations in the
@@ -297,6 +313,11 @@ import org.plumelib.util.UtilPlume;
   // Warn about trees that take a long time to typecheck
   "slowTypecheckingSeconds",
 
+  // Give up on methods or top-level classes that take a long time to typecheck
+  // org.checkerframework.framework.util.TimeBudget
+  "methodTimeBudgetSeconds",
+  "classTimeBudgetSeconds",
+
   // Print the version of the Checker Framework
   "version",
   // Print info about git repository from which the Checker Framework was compiled
@@ -336,6 +357,15 @@ import org.plumelib.util.UtilPlume;
   // org.checkerframework.framework.source.SourceChecker.message(Kind, Object, String, Object...)
   "detailedmsgtext",
 
+  // Print the messages of a checker that has subcheckers as they are issued, rather than storing
+  // and sorting the messages of each class
+  // org.checkerframework.framework.source.SourceChecker.messageStore
+  "streamMessages",
+
+  // Also write the messages to a file in the SARIF format
+  // org.checkerframework.framework.source.SarifWriter
+  "sarifOutput",
+
   // Stub and JDK libraries
 
   // Ignore the standard jdk.astub file; primarily for testing or debugging.
@@ -408,6 +438,10 @@ import org.plumelib.util.UtilPlume;
   // Sets AnnotatedTypeFactory shouldCache to false
   "atfDoNotCache",
 
+  // Makes the AnnotatedTypeFactory and QualifierDefaults caches and the TreePathCacher thread-safe
+  // org.checkerframework.framework.type.AnnotatedTypeFactory.createCache
+  "atfConcurrentCaches",
+
   // Language Server Protocol (LSP) Support
 
   // TODO: document `-AlspTypeInfo` in manual, as a debugging option.
@@ -498,8 +532,9 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
    * The purpose is to sort messages, grouping together all messages about a particular line of
    * code.
    *
-   * <p>If this checker has no subcheckers and is not a subchecker for any other checker, then
-   * messageStore is null and messages will be printed as they are issued by this checker.
+   * <p>If this checker has no subcheckers and is not a subchecker for any other checker, or if the
+   * {@code -AstreamMessages} command-line option was passed, then messageStore is null and messages
+   * will be printed as they are issued by this checker.
    */
   protected @MonotonicNonNull TreeSet<CheckerMessage> messageStore;
 
@@ -636,6 +671,9 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
   /** True if the -AshowPrefixInWarningMessages command-line argument was passed. */
   private boolean showPrefixInWarningMessages;
 
+  /** True if the -AdumpOnErrors command-line argument was passed. */
+  private boolean dumpOnErrors;
+
   /** True if the -AwarnUnneededSuppressions command-line argument was passed. */
   boolean warnUnneededSuppressions;
 
@@ -1056,6 +1094,9 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
     for (SourceChecker checker : getSubcheckers()) {
       checker.typeProcessingOver();
     }
+    if (sarifWriter != null && parentChecker == null) {
+      sarifWriter.close();
+    }
 
     super.typeProcessingOver();
   }
@@ -1091,7 +1132,7 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
 
     this.visitor = createSourceVisitor();
 
-    if (!getSubcheckers().isEmpty() && parentChecker == null) {
+    if (!getSubcheckers().isEmpty() && parentChecker == null && !hasOption("streamMessages")) {
       messageStore = new TreeSet<>();
     }
 
@@ -1105,7 +1146,40 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
     showSuppressWarningsStrings = hasOption("showSuppressWarningsStrings");
     requirePrefixInWarningSuppressions = hasOption("requirePrefixInWarningSuppressions");
     showPrefixInWarningMessages = hasOption("showPrefixInWarningMessages");
+    dumpOnErrors = hasOption("dumpOnErrors");
     warnUnneededSuppressions = hasOption("warnUnneededSuppressions");
+
+    String shard = getOption("checkerShard");
+    if (shard != null) {
+      int slash = shard.indexOf('/');
+      try {
+        shardIndex = Integer.parseInt(shard.substring(0, slash));
+        shardCount = Integer.parseInt(shard.substring(slash + 1));
+      } catch (NumberFormatException | IndexOutOfBoundsException e) {
+        shardCount = 0;
+      }
+      if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+        throw new UserError(
+            "The argument to -AcheckerShard must be I/N, where 0 <= I < N, but it is: " + shard);
+      }
+    }
+
+    String resultCacheDir = getOption("resultCacheDir");
+    // Whole-program inference has effects other than diagnostics, which the cache cannot replay.
+    if (resultCacheDir != null && parentChecker == null && !hasOption("infer")) {
+      resultCache = new CheckResultCache(Paths.get(resultCacheDir), this);
+      for (SourceChecker checker : getSubcheckers()) {
+        checker.resultCache = resultCache;
+      }
+    }
+
+    String sarifOutput = getOption("sarifOutput");
+    if (sarifOutput != null && parentChecker == null) {
+      sarifWriter = new SarifWriter(Paths.get(sarifOutput), this);
+      for (SourceChecker checker : getSubcheckers()) {
+        checker.sarifWriter = sarifWriter;
+      }
+    }
   }
 
   /** Output the warning about source level at most once. */
@@ -1128,6 +1202,34 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
    */
   private int errsOnLastExit = 0;
 
+  /**
+   * The index of the shard of compilation units that this checker checks; see {@link #isInShard}.
+   */
+  private int shardIndex = 0;
+
+  /**
+   * The number of shards into which the compilation units are partitioned; see {@link #isInShard}.
+   */
+  private int shardCount = 1;
+
+  /**
+   * Maps this checker and each of its subcheckers to the index of its group in {@link
+   * #getIndependentCheckerGroups}. A checker that is not in any group is absent. Null until needed.
+   */
+  private @MonotonicNonNull Map<SourceChecker, Integer> checkerGroups = null;
+
+  /**
+   * The cache of the diagnostics of each class, given by {@code -AresultCacheDir}, or null if the
+   * option was not passed. It is shared by this checker and its subcheckers.
+   */
+  private @Nullable CheckResultCache resultCache = null;
+
+  /**
+   * Writes the diagnostics to the file given by {@code -AsarifOutput}, or null if the option was
+   * not passed. It is shared by this checker and its subcheckers.
+   */
+  private @Nullable SarifWriter sarifWriter = null;
+
   /**
    * Returns the requested (immediate) subchecker. A checker of a given class can only be run once,
    * so this returns the only such checker, or null if none was found. The caller must know the
@@ -1233,7 +1335,10 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
   public TreePathCacher getTreePathCacher() {
     if (treePathCacher == null) {
       // In case it wasn't already set in instantiateSubcheckers.
-      treePathCacher = new TreePathCacher();
+      treePathCacher =
+          hasOption("atfConcurrentCaches")
+              ? new TreePathCacher.Synchronized()
+              : new TreePathCacher();
     }
     return treePathCacher;
   }
@@ -1245,6 +1350,9 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
    */
   @Override
   public void typeProcess(TypeElement e, TreePath p) {
+    if (parentChecker == null && p != null && !isInShard(p.getCompilationUnit(), this)) {
+      return;
+    }
     if (messageStore != null && parentChecker == null) {
       messageStore.clear();
     }
@@ -1261,8 +1369,30 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
     Context context = ((JavacProcessingEnvironment) processingEnv).getContext();
     Log log = Log.instance(context);
 
+    int errorsBeforeTypeProcess = log.nerrors;
+    // The cache that records the diagnostics of this class, or null if they are not recorded.
+    CheckResultCache recordingCache = null;
+    CheckResultCache cache = resultCache;
+    if (cache != null && parentChecker == null) {
+      cache.discard();
+      if (e != null
+          && p != null
+          && visitor != null
+          && !javacErrored
+          && log.nerrors == this.errsOnLastExit) {
+        if (cache.replay(e, p)) {
+          this.errsOnLastExit = log.nerrors;
+          return;
+        }
+        recordingCache = cache;
+      }
+    }
+
     int numErrorsOfAllPreviousCheckers = this.errsOnLastExit;
     for (SourceChecker subchecker : getSubcheckers()) {
+      if (p != null && !isInShard(p.getCompilationUnit(), subchecker)) {
+        continue;
+      }
       subchecker.errsOnLastExit = numErrorsOfAllPreviousCheckers;
       subchecker.messageStore = messageStore;
       int errorsBeforeTypeChecking = log.nerrors;
@@ -1281,12 +1411,11 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
 
     // Cannot use BugInCF here because it is outside of the try/catch for BugInCF.
     if (e == null) {
-      messager.printMessage(Diagnostic.Kind.ERROR, "Refusing to process empty TypeElement");
+      message(Diagnostic.Kind.ERROR, "Refusing to process empty TypeElement");
       return;
     }
     if (p == null) {
-      messager.printMessage(
-          Diagnostic.Kind.ERROR, "Refusing to process empty TreePath in TypeElement: " + e);
+      message(Diagnostic.Kind.ERROR, "Refusing to process empty TreePath in TypeElement: " + e);
       return;
     }
 
@@ -1299,7 +1428,7 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
                 && processingEnv.getOptions().containsKey("noWarnMemoryConstraints"));
         Diagnostic.Kind kind =
             noWarnMemoryConstraints ? Diagnostic.Kind.NOTE : Diagnostic.Kind.WARNING;
-        messager.printMessage(kind, gcUsageMessage);
+        message(kind, gcUsageMessage);
         warnedAboutGarbageCollection = true;
       }
     }
@@ -1308,7 +1437,7 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
     // Don't use source.allowTypeAnnotations() because that API changed after 9.
     // Also the enum constant Source.JDK1_8 was renamed at some point...
     if (!warnedAboutSourceLevel && source.compareTo(Source.lookup("8")) < 0) {
-      messager.printMessage(
+      message(
           Diagnostic.Kind.WARNING, "-source " + source.name + " does not support type annotations");
       warnedAboutSourceLevel = true;
     }
@@ -1365,6 +1494,12 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
         // Update errsOnLastExit to reflect the errors issued.
         this.errsOnLastExit = log.nerrors;
       }
+      if (recordingCache != null) {
+        recordingCache.save(log.nerrors - errorsBeforeTypeProcess);
+      }
+      if (sarifWriter != null && parentChecker == null) {
+        sarifWriter.flush();
+      }
     }
   }
 
@@ -1472,6 +1607,17 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
     }
 
     if (source instanceof Element) {
+      if (resultCache != null) {
+        resultCache.recordUnreplayable();
+      }
+      if (sarifWriter != null) {
+        TreePath path = trees.getPath((Element) source);
+        if (path == null) {
+          sarifWriter.write(kind, messageText, null, null);
+        } else {
+          sarifWriter.write(kind, messageText, path.getLeaf(), path.getCompilationUnit());
+        }
+      }
       messager.printMessage(kind, messageText, (Element) source);
     } else if (source instanceof Tree) {
       printOrStoreMessage(kind, messageText, (Tree) source, currentRoot);
@@ -1511,6 +1657,13 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
       // If this method is called before initChecker() sets the field
       messager = processingEnv.getMessager();
     }
+    if (resultCache != null) {
+      // The message has no position, so it cannot be replayed.
+      resultCache.recordUnreplayable();
+    }
+    if (sarifWriter != null) {
+      sarifWriter.write(kind, msg, null, null);
+    }
     messager.printMessage(kind, msg);
   }
 
@@ -1520,11 +1673,7 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
    * @param msg the message to print x
    */
   private void printMessage(String msg) {
-    if (messager == null) {
-      // If this method is called before initChecker() sets the field
-      messager = processingEnv.getMessager();
-    }
-    messager.printMessage(Diagnostic.Kind.ERROR, msg);
+    message(Diagnostic.Kind.ERROR, msg);
   }
 
   /**
@@ -1559,7 +1708,9 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
   protected void printOrStoreMessage(
       javax.tools.Diagnostic.Kind kind, String message, Tree source, CompilationUnitTree root) {
     assert this.currentRoot == root;
-    StackTraceElement[] trace = Thread.currentThread().getStackTrace();
+    // Getting the stack trace is expensive, and a stored message retains it.
+    StackTraceElement[] trace =
+        dumpOnErrors ? Thread.currentThread().getStackTrace() : new StackTraceElement[0];
     if (messageStore == null) {
       printOrStoreMessage(kind, message, source, root, trace);
     } else {
@@ -1587,6 +1738,12 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
       Tree source,
       CompilationUnitTree root,
       StackTraceElement[] trace) {
+    if (resultCache != null) {
+      resultCache.record(kind, message, source);
+    }
+    if (sarifWriter != null) {
+      sarifWriter.write(kind, message, source, root);
+    }
     Trees.instance(processingEnv).printMessage(kind, message, source, root);
     printStackTrace(trace);
   }
@@ -1597,7 +1754,7 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
    * @param trace stack trace when the checker encountered a warning/error
    */
   private void printStackTrace(StackTraceElement[] trace) {
-    if (hasOption("dumpOnErrors")) {
+    if (dumpOnErrors) {
       StringJoiner msg = new StringJoiner(System.lineSeparator());
       for (StackTraceElement elem : trace) {
         msg.add("\tat " + elem);
@@ -3078,6 +3235,139 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
     return skipFilesPattern.matcher(path).find() || !onlyFilesPattern.matcher(path).find();
   }
 
+  /**
+   * Returns true if the given checker, which is this checker or one of its subcheckers, should
+   * check the given compilation unit, according to the {@code -AcheckerShard=I/N} command-line
+   * option. That option partitions the pairs of a compilation unit and a group of independent
+   * checkers (see {@link #getIndependentCheckerGroups}) into N shards by a hash of the unit's URI,
+   * and only the pairs in shard I are checked. Several javac processes, each of which parses and
+   * attributes every compilation unit, can thereby divide the type-checking work between them; see
+   * {@link org.checkerframework.framework.util.ShardedCompilation}.
+   *
+   * @param unit a compilation unit
+   * @param checker this checker or one of its subcheckers
+   * @return true if {@code checker} should check {@code unit}
+   */
+  private boolean isInShard(CompilationUnitTree unit, SourceChecker checker) {
+    if (shardCount == 1) {
+      return true;
+    }
+    Map<SourceChecker, Integer> groupIndices = checkerGroups;
+    if (groupIndices == null) {
+      groupIndices = new IdentityHashMap<>();
+      List<List<SourceChecker>> groups = getIndependentCheckerGroups();
+      for (int i = 0; i < groups.size(); i++) {
+        for (SourceChecker member : groups.get(i)) {
+          groupIndices.put(member, i);
+        }
+      }
+      checkerGroups = groupIndices;
+    }
+    Integer group = groupIndices.get(checker);
+    if (group == null) {
+      // The checker does no type-checking of its own.
+      return true;
+    }
+    String uri = unit.getSourceFile().toUri().toString();
+    return Math.floorMod(uri.hashCode() + group, shardCount) == shardIndex;
+  }
+
+  /**
+   * Returns the names of the checkers, among this checker and its subcheckers, that check the given
+   * compilation unit in this shard; see {@link #isInShard}. Without {@code -AcheckerShard}, these
+   * are all of the checkers.
+   *
+   * @param unit a compilation unit
+   * @return the fully-qualified class names of the checkers that check {@code unit}, in the order
+   *     in which they run
+   */
+  List<String> getCheckersInShard(CompilationUnitTree unit) {
+    List<String> result = new ArrayList<>();
+    for (SourceChecker subchecker : getSubcheckers()) {
+      if (isInShard(unit, subchecker)) {
+        result.add(subchecker.getClass().getName());
+      }
+    }
+    if (isInShard(unit, this)) {
+      result.add(getClass().getName());
+    }
+    return result;
+  }
+
+  /**
+   * Partitions this checker and its subcheckers into groups that can type-check a compilation unit
+   * independently of one another. The groups are the connected components of the graph whose edges
+   * lead from each checker to its immediate subcheckers. This checker is omitted if it does not
+   * use the results of its subcheckers, as is the case for an {@link AggregateChecker}.
+   *
+   * <p>Within each group, the checkers appear in the order of {@link #getSubcheckers}, followed by
+   * this checker; that is, in an order in which they can be run. The groups are in the order of
+   * their first checker.
+   *
+   * @return the groups of checkers that can type-check a compilation unit independently
+   */
+  protected List<List<SourceChecker>> getIndependentCheckerGroups() {
+    List<SourceChecker> checkers = new ArrayList<>(getSubcheckers());
+    boolean includeThis = usesSubcheckerResults() || checkers.isEmpty();
+    if (includeThis) {
+      checkers.add(this);
+    }
+    // Maps each checker to its parent in a union-find forest; the roots represent the groups.
+    Map<SourceChecker, SourceChecker> parents = new IdentityHashMap<>();
+    for (SourceChecker checker : checkers) {
+      parents.put(checker, checker);
+    }
+    for (SourceChecker checker : checkers) {
+      List<SourceChecker> dependencies = checker.immediateSubcheckers;
+      if (dependencies == null) {
+        continue;
+      }
+      for (SourceChecker dependency : dependencies) {
+        parents.put(findGroup(parents, checker), findGroup(parents, dependency));
+      }
+    }
+
+    Map<SourceChecker, List<SourceChecker>> groups = new LinkedHashMap<>();
+    for (SourceChecker checker : checkers) {
+      groups.computeIfAbsent(findGroup(parents, checker), k -> new ArrayList<>()).add(checker);
+    }
+    return new ArrayList<>(groups.values());
+  }
+
+  /**
+   * Returns the checker that represents the group of the given checker in a union-find forest.
+   *
+   * @param parents maps each checker to its parent in the forest; is modified by path compression
+   * @param checker a checker in the forest
+   * @return the root of the tree that contains {@code checker}
+   */
+  @SuppressWarnings("nullness:assignment") // every checker in the forest is a key of `parents`
+  private static SourceChecker findGroup(
+      Map<SourceChecker, SourceChecker> parents, SourceChecker checker) {
+    SourceChecker root = checker;
+    while (parents.get(root) != root) {
+      root = parents.get(root);
+    }
+    while (checker != root) {
+      SourceChecker next = parents.get(checker);
+      parents.put(checker, root);
+      checker = next;
+    }
+    return root;
+  }
+
+  /**
+   * Returns true if this checker uses the results of its subcheckers, and therefore must run after
+   * them on each compilation unit. If this returns false, as it does for an {@link
+   * AggregateChecker}, then {@code -AcheckerShard} may assign subcheckers that do not depend on one
+   * another to different shards.
+   *
+   * @return true if this checker uses the results of its subcheckers
+   */
+  protected boolean usesSubcheckerResults() {
+    return true;
+  }
+
   // ///////////////////////////////////////////////////////////////////////////
   // Errors other than type-checking errors
   //
@@ -3326,7 +3616,7 @@ public abstract class SourceChecker extends AbstractTypeProcessor implements Opt
    *
    * @return the Checker Framework version
    */
-  private String getCheckerVersion() {
+  /*package-private*/ String getCheckerVersion() {
     Properties gitProperties = getProperties(getClass(), "/git.properties", false);
     String version = gitProperties.getProperty("git.build.version");
     if (version == null) {
@@ -3,25 +3,32 @@ package org.checkerframework.framework.stub;
 import com.sun.source.tree.CompilationUnitTree;
 import io.github.classgraph.ClassGraph;
 import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.ProcessBuilder.Redirect;
 import java.net.JarURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringJoiner;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -32,7 +39,11 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.IntersectionType;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
 import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -41,11 +52,13 @@ import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.framework.qual.StubFiles;
 import org.checkerframework.framework.source.SourceChecker;
 import org.checkerframework.framework.stub.AnnotationFileParser.AnnotationFileAnnotations;
+import org.checkerframework.framework.stub.AnnotationFileParser.DeferredTypeDecl;
 import org.checkerframework.framework.stub.AnnotationFileParser.RecordComponentStub;
 import org.checkerframework.framework.stub.AnnotationFileUtil.AnnotationFileType;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
 import org.checkerframework.framework.type.AnnotatedTypeMirror;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedExecutableType;
+import org.checkerframework.framework.util.TopLevelDeclarations;
 import org.checkerframework.javacutil.AnnotationMirrorSet;
 import org.checkerframework.javacutil.BugInCF;
 import org.checkerframework.javacutil.ElementUtils;
@@ -87,6 +100,32 @@ public class AnnotationFileElementTypes {
    */
   private final Map<String, String> remainingJdkStubFilesJar = new HashMap<>();
 
+  /**
+   * Mapping from fully-qualified name of a top-level class to its declarations in stub files (other
+   * than the annotated JDK) that have not yet been processed, in the order the files were read.
+   * When the declarations are processed, the mapping is removed from this map.
+   */
+  private final Map<String, List<DeferredTypeDecl>> remainingStubTypeDecls = new HashMap<>();
+
+  /**
+   * Mapping from fully-qualified name of a top-level class to the ajava files that declare it, from
+   * {@code -Aajava} directories, that have not yet been read. When the files are read, the mapping
+   * is removed from this map. An ajava file that declares several top-level classes is in the
+   * mapping of each of them; see {@link #ajavaFilesRead}.
+   */
+  private final Map<String, List<String>> remainingAjavaFiles = new HashMap<>();
+
+  /** The ajava files from {@code -Aajava} directories that have been read. */
+  private final Set<String> ajavaFilesRead = new HashSet<>();
+
+  /**
+   * The fully-qualified names of the classes for which the deferred declarations of the class and
+   * all its supertypes have been processed.
+   *
+   * @see #processDeferredTypeDeclsOfSupertypes
+   */
+  private final Set<String> supertypesProcessed = new HashSet<>();
+
   /** Which version number of the annotated JDK should be used? */
   private final String annotatedJdkVersion;
 
@@ -105,6 +144,21 @@ public class AnnotationFileElementTypes {
   /** True if -AstubDebug was passed on the command line. */
   private final boolean stubDebug;
 
+  /**
+   * The jar entry, written by the build, that lists the files of the annotated JDK, one per line
+   * and in sorted order. Reading it avoids enumerating and sorting every entry of checker.jar.
+   */
+  private static final String JDK_INDEX_ENTRY = "annotated-jdk/jdk-index.txt";
+
+  /**
+   * A process-wide cache from the URL of a jar file to the modification time of the jar file and
+   * the sorted names of the annotated JDK files that it contains. Every type factory, and every
+   * compilation in a long-lived process such as a build daemon, reads the same jar, so the jar is
+   * indexed only once. An entry is discarded when the jar file is replaced.
+   */
+  private static final Map<String, IPair<Long, List<String>>> jdkJarEntriesCache =
+      new HashMap<>();
+
   /**
    * Creates an empty annotation source.
    *
@@ -154,6 +208,10 @@ public class AnnotationFileElementTypes {
    *
    * <p>If using JDK 11, then the JDK stub files are only parsed if a type or declaration annotation
    * is requested from a class in that file.
+   *
+   * <p>The files (other than the annotated JDK) are first all read, and parsed concurrently by
+   * {@link AnnotationFileParser#parseStubUnitsConcurrently}; then they are resolved one at a time,
+   * in the order above.
    */
   public void parseStubFiles() {
     if (stubDebug) {
@@ -163,48 +221,65 @@ public class AnnotationFileElementTypes {
     }
     parsing = true;
     BaseTypeChecker checker = factory.getChecker();
+    // The files that are resolved before the annotated JDK is prepped.
+    List<AnnotationFileContents> jdkStubFiles = new ArrayList<>();
+    // The files that are resolved after the annotated JDK is prepped.
+    List<AnnotationFileContents> stubFiles = new ArrayList<>();
     if (!ignorejdkastub) {
       // 1. jdk.astub
-      // Only look in .jar files, and parse it right away.
+      // Only look in .jar files.
       String jdkVersionStub = "jdk" + annotatedJdkVersion + ".astub";
-      parseOneStubFile(this.getClass(), "jdk.astub");
-      parseOneStubFile(this.getClass(), jdkVersionStub);
-      parseOneStubFile(checker.getClass(), "jdk.astub");
-      parseOneStubFile(checker.getClass(), jdkVersionStub);
+      readOneStubFile(this.getClass(), "jdk.astub", jdkStubFiles);
+      readOneStubFile(this.getClass(), jdkVersionStub, jdkStubFiles);
+      readOneStubFile(checker.getClass(), "jdk.astub", jdkStubFiles);
+      readOneStubFile(checker.getClass(), jdkVersionStub, jdkStubFiles);
       // This needs to be special-cased for every jdkX.astub for which files exist. :-(
       if (annotatedJdkVersion.equals("8")) {
         String jdk11Stub = "jdk11.astub";
-        parseOneStubFile(this.getClass(), jdk11Stub);
-        parseOneStubFile(checker.getClass(), jdk11Stub);
+        readOneStubFile(this.getClass(), jdk11Stub, jdkStubFiles);
+        readOneStubFile(checker.getClass(), jdk11Stub, jdkStubFiles);
       }
-
-      // 2. Annotated JDK
-      // This preps but does not parse the JDK files (except package-info.java files).
-      // The JDK source code files will be parsed later, on demand.
-      prepJdkStubs();
-      // prepping the JDK parses all package-info.java files, which sets the `parsing` field
-      // to false, so re-set it to true.
-      parsing = true;
     }
 
     // 3. Stub files listed in @StubFiles annotation on the checker
     StubFiles stubFilesAnnotation = checker.getClass().getAnnotation(StubFiles.class);
     if (stubFilesAnnotation != null) {
-      parseAnnotationFiles(
-          Arrays.asList(stubFilesAnnotation.value()), AnnotationFileType.BUILTIN_STUB);
+      readAnnotationFiles(
+          Arrays.asList(stubFilesAnnotation.value()), AnnotationFileType.BUILTIN_STUB, stubFiles);
     }
 
     // 4. Stub files returned by the `getExtraStubFiles()` method
-    parseAnnotationFiles(checker.getExtraStubFiles(), AnnotationFileType.BUILTIN_STUB);
+    readAnnotationFiles(checker.getExtraStubFiles(), AnnotationFileType.BUILTIN_STUB, stubFiles);
 
     // 5. Stub files provided via -Astubs command-line option
     String stubsOption = checker.getOption("stubs");
     if (stubsOption != null) {
-      parseAnnotationFiles(
+      readAnnotationFiles(
           SystemUtil.pathSeparatorSplitter.splitToList(stubsOption),
-          AnnotationFileType.COMMAND_LINE_STUB);
+          AnnotationFileType.COMMAND_LINE_STUB,
+          stubFiles);
     }
 
+    List<byte[]> allContents = new ArrayList<>(jdkStubFiles.size() + stubFiles.size());
+    for (AnnotationFileContents file : jdkStubFiles) {
+      allContents.add(file.contents);
+    }
+    for (AnnotationFileContents file : stubFiles) {
+      allContents.add(file.contents);
+    }
+    String stubCacheDir = checker.getOption("stubCacheDir");
+    AnnotationFileParser.parseStubUnitsConcurrently(
+        allContents, stubCacheDir == null ? null : Paths.get(stubCacheDir));
+
+    parseAnnotationFileContents(jdkStubFiles);
+    if (!ignorejdkastub) {
+      // 2. Annotated JDK
+      // This preps but does not parse the JDK files (except package-info.java files).
+      // The JDK source code files will be parsed later, on demand.
+      prepJdkStubs();
+    }
+    parseAnnotationFileContents(stubFiles);
+
     parsing = false;
 
     if (stubDebug) {
@@ -212,13 +287,59 @@ public class AnnotationFileElementTypes {
     }
   }
 
+  /** The contents of an annotation file that has been read but not yet parsed. */
+  private static class AnnotationFileContents {
+    /** A description of the file, such as its path, for diagnostics. */
+    final String description;
+
+    /** The contents of the file. */
+    final byte[] contents;
+
+    /** The type of the file. */
+    final AnnotationFileType fileType;
+
+    /**
+     * Creates an AnnotationFileContents.
+     *
+     * @param description a description of the file, such as its path, for diagnostics
+     * @param contents the contents of the file
+     * @param fileType the type of the file
+     */
+    AnnotationFileContents(String description, byte[] contents, AnnotationFileType fileType) {
+      this.description = description;
+      this.contents = contents;
+      this.fileType = fileType;
+    }
+  }
+
+  /**
+   * Parses annotation files that have been read, in order.
+   *
+   * @param files the annotation files to parse
+   */
+  private void parseAnnotationFileContents(List<AnnotationFileContents> files) {
+    ProcessingEnvironment processingEnv = factory.getProcessingEnv();
+    for (AnnotationFileContents file : files) {
+      AnnotationFileParser.parseStubFile(
+          file.description,
+          new ByteArrayInputStream(file.contents),
+          factory,
+          processingEnv,
+          annotationFileAnnos,
+          file.fileType,
+          remainingStubTypeDecls);
+    }
+  }
+
   /**
-   * Parse one .astub file.
+   * Reads one .astub file, if it exists.
    *
    * @param checkerClass the location of the resource in the checker.jar file
    * @param stubFileName the basename of the .astub file
+   * @param result the list to add the file to
    */
-  private void parseOneStubFile(Class<?> checkerClass, String stubFileName) {
+  private void readOneStubFile(
+      Class<?> checkerClass, String stubFileName, List<AnnotationFileContents> result) {
     BaseTypeChecker checker = factory.getChecker();
     ProcessingEnvironment processingEnv = factory.getProcessingEnv();
     try (InputStream jdkVersionStubIn = checkerClass.getResourceAsStream(stubFileName)) {
@@ -226,18 +347,16 @@ public class AnnotationFileElementTypes {
         if (stubDebug) {
           AnnotationFileParser.stubDebugStatic(
               processingEnv,
-              "parseOneStubFile(%s, %s): jdkVersionStubIn = %s%n",
+              "readOneStubFile(%s, %s): jdkVersionStubIn = %s%n",
               checkerClass.getSimpleName(),
               stubFileName,
               jdkVersionStubIn);
         }
-        AnnotationFileParser.parseStubFile(
-            checkerClass.getResource(stubFileName).toString(),
-            jdkVersionStubIn,
-            factory,
-            processingEnv,
-            annotationFileAnnos,
-            AnnotationFileType.BUILTIN_STUB);
+        result.add(
+            new AnnotationFileContents(
+                checkerClass.getResource(stubFileName).toString(),
+                AnnotationFileUtil.readAllBytes(jdkVersionStubIn),
+                AnnotationFileType.BUILTIN_STUB));
       }
     } catch (IOException e) {
       checker.message(
@@ -248,14 +367,90 @@ public class AnnotationFileElementTypes {
 
   /** Parses the ajava files passed through the -Aajava command-line option. */
   public void parseAjavaFiles() {
+    boolean wasParsing = parsing;
     parsing = true;
     try {
       // TODO: Error if this is called more than once?
       SourceChecker checker = factory.getChecker();
       List<String> ajavaFiles = checker.getStringsOption("ajava", File.pathSeparator);
+      if (AnnotationFileParser.mayDeferTypeDecls(
+          factory, factory.getProcessingEnv(), AnnotationFileType.AJAVA_AS_STUB)) {
+        ajavaFiles = indexAjavaDirectories(ajavaFiles);
+      }
       parseAnnotationFiles(ajavaFiles, AnnotationFileType.AJAVA);
     } finally {
-      parsing = false;
+      parsing = wasParsing;
+    }
+  }
+
+  /**
+   * Adds the ajava files in the given directories to {@link #remainingAjavaFiles}, so that each is
+   * read only when one of its classes is first used. The classes are the top-level types that the
+   * file declares, in the package that it declares; both are found without parsing the file, so
+   * the name and location of the file do not matter.
+   *
+   * @param ajavaLocations the ajava files and directories passed via {@code -Aajava}
+   * @return the elements of {@code ajavaLocations} that are not directories; they are read eagerly
+   */
+  private List<String> indexAjavaDirectories(List<String> ajavaLocations) {
+    List<String> result = new ArrayList<>();
+    for (String location : ajavaLocations) {
+      // Special case when running in jtreg.
+      String base = System.getProperty("test.src");
+      File dir = new File((base == null) ? location : base + "/" + location);
+      if (!dir.isDirectory()) {
+        dir = new File(System.getProperty("user.dir"), location);
+      }
+      if (dir.isDirectory()) {
+        indexAjavaDirectory(dir, result);
+      } else {
+        result.add(location);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds the ajava files in {@code dir} and its subdirectories to {@link #remainingAjavaFiles}.
+   *
+   * @param dir a directory that contains ajava files
+   * @param unindexed the ajava files whose top-level types could not be determined; side-effected
+   *     by this method
+   */
+  private void indexAjavaDirectory(File dir, List<String> unindexed) {
+    File[] directoryContents = dir.listFiles();
+    if (directoryContents == null) {
+      return;
+    }
+    Arrays.sort(directoryContents, Comparator.comparing(File::getName));
+    for (File file : directoryContents) {
+      String name = file.getName();
+      if (file.isDirectory()) {
+        indexAjavaDirectory(file, unindexed);
+      } else if (file.isFile() && name.endsWith(".ajava")) {
+        TopLevelDeclarations declarations;
+        try {
+          declarations =
+              TopLevelDeclarations.scan(
+                  new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+          // parseAnnotationFiles reports the problem.
+          unindexed.add(file.getPath());
+          continue;
+        }
+        List<String> typeNames = declarations.typeNames;
+        if (typeNames == null || typeNames.isEmpty()) {
+          unindexed.add(file.getPath());
+        } else {
+          String packagePrefix =
+              declarations.packageName.isEmpty() ? "" : declarations.packageName + ".";
+          for (String typeName : typeNames) {
+            remainingAjavaFiles
+                .computeIfAbsent(packagePrefix + typeName, k -> new ArrayList<>(1))
+                .add(file.getPath());
+          }
+        }
+      }
     }
   }
 
@@ -269,6 +464,7 @@ public class AnnotationFileElementTypes {
    * @param root javac tree for the compilation unit stored in {@code ajavaFile}
    */
   public void parseAjavaFileWithTree(String ajavaPath, CompilationUnitTree root) {
+    boolean wasParsing = parsing;
     parsing = true;
     SourceChecker checker = factory.getChecker();
     ProcessingEnvironment processingEnv = factory.getProcessingEnv();
@@ -287,7 +483,7 @@ public class AnnotationFileElementTypes {
     } catch (IOException e) {
       checker.message(Diagnostic.Kind.NOTE, "Could not read ajava file: " + ajavaPath);
     } finally {
-      parsing = false;
+      parsing = wasParsing;
     }
   }
 
@@ -299,6 +495,21 @@ public class AnnotationFileElementTypes {
    * @param annotationFiles list of files and directories to parse
    * @param fileType the file type of files to parse
    */
+  private void parseAnnotationFiles(List<String> annotationFiles, AnnotationFileType fileType) {
+    List<AnnotationFileContents> files = new ArrayList<>();
+    readAnnotationFiles(annotationFiles, fileType, files);
+    parseAnnotationFileContents(files);
+  }
+
+  /**
+   * Reads the files in {@code annotationFiles} of the given file type. This includes files listed
+   * directly in {@code annotationFiles} and for each listed directory, also includes all files
+   * located in that directory (recursively). Warns about files that cannot be found.
+   *
+   * @param annotationFiles list of files and directories to read
+   * @param fileType the file type of files to read
+   * @param result the list to add the files to
+   */
   @SuppressWarnings("builder:required.method.not.called" // `allFiles` may contain multiple
   // JarEntryAnnotationFileResource.  Each of those references a zip file entry resource, which
   // itself references a ZipFile resource -- the same ZipFile for multiple zip file entries.
@@ -306,7 +517,10 @@ public class AnnotationFileElementTypes {
   // other zipfile entries.  Therefore, this code does not close any of them.  This code may
   // leak resources.
   )
-  private void parseAnnotationFiles(List<String> annotationFiles, AnnotationFileType fileType) {
+  private void readAnnotationFiles(
+      List<String> annotationFiles,
+      AnnotationFileType fileType,
+      List<AnnotationFileContents> result) {
     if (annotationFiles.isEmpty()) {
       return;
     }
@@ -315,7 +529,7 @@ public class AnnotationFileElementTypes {
     ProcessingEnvironment processingEnv = factory.getProcessingEnv();
     if (stubDebug) {
       AnnotationFileParser.stubDebugStatic(
-          processingEnv, "AFET.parseAnnotationFiles(%s, %s)", annotationFiles, fileType);
+          processingEnv, "AFET.readAnnotationFiles(%s, %s)", annotationFiles, fileType);
     }
     for (String path : annotationFiles) {
       // Special case when running in jtreg.
@@ -326,9 +540,9 @@ public class AnnotationFileElementTypes {
           AnnotationFileUtil.allAnnotationFiles(fullPath, fileType);
       if (allFiles != null) {
         for (AnnotationFileResource resource : allFiles) {
-          BufferedInputStream annotationFileStream;
-          try {
-            annotationFileStream = new BufferedInputStream(resource.getInputStream());
+          byte[] contents;
+          try (InputStream in = resource.getInputStream()) {
+            contents = AnnotationFileUtil.readAllBytes(in);
           } catch (IOException e) {
             checker.message(
                 Diagnostic.Kind.NOTE,
@@ -336,7 +550,8 @@ public class AnnotationFileElementTypes {
             continue;
           }
           // Is it necessary to also skip files that consist only of Java comments?
-          Boolean isWhitespaceOnly = SystemUtil.isWhitespaceOnly(annotationFileStream, 100);
+          Boolean isWhitespaceOnly =
+              SystemUtil.isWhitespaceOnly(new ByteArrayInputStream(contents), 100);
           if (isWhitespaceOnly != null && (boolean) isWhitespaceOnly) {
             continue;
           }
@@ -344,13 +559,13 @@ public class AnnotationFileElementTypes {
           // ajava files are parsed as stub files. The extra annotation data in an
           // ajava file is parsed when type-checking the ajava file's corresponding
           // Java file.
-          AnnotationFileParser.parseStubFile(
-              resource.getDescription(),
-              annotationFileStream,
-              factory,
-              processingEnv,
-              annotationFileAnnos,
-              fileType == AnnotationFileType.AJAVA ? AnnotationFileType.AJAVA_AS_STUB : fileType);
+          result.add(
+              new AnnotationFileContents(
+                  resource.getDescription(),
+                  contents,
+                  fileType == AnnotationFileType.AJAVA
+                      ? AnnotationFileType.AJAVA_AS_STUB
+                      : fileType));
         }
       } else {
         // We didn't find the files.
@@ -361,8 +576,8 @@ public class AnnotationFileElementTypes {
         }
         try (InputStream in = checker.getClass().getResourceAsStream(path)) {
           if (in != null) {
-            AnnotationFileParser.parseStubFile(
-                path, in, factory, processingEnv, annotationFileAnnos, fileType);
+            result.add(
+                new AnnotationFileContents(path, AnnotationFileUtil.readAllBytes(in), fileType));
           } else {
             // Didn't find the file.  Issue a warning.
 
@@ -433,7 +648,7 @@ public class AnnotationFileElementTypes {
     if (isParsing()) {
       return null;
     }
-    maybeParseEnclosingJdkClass(e);
+    maybeParseEnclosingClass(e);
     AnnotatedTypeMirror type = annotationFileAnnos.atypes.get(e);
     return type == null ? null : type.deepCopy();
   }
@@ -465,7 +680,7 @@ public class AnnotationFileElementTypes {
       return AnnotationMirrorSet.emptySet();
     }
 
-    maybeParseEnclosingJdkClass(elt);
+    maybeParseEnclosingClass(elt);
     String eltName = ElementUtils.getQualifiedName(elt);
     if (annotationFileAnnos.declAnnos.containsKey(eltName)) {
       return annotationFileAnnos.declAnnos.get(eltName);
@@ -525,6 +740,7 @@ public class AnnotationFileElementTypes {
     if (isParsing()) {
       throw new BugInCF("parsing while calling injectRecordComponentType");
     }
+    maybeParseEnclosingClass(elt);
 
     if (elt.getKind() == ElementKind.METHOD) {
       if (((ExecutableElement) elt).getParameters().isEmpty()) {
@@ -591,6 +807,9 @@ public class AnnotationFileElementTypes {
 
     ExecutableElement method = (ExecutableElement) elt;
 
+    // A fake override is recorded when the stub declaration of a subtype is processed.
+    processDeferredTypeDeclsOfSupertypes(receiverType.getUnderlyingType());
+
     // This is a list of pairs of (where defined, method type) for fake overrides.  The second
     // element of each pair is currently always an AnnotatedExecutableType.
     List<IPair<TypeMirror, AnnotatedTypeMirror>> candidates =
@@ -668,19 +887,19 @@ public class AnnotationFileElementTypes {
   //
 
   /**
-   * Parses the outermost enclosing class of {@code e} if it is in the annotated JDK and it has not
-   * already been parsed.
+   * Processes the deferred stub declarations of the outermost enclosing class of {@code e}, then
+   * parses the class if it is in the annotated JDK and it has not already been parsed. The stub
+   * declarations come first so that they take precedence over the annotated JDK.
    *
-   * @param e element whose outermost enclosing class might be parsed, if it is in the JDK and has
-   *     not already been parsed
+   * @param e element whose outermost enclosing class might be parsed
    */
-  private void maybeParseEnclosingJdkClass(Element e) {
+  private void maybeParseEnclosingClass(Element e) {
     if (stubDebug) {
       System.out.printf(
-          "maybeParseEnclosingJdkClass(%s encloses %s), shouldParseJdk=%s%n",
+          "maybeParseEnclosingClass(%s encloses %s), shouldParseJdk=%s%n",
           getOutermostEnclosingClass(e), e, shouldParseJdk);
     }
-    if (!shouldParseJdk) {
+    if (!shouldParseJdk && remainingStubTypeDecls.isEmpty() && remainingAjavaFiles.isEmpty()) {
       return;
     }
     String className = getOutermostEnclosingClass(e);
@@ -688,6 +907,10 @@ public class AnnotationFileElementTypes {
     if (className == null || className.isEmpty()) {
       return;
     }
+    processDeferredTypeDecls(className);
+    if (!shouldParseJdk) {
+      return;
+    }
     if (remainingJdkStubFiles.containsKey(className)) {
       parseJdkStubFile(remainingJdkStubFiles.remove(className));
     } else if (remainingJdkStubFilesJar.containsKey(className)) {
@@ -699,6 +922,97 @@ public class AnnotationFileElementTypes {
     }
   }
 
+  /**
+   * Processes the stub declarations and reads the ajava files of the given top-level class, if they
+   * were deferred and have not been processed yet.
+   *
+   * @param className the fully-qualified name of a top-level class
+   */
+  private void processDeferredTypeDecls(String className) {
+    List<String> ajavaFiles = remainingAjavaFiles.remove(className);
+    List<DeferredTypeDecl> typeDecls = remainingStubTypeDecls.remove(className);
+    if (ajavaFiles == null && typeDecls == null) {
+      return;
+    }
+    // This may be called while another file is being parsed, such as for a supertype.
+    boolean wasParsing = parsing;
+    parsing = true;
+    try {
+      if (ajavaFiles != null) {
+        for (String ajavaFile : ajavaFiles) {
+          // The file might declare several classes, and have been read for another of them.
+          if (ajavaFilesRead.add(ajavaFile)) {
+            parseAjavaFileAsStub(ajavaFile);
+          }
+        }
+      }
+      if (typeDecls != null) {
+        for (DeferredTypeDecl typeDecl : typeDecls) {
+          typeDecl.process(annotationFileAnnos);
+        }
+      }
+    } finally {
+      parsing = wasParsing;
+    }
+  }
+
+  /**
+   * Reads an ajava file from an {@code -Aajava} directory, as a stub file. The AST of the file is
+   * not retained.
+   *
+   * @param ajavaPath the path of an ajava file
+   */
+  private void parseAjavaFileAsStub(String ajavaPath) {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(ajavaPath))) {
+      if (stubDebug) {
+        System.out.printf("parseAjavaFileAsStub(%s)%n", ajavaPath);
+      }
+      AnnotationFileParser.parseStubFile(
+          ajavaPath,
+          in,
+          factory,
+          factory.getProcessingEnv(),
+          annotationFileAnnos,
+          AnnotationFileType.AJAVA_AS_STUB);
+    } catch (IOException e) {
+      factory
+          .getChecker()
+          .message(Diagnostic.Kind.NOTE, "Could not read annotation resource: " + ajavaPath);
+    }
+  }
+
+  /**
+   * Processes the deferred stub declarations of the class of {@code type} and of all its
+   * supertypes. Does not parse the annotated JDK.
+   *
+   * @param type a type
+   */
+  private void processDeferredTypeDeclsOfSupertypes(TypeMirror type) {
+    if (remainingStubTypeDecls.isEmpty() && remainingAjavaFiles.isEmpty()) {
+      return;
+    }
+    ArrayDeque<TypeMirror> worklist = new ArrayDeque<>();
+    worklist.add(type);
+    while (!worklist.isEmpty()) {
+      TypeMirror t = worklist.removeFirst();
+      if (t.getKind() == TypeKind.TYPEVAR) {
+        worklist.add(((TypeVariable) t).getUpperBound());
+      } else if (t.getKind() == TypeKind.INTERSECTION) {
+        worklist.addAll(((IntersectionType) t).getBounds());
+      } else if (t.getKind() == TypeKind.DECLARED) {
+        TypeElement typeElt = (TypeElement) ((DeclaredType) t).asElement();
+        if (!supertypesProcessed.add(typeElt.getQualifiedName().toString())) {
+          continue;
+        }
+        String className = getOutermostEnclosingClass(typeElt);
+        if (className != null && !className.isEmpty()) {
+          processDeferredTypeDecls(className);
+        }
+        worklist.addAll(factory.types.directSupertypes(t));
+      }
+    }
+  }
+
   /**
    * Returns the fully qualified name of the outermost enclosing class of {@code e} or {@code null}
    * if no such class exists for {@code e}, such as when {@code e} is a package or module element.
@@ -736,6 +1050,7 @@ public class AnnotationFileElementTypes {
    * @param path path to file to parse
    */
   private void parseJdkStubFile(Path path) {
+    boolean wasParsing = parsing;
     parsing = true;
     try (FileInputStream jdkStub = new FileInputStream(path.toFile())) {
       AnnotationFileParser.parseJdkFileAsStub(
@@ -747,7 +1062,7 @@ public class AnnotationFileElementTypes {
     } catch (IOException e) {
       throw new BugInCF("cannot open the jdk stub file " + path, e);
     } finally {
-      parsing = false;
+      parsing = wasParsing;
     }
   }
 
@@ -761,21 +1076,22 @@ public class AnnotationFileElementTypes {
       System.out.printf("entered parseJdkJarEntry(%s)%n", jarEntryName);
     }
 
-    JarURLConnection connection = getJarURLConnectionToJdk();
+    boolean wasParsing = parsing;
     parsing = true;
-    try (JarFile jarFile = connection.getJarFile()) {
-      try (InputStream jdkStub = jarFile.getInputStream(jarFile.getJarEntry(jarEntryName))) {
-        AnnotationFileParser.parseJdkFileAsStub(
-            jarEntryName, jdkStub, factory, factory.getProcessingEnv(), annotationFileAnnos);
-      } catch (IOException e) {
-        throw new BugInCF("cannot open the jdk stub file " + jarEntryName, e);
+    // Read the entry through the class loader, which already has the jar open, rather than
+    // opening and indexing the whole jar again for every JDK class.
+    try (InputStream jdkStub = factory.getClass().getResourceAsStream("/" + jarEntryName)) {
+      if (jdkStub == null) {
+        throw new BugInCF("cannot find the jdk stub file " + jarEntryName);
       }
+      AnnotationFileParser.parseJdkFileAsStub(
+          jarEntryName, jdkStub, factory, factory.getProcessingEnv(), annotationFileAnnos);
     } catch (IOException e) {
-      throw new BugInCF("cannot open the Jar file " + connection.getEntryName(), e);
+      throw new BugInCF("cannot open the jdk stub file " + jarEntryName, e);
     } catch (BugInCF e) {
       throw new BugInCF("Exception while parsing " + jarEntryName + ": " + e.getMessage(), e);
     } finally {
-      parsing = false;
+      parsing = wasParsing;
     }
 
     if (stubDebug) {
@@ -899,59 +1215,146 @@ public class AnnotationFileElementTypes {
   private void prepJdkFromJar(@SuppressWarnings("UnusedVariable") URL jdkJarfile) {
     JarURLConnection connection = getJarURLConnectionToJdk();
 
-    try (JarFile jarFile = connection.getJarFile()) {
-      ArrayList<JarEntry> entries = CollectionsPlume.makeArrayList(jarFile.entries());
-      entries.sort(Comparator.comparing(Object::toString));
-      for (JarEntry jarEntry : entries) {
-        // filter out directories and non-Java files
-        if (jarEntry.isDirectory()) {
-          continue;
-        }
-        String jarEntryName = jarEntry.getName();
-        if (!(jarEntryName.startsWith("annotated-jdk") && jarEntryName.endsWith(".java"))
-            // JavaParser can't parse module-info files, so skip them.
-            || jarEntryName.endsWith("module-info.java")) {
-          continue;
-        }
-        if (parseAllJdkFiles || jarEntryName.endsWith("package-info.java")) {
-          parseJdkJarEntry(jarEntryName);
-          continue;
-        }
-        int index = jarEntryName.indexOf("/share/classes/") + "/share/classes/".length();
-        // "-5" is to remove ".java" from end of file name
-        String fqClassName =
-            jarEntryName.substring(index, jarEntryName.length() - 5).replace('/', '.');
-        remainingJdkStubFilesJar.put(fqClassName, jarEntryName);
+    for (String jarEntryName : getJdkJarEntries(connection)) {
+      if (parseAllJdkFiles || jarEntryName.endsWith("package-info.java")) {
+        parseJdkJarEntry(jarEntryName);
+        continue;
       }
-      if (stubDebug) {
-        String factoryClass = factory.getClass().getSimpleName().toString();
-        String jarFileURL = connection.getJarFileURL().toString();
-        System.out.printf(
-            "Contents of remainingJdkStubFilesJar for %s from %s:%n", factoryClass, jarFileURL);
-        printSortedIndented(remainingJdkStubFilesJar.keySet());
-        System.out.printf(
-            "End of remainingJdkStubFilesJar for %s from %s.%n", factoryClass, jarFileURL);
-
-        System.out.printf("Contents of %s:%n", jarFileURL);
-        assert jarFileURL.startsWith("file:");
-        ProcessBuilder pb =
-            new ProcessBuilder(
-                "/bin/sh", "-c", "jar tf '" + jarFileURL.substring(5) + "' | LC_ALL=C sort");
-        pb.redirectOutput(Redirect.INHERIT);
-        pb.redirectError(Redirect.INHERIT);
+      int index = jarEntryName.indexOf("/share/classes/") + "/share/classes/".length();
+      // "-5" is to remove ".java" from end of file name
+      String fqClassName =
+          jarEntryName.substring(index, jarEntryName.length() - 5).replace('/', '.');
+      remainingJdkStubFilesJar.put(fqClassName, jarEntryName);
+    }
+    if (stubDebug) {
+      String factoryClass = factory.getClass().getSimpleName().toString();
+      String jarFileURL = connection.getJarFileURL().toString();
+      System.out.printf(
+          "Contents of remainingJdkStubFilesJar for %s from %s:%n", factoryClass, jarFileURL);
+      printSortedIndented(remainingJdkStubFilesJar.keySet());
+      System.out.printf(
+          "End of remainingJdkStubFilesJar for %s from %s.%n", factoryClass, jarFileURL);
+
+      System.out.printf("Contents of %s:%n", jarFileURL);
+      assert jarFileURL.startsWith("file:");
+      ProcessBuilder pb =
+          new ProcessBuilder(
+              "/bin/sh", "-c", "jar tf '" + jarFileURL.substring(5) + "' | LC_ALL=C sort");
+      pb.redirectOutput(Redirect.INHERIT);
+      pb.redirectError(Redirect.INHERIT);
+      try {
         Process p = pb.start();
-        try {
-          p.waitFor();
-        } catch (InterruptedException e) {
-          // do nothing
+        p.waitFor();
+      } catch (IOException | InterruptedException e) {
+        // do nothing
+      }
+      System.out.flush();
+      SystemPlume.sleep(1);
+      System.out.printf("End of %s.%n", jarFileURL);
+    }
+  }
+
+  /**
+   * Returns the names of the annotated JDK files in the jar that {@code connection} refers to, in
+   * sorted order. The result is computed once per jar and then shared by every type factory in the
+   * process, until the jar file is modified.
+   *
+   * @param connection a connection to the annotated JDK in a jar file
+   * @return the sorted names of the jar entries for the annotated JDK, excluding {@code
+   *     module-info.java} files
+   */
+  private static List<String> getJdkJarEntries(JarURLConnection connection) {
+    URL url = connection.getJarFileURL();
+    String jarFileURL = url.toString();
+    long lastModified = getLastModified(url);
+    synchronized (jdkJarEntriesCache) {
+      IPair<Long, List<String>> cached = jdkJarEntriesCache.get(jarFileURL);
+      if (cached != null && cached.first == lastModified) {
+        return cached.second;
+      }
+      List<String> result;
+      try (JarFile jarFile = connection.getJarFile()) {
+        result = readJdkIndex(jarFile);
+        if (result == null) {
+          result = listJdkJarEntries(jarFile);
         }
-        System.out.flush();
-        SystemPlume.sleep(1);
-        System.out.printf("End of %s.%n", jarFileURL);
+      } catch (IOException e) {
+        throw new BugInCF("Cannot open the jar file " + jarFileURL, e);
       }
-    } catch (IOException e) {
-      throw new BugInCF("Cannot open the jar file " + connection.getJarFileURL(), e);
+      jdkJarEntriesCache.put(jarFileURL, IPair.of(lastModified, result));
+      return result;
+    }
+  }
+
+  /**
+   * Returns the modification time of the file that a URL refers to.
+   *
+   * @param url the URL of a jar file
+   * @return the modification time of the file, or 0 if {@code url} is not a file URL or the file
+   *     does not exist
+   */
+  private static long getLastModified(URL url) {
+    if (!url.getProtocol().equals("file")) {
+      return 0;
     }
+    try {
+      return new File(url.toURI()).lastModified();
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Reads the index of the annotated JDK that the build writes into checker.jar, or returns null if
+   * the jar has no index.
+   *
+   * @param jarFile the jar file that contains the annotated JDK
+   * @return the jar entry names listed in the index, or null if there is no index
+   * @throws IOException if the index cannot be read
+   */
+  private static @Nullable List<String> readJdkIndex(JarFile jarFile) throws IOException {
+    JarEntry indexEntry = jarFile.getJarEntry(JDK_INDEX_ENTRY);
+    if (indexEntry == null) {
+      return null;
+    }
+    List<String> result = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(jarFile.getInputStream(indexEntry), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          result.add(line);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Enumerates the annotated JDK files in a jar that has no index.
+   *
+   * @param jarFile the jar file that contains the annotated JDK
+   * @return the sorted names of the jar entries for the annotated JDK, excluding {@code
+   *     module-info.java} files
+   */
+  private static List<String> listJdkJarEntries(JarFile jarFile) {
+    List<String> result = new ArrayList<>();
+    for (JarEntry jarEntry : CollectionsPlume.makeArrayList(jarFile.entries())) {
+      // filter out directories and non-Java files
+      if (jarEntry.isDirectory()) {
+        continue;
+      }
+      String jarEntryName = jarEntry.getName();
+      if (!(jarEntryName.startsWith("annotated-jdk") && jarEntryName.endsWith(".java"))
+          // JavaParser can't parse module-info files, so skip them.
+          || jarEntryName.endsWith("module-info.java")) {
+        continue;
+      }
+      result.add(jarEntryName);
+    }
+    result.sort(Comparator.naturalOrder());
+    return result;
   }
 
   /**
@@ -46,6 +46,7 @@ import com.github.javaparser.ast.expr.UnaryExpr;
 import com.github.javaparser.ast.nodeTypes.NodeWithRange;
 import com.github.javaparser.ast.nodeTypes.NodeWithTypeParameters;
 import com.github.javaparser.ast.nodeTypes.modifiers.NodeWithAccessModifiers;
+import com.github.javaparser.ast.stmt.BlockStmt;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.javaparser.ast.type.PrimitiveType;
 import com.github.javaparser.ast.type.ReferenceType;
@@ -56,9 +57,18 @@ import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.VariableTree;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Target;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -68,6 +78,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
@@ -92,6 +109,7 @@ import org.checkerframework.checker.signature.qual.CanonicalName;
 import org.checkerframework.checker.signature.qual.DotSeparatedIdentifiers;
 import org.checkerframework.checker.signature.qual.FullyQualifiedName;
 import org.checkerframework.framework.ajava.DefaultJointVisitor;
+import org.checkerframework.framework.ajava.JointJavacJavaParserVisitor;
 import org.checkerframework.framework.qual.AnnotatedFor;
 import org.checkerframework.framework.qual.FromStubFile;
 import org.checkerframework.framework.stub.AnnotationFileUtil.AnnotationFileType;
@@ -114,6 +132,7 @@ import org.checkerframework.javacutil.UserError;
 import org.plumelib.util.ArrayMap;
 import org.plumelib.util.CollectionsPlume;
 import org.plumelib.util.IPair;
+import org.plumelib.util.MapsP;
 import org.plumelib.util.SystemPlume;
 
 // From an implementation perspective, this class represents a single annotation file (stub file or
@@ -259,9 +278,69 @@ public class AnnotationFileParser {
   /** The line separator. */
   private static final String LINE_SEPARATOR = System.lineSeparator().intern();
 
+  /** The number of parsed stub files to retain in {@link #stubUnitCache}. */
+  private static final int STUB_UNIT_CACHE_SIZE = 300;
+
+  /**
+   * A process-wide cache from the contents of a stub file to its JavaParser AST. Checkers and their
+   * subcheckers each parse jdk.astub, the {@code @StubFiles} files, the {@code -Astubs} files, and
+   * the annotated JDK files that they use; this cache lets them share the AST, so that only
+   * resolution of the AST against javac elements and the checker's qualifiers is done per checker.
+   *
+   * <p>The key is the SHA-256 digest of the file contents rather than the file name, so that an
+   * edited file is re-parsed in a long-lived process, and so that the cache does not retain the
+   * contents. The cached ASTs must not be modified, so ajava files, which are modified after
+   * parsing, are not cached.
+   */
+  private static final Map<String, StubUnit> stubUnitCache =
+      Collections.synchronizedMap(MapsP.createLruCache(STUB_UNIT_CACHE_SIZE));
+
+  /**
+   * The fewest unparsed stub files that {@link #parseStubUnitsConcurrently} hands to other threads.
+   * Fewer files are parsed sequentially, when they are resolved.
+   */
+  private static final int MIN_CONCURRENT_STUB_FILES = 4;
+
+  /**
+   * The executor that parses stub files concurrently, shared by every type factory in the process.
+   * It has one thread per processor; idle threads end. Null until it is first needed.
+   */
+  private static @MonotonicNonNull ExecutorService stubParseExecutor;
+
   /** True if the {@code -AmergeStubsWithSource} command-line argument was passed. */
   private final boolean mergeStubsWithSource;
 
+  /**
+   * If non-null, top-level type declarations are not processed when the file is parsed. Instead,
+   * each is added to this map, under its fully-qualified name, to be processed when an element of
+   * the type is first looked up.
+   */
+  private @Nullable Map<String, List<DeferredTypeDecl>> deferredTypeDecls;
+
+  /**
+   * The directory given by {@code -AstubCacheDir}, which holds an index of the top-level types of
+   * each stub file, or null if the option was not passed.
+   *
+   * @see #readStubIndex
+   */
+  private final @Nullable Path stubCacheDir;
+
+  /**
+   * The lines of the file, if its top-level type declarations are read from an index rather than
+   * from {@link #stubUnit}; otherwise null. Each type declaration is parsed from these lines only
+   * when it is processed.
+   */
+  private String @MonotonicNonNull [] sourceLines;
+
+  /**
+   * The index of the file's top-level type declarations, if they are read from an index rather than
+   * from {@link #stubUnit}; otherwise null.
+   */
+  private @MonotonicNonNull StubIndex stubIndex;
+
+  /** The version of the format of the files in {@link #stubCacheDir}. */
+  private static final String STUB_INDEX_VERSION = "stubindex 1";
+
   /**
    * The result of calling AnnotationFileParser.parse: the annotated types and declaration
    * annotations from the file.
@@ -410,6 +489,128 @@ public class AnnotationFileParser {
     }
   }
 
+  /**
+   * A top-level type declaration in a stub file whose processing has been deferred until an element
+   * of the type is looked up.
+   *
+   * @see #parseStubFile(String, InputStream, AnnotatedTypeFactory, ProcessingEnvironment,
+   *     AnnotationFileAnnotations, AnnotationFileType, Map)
+   */
+  public static class DeferredTypeDecl {
+    /**
+     * The parser that read the type declaration. It holds the imports of the declaration's file.
+     */
+    private final AnnotationFileParser parser;
+
+    /** The type declaration, or null if it has not been parsed yet. */
+    private @Nullable TypeDeclaration<?> typeDecl;
+
+    /** The simple name of the type. */
+    private final String name;
+
+    /** The first line of the type declaration in the file, if it was read from an index. */
+    private final int beginLine;
+
+    /** The last line of the type declaration in the file, if it was read from an index. */
+    private final int endLine;
+
+    /** The annotations on the package declaration of the file, or null if there is none. */
+    private final @Nullable List<@Nullable AnnotationExpr> packageAnnos;
+
+    /** The type being parsed when the type declaration was reached. */
+    private final FqName typeBeingParsed;
+
+    /**
+     * Creates a new DeferredTypeDecl.
+     *
+     * @param parser the parser that read the type declaration
+     * @param typeDecl the type declaration
+     * @param packageAnnos the annotations on the package declaration of the file, or null
+     * @param typeBeingParsed the type being parsed when the type declaration was reached
+     */
+    private DeferredTypeDecl(
+        AnnotationFileParser parser,
+        TypeDeclaration<?> typeDecl,
+        @Nullable List<@Nullable AnnotationExpr> packageAnnos,
+        FqName typeBeingParsed) {
+      this.parser = parser;
+      this.typeDecl = typeDecl;
+      this.name = typeDecl.getNameAsString();
+      this.beginLine = -1;
+      this.endLine = -1;
+      this.packageAnnos = packageAnnos;
+      this.typeBeingParsed = typeBeingParsed;
+    }
+
+    /**
+     * Creates a new DeferredTypeDecl for a type declaration that has not been parsed yet.
+     *
+     * @param parser the parser that read the file's index
+     * @param name the simple name of the type
+     * @param beginLine the first line of the type declaration in the file
+     * @param endLine the last line of the type declaration in the file
+     * @param packageAnnos the annotations on the package declaration of the file, or null
+     * @param typeBeingParsed the type being parsed when the type declaration was reached
+     */
+    private DeferredTypeDecl(
+        AnnotationFileParser parser,
+        String name,
+        int beginLine,
+        int endLine,
+        @Nullable List<@Nullable AnnotationExpr> packageAnnos,
+        FqName typeBeingParsed) {
+      this.parser = parser;
+      this.typeDecl = null;
+      this.name = name;
+      this.beginLine = beginLine;
+      this.endLine = endLine;
+      this.packageAnnos = packageAnnos;
+      this.typeBeingParsed = typeBeingParsed;
+    }
+
+    /**
+     * Processes the type declaration: copies its annotations to {@code annotationFileAnnos}.
+     *
+     * @param annotationFileAnnos annotations from the annotation file; side-effected by this method
+     */
+    public void process(AnnotationFileAnnotations annotationFileAnnos) {
+      parser.processDeferredTypeDecl(this, annotationFileAnnos);
+    }
+
+    @Override
+    public String toString() {
+      return "DeferredTypeDecl(" + parser.filename + ", " + name + ")";
+    }
+  }
+
+  /**
+   * The line ranges of the top-level type declarations of a stub file that has a single package
+   * declaration. It is stored in {@link #stubCacheDir}, so that later compilations can parse just
+   * the header of the file and then only the types that they use.
+   */
+  private static class StubIndex {
+    /** The number of lines before the first type declaration: the package and the imports. */
+    final int headerLines;
+
+    /** The simple names of the top-level types, in order. */
+    final List<String> names = new ArrayList<>();
+
+    /** The first line of each type declaration. */
+    final List<Integer> beginLines = new ArrayList<>();
+
+    /** The last line of each type declaration. */
+    final List<Integer> endLines = new ArrayList<>();
+
+    /**
+     * Creates a new, empty StubIndex.
+     *
+     * @param headerLines the number of lines before the first type declaration
+     */
+    StubIndex(int headerLines) {
+      this.headerLines = headerLines;
+    }
+  }
+
   /**
    * Create a new AnnotationFileParser object, which will parse and extract annotations from the
    * given file.
@@ -454,6 +655,8 @@ public class AnnotationFileParser {
     this.fromStubFileAnno = AnnotationBuilder.fromClass(elements, FromStubFile.class);
 
     this.mergeStubsWithSource = atypeFactory.getChecker().hasOption("mergeStubsWithSource");
+    String stubCacheDirOption = options.get("stubCacheDir");
+    this.stubCacheDir = stubCacheDirOption == null ? null : Paths.get(stubCacheDirOption);
   }
 
   /**
@@ -669,8 +872,44 @@ public class AnnotationFileParser {
       ProcessingEnvironment processingEnv,
       AnnotationFileAnnotations annotationFileAnnos,
       AnnotationFileType fileType) {
+    parseStubFile(
+        filename, inputStream, atypeFactory, processingEnv, annotationFileAnnos, fileType, null);
+  }
+
+  /**
+   * Parses a stub file and side-effects the {@code annotationFileAnnos} argument, possibly
+   * deferring the processing of its top-level type declarations.
+   *
+   * <p>If {@code deferredTypeDecls} is non-null, then each top-level type declaration is added to
+   * it, under the fully-qualified name of the type, instead of being processed. The caller must
+   * call {@link DeferredTypeDecl#process} before looking up any element of the type. Declarations
+   * are deferred only if that cannot lose a diagnostic that the user requested, such as with
+   * {@code -AstubWarnIfNotFound}; otherwise, the file is processed eagerly as by {@link
+   * #parseStubFile(String, InputStream, AnnotatedTypeFactory, ProcessingEnvironment,
+   * AnnotationFileAnnotations, AnnotationFileType)}.
+   *
+   * @param filename name of stub file, used only for diagnostic messages
+   * @param inputStream of stub file to parse
+   * @param atypeFactory the type factory
+   * @param processingEnv the processing environment
+   * @param annotationFileAnnos annotations from the annotation file; side-effected by this method
+   * @param fileType the annotation file type and source
+   * @param deferredTypeDecls map from type name to the type's deferred declarations, or null to
+   *     process all declarations eagerly; side-effected by this method
+   */
+  public static void parseStubFile(
+      String filename,
+      InputStream inputStream,
+      AnnotatedTypeFactory atypeFactory,
+      ProcessingEnvironment processingEnv,
+      AnnotationFileAnnotations annotationFileAnnos,
+      AnnotationFileType fileType,
+      @Nullable Map<String, List<DeferredTypeDecl>> deferredTypeDecls) {
     AnnotationFileParser afp =
         new AnnotationFileParser(filename, atypeFactory, processingEnv, fileType);
+    if (deferredTypeDecls != null && afp.mayDeferTypeDecls()) {
+      afp.deferredTypeDecls = deferredTypeDecls;
+    }
     try {
       afp.parseStubUnit(inputStream);
       afp.process(annotationFileAnnos);
@@ -755,7 +994,10 @@ public class AnnotationFileParser {
     stubDebug(
         "started parsing annotation file %s for %s",
         filename, atypeFactory.getClass().getSimpleName());
-    stubUnit = JavaParserUtil.parseStubUnit(inputStream);
+    stubUnit =
+        fileType.isStub()
+            ? parseCachedStubUnit(inputStream)
+            : JavaParserUtil.parseStubUnit(inputStream);
 
     // getImportedAnnotations() also modifies importedConstants and importedTypes. This should
     // be refactored to be nicer.
@@ -780,6 +1022,315 @@ public class AnnotationFileParser {
     }
   }
 
+  /**
+   * Returns the AST of the stub file in {@code inputStream}, from {@link #stubUnitCache} if the
+   * same contents have already been parsed. The result must not be modified.
+   *
+   * @param inputStream the stream from which to read a stub file
+   * @return the AST of the stub file
+   * @throws ParseProblemException if the stub file has parser errors
+   */
+  private StubUnit parseCachedStubUnit(InputStream inputStream) {
+    byte[] contents;
+    try {
+      contents = AnnotationFileUtil.readAllBytes(inputStream);
+    } catch (IOException e) {
+      throw new BugInCF("cannot read annotation file " + filename, e);
+    }
+    String digest = digest(contents);
+    boolean useStubIndex = deferredTypeDecls != null && stubCacheDir != null;
+    if (useStubIndex) {
+      StubUnit header = parseIndexedStubHeader(contents, digest);
+      if (header != null) {
+        return header;
+      }
+    }
+    StubUnit result = stubUnitCache.get(digest);
+    if (result == null) {
+      result = parseAndCacheStubUnit(digest, contents);
+    } else {
+      stubDebug("reusing the parse of annotation file %s", filename);
+    }
+    if (useStubIndex) {
+      writeStubIndex(digest, result);
+    }
+    return result;
+  }
+
+  /**
+   * If {@link #stubCacheDir} holds an index for the given file, parses only the header of the file:
+   * its package declaration and imports. Also sets {@link #stubIndex} and {@link #sourceLines}, so
+   * that {@link #processCompilationUnit} defers the file's type declarations without parsing them.
+   *
+   * @param contents the contents of the file
+   * @param digest the digest of the contents of the file, as computed by {@link #digest}
+   * @return the parsed header, or null if there is no usable index
+   */
+  private @Nullable StubUnit parseIndexedStubHeader(byte[] contents, String digest) {
+    assert stubCacheDir != null : "@AssumeAssertion(nullness): checked by the caller";
+    StubIndex index = readStubIndex(getStubIndexFile(stubCacheDir, digest));
+    if (index == null) {
+      return null;
+    }
+    String[] lines = new String(contents, StandardCharsets.UTF_8).split("\r\n|\r|\n", -1);
+    if (index.headerLines > lines.length) {
+      return null;
+    }
+    StubUnit header;
+    try {
+      header = JavaParserUtil.parseStubUnit(linesAsStream(lines, index.headerLines, 1, 0));
+    } catch (ParseProblemException e) {
+      return null;
+    }
+    if (header.getCompilationUnits().size() != 1
+        || !header.getCompilationUnits().get(0).getTypes().isEmpty()) {
+      return null;
+    }
+    sourceLines = lines;
+    stubIndex = index;
+    stubDebug("read the index of annotation file %s", filename);
+    return header;
+  }
+
+  /**
+   * Returns some lines of a file as a stream that JavaParser can parse: the first {@code
+   * headerLines} lines, then blank lines, then lines {@code beginLine} through {@code endLine}. The
+   * blank lines keep the line numbers in diagnostics the same as in the file.
+   *
+   * @param lines the lines of a file
+   * @param headerLines the number of lines at the beginning of the file to include
+   * @param beginLine the first line of a range of lines to include, 1-based
+   * @param endLine the last line of a range of lines to include, 1-based; less than {@code
+   *     beginLine} if no lines after the header are to be included
+   * @return the requested lines of the file, as a stream
+   */
+  private static InputStream linesAsStream(
+      String[] lines, int headerLines, int beginLine, int endLine) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < headerLines; i++) {
+      sb.append(lines[i]).append('\n');
+    }
+    for (int i = headerLines; i < beginLine - 1; i++) {
+      sb.append('\n');
+    }
+    for (int i = beginLine - 1; i < endLine; i++) {
+      sb.append(lines[i]).append('\n');
+    }
+    return new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the SHA-256 digest of the contents of a stub file, in hexadecimal. It identifies the
+   * contents in {@link #stubUnitCache} and in the directory given by {@code -AstubCacheDir}.
+   *
+   * @param contents the contents of a stub file
+   * @return the SHA-256 digest of {@code contents}, in hexadecimal
+   */
+  private static String digest(byte[] contents) {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new BugInCF("SHA-256 is not available", e);
+    }
+    StringBuilder result = new StringBuilder();
+    for (byte b : md.digest(contents)) {
+      result.append(String.format("%02x", b));
+    }
+    return result.toString();
+  }
+
+  /**
+   * Returns the file in the given cache directory that holds the index of the stub file with the
+   * given contents.
+   *
+   * @param stubCacheDir the directory given by {@code -AstubCacheDir}
+   * @param digest the digest of the contents of a stub file, as computed by {@link #digest}
+   * @return the file that holds the index of the stub file
+   */
+  private static Path getStubIndexFile(Path stubCacheDir, String digest) {
+    return stubCacheDir.resolve(digest + ".stubindex");
+  }
+
+  /**
+   * Reads an index written by {@link #writeStubIndex}.
+   *
+   * @param indexFile the file that holds the index
+   * @return the index, or null if the file does not exist or is not a valid index
+   */
+  private static @Nullable StubIndex readStubIndex(Path indexFile) {
+    if (!Files.isRegularFile(indexFile)) {
+      return null;
+    }
+    try {
+      List<String> lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+      if (lines.size() < 2 || !lines.get(0).equals(STUB_INDEX_VERSION)) {
+        return null;
+      }
+      StubIndex result = new StubIndex(Integer.parseInt(lines.get(1)));
+      for (String line : lines.subList(2, lines.size())) {
+        String[] fields = line.split(" ");
+        if (fields.length != 3) {
+          return null;
+        }
+        result.names.add(fields[0]);
+        result.beginLines.add(Integer.parseInt(fields[1]));
+        result.endLines.add(Integer.parseInt(fields[2]));
+      }
+      return result;
+    } catch (IOException | NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes an index of the top-level type declarations of a stub file to {@link #stubCacheDir}, if
+   * the file's layout permits one: it has a single package declaration, and each type declaration
+   * begins on a line after the imports and after the previous type declaration. The cache is best
+   * effort, so failures are ignored.
+   *
+   * @param digest the digest of the contents of the stub file, as computed by {@link #digest}
+   * @param su the parsed stub file
+   */
+  private void writeStubIndex(String digest, StubUnit su) {
+    if (su.getCompilationUnits().size() != 1) {
+      return;
+    }
+    CompilationUnit cu = su.getCompilationUnits().get(0);
+    if (cu.getTypes().isEmpty() || !cu.getTypes().get(0).getRange().isPresent()) {
+      return;
+    }
+    int headerLines = cu.getTypes().get(0).getRange().get().begin.line - 1;
+    List<Node> headerNodes = new ArrayList<>(cu.getImports());
+    cu.getPackageDeclaration().ifPresent(headerNodes::add);
+    for (Node node : headerNodes) {
+      if (!node.getRange().isPresent() || node.getRange().get().end.line > headerLines) {
+        return;
+      }
+    }
+    StringJoiner index = new StringJoiner("\n", "", "\n");
+    index.add(STUB_INDEX_VERSION);
+    index.add(Integer.toString(headerLines));
+    int previousEndLine = headerLines;
+    for (TypeDeclaration<?> typeDecl : cu.getTypes()) {
+      if (!typeDecl.getRange().isPresent()
+          || typeDecl.getRange().get().begin.line <= previousEndLine) {
+        return;
+      }
+      int beginLine = typeDecl.getRange().get().begin.line;
+      previousEndLine = typeDecl.getRange().get().end.line;
+      index.add(typeDecl.getNameAsString() + " " + beginLine + " " + previousEndLine);
+    }
+
+    assert stubCacheDir != null : "@AssumeAssertion(nullness): checked by the caller";
+    Path indexFile = getStubIndexFile(stubCacheDir, digest);
+    try {
+      Path dir = indexFile.getParent();
+      Files.createDirectories(dir);
+      Path tmpFile = Files.createTempFile(dir, "stubindex", ".tmp");
+      Files.write(tmpFile, index.toString().getBytes(StandardCharsets.UTF_8));
+      // Another compiler process might be writing the same index concurrently.
+      Files.move(
+          tmpFile, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      stubDebug("could not write index %s: %s", indexFile, e);
+    }
+  }
+
+  /**
+   * Parses a stub file and stores its AST in {@link #stubUnitCache}.
+   *
+   * @param digest the digest of the contents of the stub file, as computed by {@link #digest}
+   * @param contents the contents of the stub file
+   * @return the AST of the stub file
+   * @throws ParseProblemException if the stub file has parser errors
+   */
+  private static StubUnit parseAndCacheStubUnit(String digest, byte[] contents) {
+    // Parse outside the lock; if two threads race, both results are equivalent.
+    StubUnit result = JavaParserUtil.parseStubUnit(new ByteArrayInputStream(contents));
+    stubUnitCache.put(digest, result);
+    return result;
+  }
+
+  /**
+   * Parses the given stub files concurrently and stores their ASTs in {@link #stubUnitCache}, so
+   * that a later {@link #parseStubFile} call on the same contents only has to resolve the AST.
+   * Parsing is independent per file, but resolution against javac elements is not thread-safe; it
+   * stays sequential, which also preserves the precedence order among the files.
+   *
+   * <p>Files with parse errors are skipped here. They are reported when {@link #parseStubFile}
+   * parses them again. If there are only a few files to parse, this method does nothing, and they
+   * are parsed by {@link #parseStubFile}.
+   *
+   * @param stubFiles the contents of stub files
+   * @param stubCacheDir the directory given by {@code -AstubCacheDir}, or null; files that have an
+   *     index there are not parsed
+   */
+  public static void parseStubUnitsConcurrently(
+      List<byte[]> stubFiles, @Nullable Path stubCacheDir) {
+    Map<String, byte[]> toParse = new LinkedHashMap<>();
+    for (byte[] contents : stubFiles) {
+      String digest = digest(contents);
+      if (!stubUnitCache.containsKey(digest)
+          && (stubCacheDir == null
+              || !Files.isRegularFile(getStubIndexFile(stubCacheDir, digest)))) {
+        toParse.put(digest, contents);
+      }
+    }
+    if (toParse.size() < MIN_CONCURRENT_STUB_FILES
+        || Runtime.getRuntime().availableProcessors() < 2) {
+      // There is nothing to gain from other threads.
+      return;
+    }
+
+    ExecutorService executor = getStubParseExecutor();
+    List<Future<?>> futures = new ArrayList<>(toParse.size());
+    for (Map.Entry<String, byte[]> entry : toParse.entrySet()) {
+      futures.add(executor.submit(() -> parseAndCacheStubUnit(entry.getKey(), entry.getValue())));
+    }
+    try {
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          // The file will be parsed, and the problem reported, by parseStubFile.
+        }
+      }
+    } catch (InterruptedException e) {
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns {@link #stubParseExecutor}, creating it if necessary.
+   *
+   * @return the executor that parses stub files concurrently
+   */
+  private static synchronized ExecutorService getStubParseExecutor() {
+    if (stubParseExecutor == null) {
+      int nThreads = Runtime.getRuntime().availableProcessors();
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              nThreads,
+              nThreads,
+              10,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(),
+              runnable -> {
+                Thread thread = new Thread(runnable, "stub-file-parser");
+                // Do not keep the JVM alive.
+                thread.setDaemon(true);
+                return thread;
+              });
+      executor.allowCoreThreadTimeOut(true);
+      stubParseExecutor = executor;
+    }
+    return stubParseExecutor;
+  }
+
   /**
    * Process {@link #stubUnit}, which is the AST produced by {@link #parseStubUnit}. Processing
    * means copying annotations from Stub Parser data structures to argument {@code
@@ -828,10 +1379,35 @@ public class AnnotationFileParser {
     }
 
     if (fileType.isStub()) {
+      String packagePrefix =
+          cu.getPackageDeclaration().map(pDecl -> pDecl.getNameAsString() + ".").orElse("");
       if (cu.getTypes() != null) {
         for (TypeDeclaration<?> typeDeclaration : cu.getTypes()) {
-          // Not processing an ajava file, so ignore the return value.
-          processTypeDecl(typeDeclaration, null, null);
+          if (deferredTypeDecls != null) {
+            deferredTypeDecls
+                .computeIfAbsent(
+                    packagePrefix + typeDeclaration.getNameAsString(), k -> new ArrayList<>(1))
+                .add(new DeferredTypeDecl(this, typeDeclaration, packageAnnos, typeBeingParsed));
+          } else {
+            // Not processing an ajava file, so ignore the return value.
+            processTypeDecl(typeDeclaration, null, null);
+          }
+        }
+      }
+      if (stubIndex != null && deferredTypeDecls != null) {
+        // The type declarations were not parsed; they are in the index instead.
+        for (int i = 0; i < stubIndex.names.size(); i++) {
+          String name = stubIndex.names.get(i);
+          deferredTypeDecls
+              .computeIfAbsent(packagePrefix + name, k -> new ArrayList<>(1))
+              .add(
+                  new DeferredTypeDecl(
+                      this,
+                      name,
+                      stubIndex.beginLines.get(i),
+                      stubIndex.endLines.get(i),
+                      packageAnnos,
+                      typeBeingParsed));
         }
       }
     } else {
@@ -841,6 +1417,124 @@ public class AnnotationFileParser {
     packageAnnos = null;
   }
 
+  /**
+   * Returns true if the processing of the type declarations of files of the given type may be
+   * deferred, given the command-line options.
+   *
+   * @param atypeFactory the type factory
+   * @param processingEnv the processing environment
+   * @param fileType the type of file
+   * @return true if the processing of type declarations in files of type {@code fileType} may be
+   *     deferred
+   * @see #parseStubFile(String, InputStream, AnnotatedTypeFactory, ProcessingEnvironment,
+   *     AnnotationFileAnnotations, AnnotationFileType, Map)
+   */
+  public static boolean mayDeferTypeDecls(
+      AnnotatedTypeFactory atypeFactory,
+      ProcessingEnvironment processingEnv,
+      AnnotationFileType fileType) {
+    return new AnnotationFileParser("", atypeFactory, processingEnv, fileType).mayDeferTypeDecls();
+  }
+
+  /**
+   * Returns true if the processing of this file's type declarations may be deferred. It may not be
+   * if deferral could lose a diagnostic that the user requested, because a deferred declaration is
+   * processed only if an element of its type is looked up.
+   *
+   * @return true if the processing of this file's type declarations may be deferred
+   */
+  private boolean mayDeferTypeDecls() {
+    return fileType.isStub()
+        // The annotated JDK is already read one class at a time.
+        && fileType != AnnotationFileType.JDK_STUB
+        && !warnIfNotFound
+        && !warnIfStubOverwritesBytecode
+        && !warnIfStubRedundantWithBytecode
+        && !debugAnnotationFileParser;
+  }
+
+  /**
+   * Processes a deferred type declaration: copies its annotations to {@code annotationFileAnnos}.
+   *
+   * @param deferred a type declaration that was read by this parser
+   * @param annotationFileAnnos annotations from the file; side-effected by this method
+   */
+  private void processDeferredTypeDecl(
+      DeferredTypeDecl deferred, AnnotationFileAnnotations annotationFileAnnos) {
+    TypeDeclaration<?> typeDecl = deferred.typeDecl;
+    if (typeDecl == null) {
+      typeDecl = parseIndexedTypeDecl(deferred);
+      if (typeDecl == null) {
+        return;
+      }
+      deferred.typeDecl = typeDecl;
+    }
+    this.annotationFileAnnos = annotationFileAnnos;
+    this.packageAnnos = deferred.packageAnnos;
+    this.typeBeingParsed = deferred.typeBeingParsed;
+    try {
+      // Not processing an ajava file, so ignore the return value.
+      processTypeDecl(typeDecl, null, null);
+    } finally {
+      this.packageAnnos = null;
+      this.annotationFileAnnos = null;
+    }
+  }
+
+  /**
+   * Parses a type declaration that was read from an index, from its lines in the file. If the lines
+   * do not parse on their own, for example because a comment spans the line that the declaration
+   * starts on, parses the whole file.
+   *
+   * @param deferred a type declaration that was read from {@link #stubIndex}
+   * @return the type declaration, or null if it could not be parsed
+   */
+  private @Nullable TypeDeclaration<?> parseIndexedTypeDecl(DeferredTypeDecl deferred) {
+    if (sourceLines == null || stubIndex == null) {
+      throw new BugInCF("No index for %s in %s", deferred, filename);
+    }
+    try {
+      StubUnit su =
+          JavaParserUtil.parseStubUnit(
+              linesAsStream(
+                  sourceLines, stubIndex.headerLines, deferred.beginLine, deferred.endLine));
+      TypeDeclaration<?> result = findTopLevelTypeDecl(su, deferred.name);
+      if (result != null) {
+        return result;
+      }
+    } catch (ParseProblemException e) {
+      // Fall through to parse the whole file.
+    }
+    try {
+      StubUnit su =
+          JavaParserUtil.parseStubUnit(linesAsStream(sourceLines, sourceLines.length, 1, 0));
+      return findTopLevelTypeDecl(su, deferred.name);
+    } catch (ParseProblemException e) {
+      for (Problem p : e.getProblems()) {
+        warn(null, p.getVerboseMessage());
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Returns the top-level type declaration with the given simple name in a stub file.
+   *
+   * @param su a parsed stub file
+   * @param name the simple name of a type
+   * @return the type declaration, or null if there is none
+   */
+  private static @Nullable TypeDeclaration<?> findTopLevelTypeDecl(StubUnit su, String name) {
+    for (CompilationUnit cu : su.getCompilationUnits()) {
+      for (TypeDeclaration<?> typeDecl : cu.getTypes()) {
+        if (typeDecl.getNameAsString().equals(name)) {
+          return typeDecl;
+        }
+      }
+    }
+    return null;
+  }
+
   /**
    * Process the given package declaration: copy its annotations to {@code #annotationFileAnnos}.
    *
@@ -3063,9 +3757,9 @@ public class AnnotationFileParser {
   private void warn(@Nullable NodeWithRange<?> astNode, String warning) {
     if (fileType != AnnotationFileType.JDK_STUB) {
       if (warnings.add(warning)) {
-        processingEnv
-            .getMessager()
-            .printMessage(stubWarnDiagnosticKind, fileAndLine(astNode) + warning);
+        // Via the checker, so that the result cache knows that a class whose checking read a stub
+        // file lazily cannot be replayed.
+        atypeFactory.getChecker().message(stubWarnDiagnosticKind, fileAndLine(astNode) + warning);
       }
     }
   }
@@ -3084,9 +3778,9 @@ public class AnnotationFileParser {
       if (warnings.add(warning)) {
         System.out.flush();
         SystemPlume.sleep(1);
-        processingEnv
-            .getMessager()
-            .printMessage(javax.tools.Diagnostic.Kind.NOTE, "AnnotationFileParser: " + warning);
+        atypeFactory
+            .getChecker()
+            .message(javax.tools.Diagnostic.Kind.NOTE, "AnnotationFileParser: " + warning);
         System.out.flush();
         SystemPlume.sleep(1);
       }
@@ -3178,6 +3872,13 @@ public class AnnotationFileParser {
 
       return null;
     }
+
+    @Override
+    protected boolean shouldVisitBody(BlockStmt javaParserBody) {
+      // Only declarations of classes and their members are processed, so a body matters only if
+      // it declares a class.
+      return JointJavacJavaParserVisitor.containsClassDeclaration(javaParserBody);
+    }
   }
 
   /**
@@ -15,8 +15,10 @@ import com.github.javaparser.ast.type.PrimitiveType;
 import com.github.javaparser.ast.type.VoidType;
 import com.github.javaparser.ast.type.WildcardType;
 import com.github.javaparser.ast.visitor.SimpleVoidVisitor;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -477,6 +479,24 @@ public class AnnotationFileUtil {
     }
   }
 
+  /**
+   * Reads the rest of a stream. Does not close the stream. This is {@code
+   * InputStream.readAllBytes()}, which is not available in Java 8.
+   *
+   * @param in the stream to read
+   * @return the bytes that remain in {@code in}
+   * @throws IOException if the stream cannot be read
+   */
+  static byte[] readAllBytes(InputStream in) throws IOException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      result.write(buffer, 0, count);
+    }
+    return result.toByteArray();
+  }
+
   /**
    * Returns true if the given {@link ExecutableElement} is the canonical constructor of a record
    * (i.e., the parameter types of the constructor correspond to the parameter types of the record
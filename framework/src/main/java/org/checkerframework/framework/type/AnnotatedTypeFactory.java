@@ -122,6 +122,8 @@ import org.checkerframework.framework.util.AnnotatedTypes;
 import org.checkerframework.framework.util.AnnotatedTypes.TypeArguments;
 import org.checkerframework.framework.util.CheckerMain;
 import org.checkerframework.framework.util.FieldInvariants;
+import org.checkerframework.framework.util.StripedLruCache;
+import org.checkerframework.framework.util.TimeBudget;
 import org.checkerframework.framework.util.TreePathCacher;
 import org.checkerframework.framework.util.TypeInformationPresenter;
 import org.checkerframework.framework.util.typeinference8.DefaultTypeArgumentInference;
@@ -500,6 +502,20 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
    */
   public boolean shouldCache;
 
+  /**
+   * If true, the caches of this type factory and its helpers are thread-safe: {@link #createCache}
+   * returns a {@link StripedLruCache}. Set by the {@code -AatfConcurrentCaches} option. The type
+   * annotators and tree annotators are not thread-safe, so the factory must still compute one type
+   * at a time.
+   */
+  protected final boolean concurrentCaches;
+
+  /**
+   * The time budgets of methods and classes, given by {@code -AmethodTimeBudgetSeconds} and {@code
+   * -AclassTimeBudgetSeconds}.
+   */
+  private final TimeBudget timeBudget;
+
   /** Size of LRU cache if one isn't specified using the atfCacheSize option. */
   private static final int DEFAULT_CACHE_SIZE = 300;
 
@@ -595,16 +611,20 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
     this.treePathCache = checker.getTreePathCacher();
 
     this.shouldCache = !checker.hasOption("atfDoNotCache");
+    this.concurrentCaches = checker.hasOption("atfConcurrentCaches");
+    this.timeBudget = new TimeBudget(checker);
     if (shouldCache) {
       int cacheSize = getCacheSize();
-      this.classAndMethodTreeCache = MapsP.createLruCache(cacheSize);
-      this.fromExpressionTreeCache = MapsP.createLruCache(cacheSize);
-      this.fromMemberTreeCache = MapsP.createLruCache(cacheSize);
-      this.fromTypeTreeCache = MapsP.createLruCache(cacheSize);
-      this.elementCache = MapsP.createLruCache(cacheSize);
-      this.elementToTreeCache = MapsP.createLruCache(cacheSize);
+      this.classAndMethodTreeCache = createCache(cacheSize);
+      this.fromExpressionTreeCache = createCache(cacheSize);
+      this.fromMemberTreeCache = createCache(cacheSize);
+      this.fromTypeTreeCache = createCache(cacheSize);
+      this.elementCache = createCache(cacheSize);
+      this.elementToTreeCache = createCache(cacheSize);
       this.annotationClassNames =
-          Collections.synchronizedMap(MapsP.createLruCache(ANNOTATION_CACHE_SIZE));
+          concurrentCaches
+              ? new StripedLruCache<>(ANNOTATION_CACHE_SIZE)
+              : Collections.synchronizedMap(MapsP.createLruCache(ANNOTATION_CACHE_SIZE));
     } else {
       this.classAndMethodTreeCache = null;
       this.fromExpressionTreeCache = null;
@@ -829,6 +849,15 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
     return checker;
   }
 
+  /**
+   * Returns the time budgets of methods and classes for this factory and its visitor.
+   *
+   * @return the time budgets of methods and classes
+   */
+  public TimeBudget getTimeBudget() {
+    return timeBudget;
+  }
+
   /**
    * Returns the names of the annotation processors that are being run.
    *
@@ -1334,6 +1363,20 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
   // Factories for annotated types that account for default qualifiers
   // **********************************************************************
 
+  /**
+   * Creates an LRU cache for this type factory or one of its helpers. If {@code
+   * -AatfConcurrentCaches} is passed, the cache is thread-safe; otherwise, it may only be used from
+   * one thread at a time.
+   *
+   * @param <K> the type of keys
+   * @param <V> the type of values
+   * @param size the capacity of the cache
+   * @return a new LRU cache
+   */
+  public <K, V> Map<K, V> createCache(int size) {
+    return concurrentCaches ? new StripedLruCache<>(size) : MapsP.createLruCache(size);
+  }
+
   /**
    * Returns the size for LRU caches. It is either the value supplied via the {@code -AatfCacheSize}
    * option or the default cache size.
@@ -1405,8 +1448,12 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
     if (tree == null) {
       throw new BugInCF("AnnotatedTypeFactory.getAnnotatedType: null tree");
     }
-    if (shouldCache && classAndMethodTreeCache.containsKey(tree)) {
-      return classAndMethodTreeCache.get(tree).deepCopy();
+    if (shouldCache) {
+      // A single lookup, so that a concurrent eviction cannot intervene.
+      AnnotatedTypeMirror cached = classAndMethodTreeCache.get(tree);
+      if (cached != null) {
+        return cached.deepCopy();
+      }
     }
 
     AnnotatedTypeMirror type;
@@ -1555,8 +1602,11 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
    * @return AnnotatedTypeMirror of the element with explicitly-written and stub file annotations
    */
   public AnnotatedTypeMirror fromElement(Element elt) {
-    if (shouldCache && elementCache.containsKey(elt)) {
-      return elementCache.get(elt).deepCopy();
+    if (shouldCache) {
+      AnnotatedTypeMirror cached = elementCache.get(elt);
+      if (cached != null) {
+        return cached.deepCopy();
+      }
     }
     if (elt.getKind() == ElementKind.PACKAGE) {
       return toAnnotatedType(elt.asType(), false);
@@ -1647,8 +1697,11 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
       throw new BugInCF(
           "AnnotatedTypeFactory.fromMember: not a method or variable declaration: " + tree);
     }
-    if (shouldCache && fromMemberTreeCache.containsKey(tree)) {
-      return fromMemberTreeCache.get(tree).deepCopy();
+    if (shouldCache) {
+      AnnotatedTypeMirror cached = fromMemberTreeCache.get(tree);
+      if (cached != null) {
+        return cached.deepCopy();
+      }
     }
     AnnotatedTypeMirror result = TypeFromTree.fromMember(this, tree);
 
@@ -1741,9 +1794,12 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
    */
   private AnnotatedTypeMirror fromExpression(ExpressionTree tree) {
     logGat("fromExpression(%s) of kind %s%n", tree, tree.getKind());
-    if (shouldCache && fromExpressionTreeCache.containsKey(tree)) {
-      logGat("fromExpression(%s) => [cached] %s%n", tree, fromExpressionTreeCache.get(tree));
-      return fromExpressionTreeCache.get(tree).deepCopy();
+    if (shouldCache) {
+      AnnotatedTypeMirror cached = fromExpressionTreeCache.get(tree);
+      if (cached != null) {
+        logGat("fromExpression(%s) => [cached] %s%n", tree, cached);
+        return cached.deepCopy();
+      }
     }
 
     AnnotatedTypeMirror result = TypeFromTree.fromExpression(this, tree);
@@ -1773,8 +1829,11 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
    * @return the (partially) annotated type of the type in the AST
    */
   /*package-private*/ final AnnotatedTypeMirror fromTypeTree(Tree tree) {
-    if (shouldCache && fromTypeTreeCache.containsKey(tree)) {
-      return fromTypeTreeCache.get(tree).deepCopy();
+    if (shouldCache) {
+      AnnotatedTypeMirror cached = fromTypeTreeCache.get(tree);
+      if (cached != null) {
+        return cached.deepCopy();
+      }
     }
 
     AnnotatedTypeMirror result = TypeFromTree.fromTypeTree(this, tree);
@@ -3656,9 +3715,14 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         fromElt = trees.getTree(elt);
         break;
       default:
-        fromElt =
-            com.sun.tools.javac.tree.TreeInfo.declarationFor(
-                (com.sun.tools.javac.code.Symbol) elt, (com.sun.tools.javac.tree.JCTree) root);
+        // Variables and type parameters are found in the index of the compilation unit, which
+        // is built once rather than scanning the compilation unit for each element.
+        fromElt = treePathCache.getDeclaration(root, elt);
+        if (fromElt == null) {
+          fromElt =
+              com.sun.tools.javac.tree.TreeInfo.declarationFor(
+                  (com.sun.tools.javac.code.Symbol) elt, (com.sun.tools.javac.tree.JCTree) root);
+        }
         break;
     }
     if (shouldCache) {
@@ -3706,8 +3770,8 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
 
   /**
    * Gets the path for the given {@link Tree} under the current root by checking from the visitor's
-   * current path, and using {@link Trees#getPath(CompilationUnitTree, Tree)} (which is much slower)
-   * only if {@code tree} is not found on the current path.
+   * current path, and using the {@link TreePathCacher}'s index of the compilation unit only if
+   * {@code tree} is not found on the current path.
    *
    * <p>Note that the given Tree has to be within the current compilation unit, otherwise null will
    * be returned.
@@ -3739,13 +3803,11 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
 
     TreePath currentPath = visitorTreePath;
     if (currentPath == null) {
-      TreePath path = TreePath.getPath(root, tree);
-      treePathCache.addPath(tree, path);
-      return path;
+      return treePathCache.getPath(root, tree);
     }
 
-    // This method uses multiple heuristics to avoid calling
-    // TreePath.getPath()
+    // This method uses multiple heuristics to avoid consulting the index of the compilation
+    // unit, which is built the first time it is needed.
 
     // If the current path you are visiting is for this tree we are done
     if (currentPath.getLeaf() == tree) {
@@ -3772,24 +3834,7 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
       }
     }
 
-    TreePath pathWithinSubtree = TreePath.getPath(currentPath, tree);
-    if (pathWithinSubtree != null) {
-      treePathCache.addPath(tree, pathWithinSubtree);
-      return pathWithinSubtree;
-    }
-
-    // climb the current path till we see that
-    // Works when getPath called on the enclosing method, enclosing class.
-    TreePath current = currentPath;
-    while (current != null) {
-      treePathCache.addPath(current.getLeaf(), current);
-      if (current.getLeaf() == tree) {
-        return current;
-      }
-      current = current.getParentPath();
-    }
-
-    // OK, we give up. Use the cache to look up.
+    // Otherwise, look the tree up in the index of the compilation unit.
     return treePathCache.getPath(root, tree);
   }
 
@@ -1,8 +1,11 @@
 package org.checkerframework.framework.type;
 
+import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Target;
@@ -12,6 +15,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -95,6 +99,12 @@ public class AnnotationClassLoader implements Closeable {
   /** The suffix for a .class file. */
   private static final String CLASS_SUFFIX = ".class";
 
+  /**
+   * The name of the resource, in a qual package, that lists the binary names of the classes in the
+   * package and its subpackages. The build writes it for the checkers in checker.jar.
+   */
+  private static final String QUAL_INDEX_FILE = "qual-classes.txt";
+
   // Constants
   /** The package separator. */
   private static final char DOT = '.';
@@ -108,9 +118,6 @@ public class AnnotationClassLoader implements Closeable {
    */
   protected final ProcessingEnvironment processingEnv;
 
-  /** The resource URL of the qual directory of a checker class. */
-  private final URL resourceURL;
-
   /** The class loader used to load annotation classes. */
   @SuppressWarnings("builder:required.method.not.called") // this class is @MustCall({})
   protected final @Owning URLClassLoader classLoader;
@@ -157,6 +164,18 @@ public class AnnotationClassLoader implements Closeable {
 
     classLoader = getClassLoader();
 
+    supportedBundledAnnotationClasses = new LinkedHashSet<>();
+
+    loadBundledAnnotationClasses();
+  }
+
+  /**
+   * Returns the resource URL of the qual directory of the checker class.
+   *
+   * @return the resource URL of the qual directory of the checker class, or null if it cannot be
+   *     found
+   */
+  private @Nullable URL getResourceURL() {
     URL localResourceURL;
     if (classLoader != null) {
       // if the application classloader is accessible, then directly retrieve the resource URL
@@ -178,11 +197,7 @@ public class AnnotationClassLoader implements Closeable {
       // package and set the resource URL to that jar or qual directory
       localResourceURL = getURLFromClasspaths();
     }
-    resourceURL = localResourceURL;
-
-    supportedBundledAnnotationClasses = new LinkedHashSet<>();
-
-    loadBundledAnnotationClasses();
+    return localResourceURL;
   }
 
   @EnsuresCalledMethods(value = "classLoader", methods = "close")
@@ -507,7 +522,13 @@ public class AnnotationClassLoader implements Closeable {
   @SuppressWarnings("this-escape")
   private void loadBundledAnnotationClasses() {
     // retrieve the fully qualified class names of the annotations
-    Set<@BinaryName String> annotationNames;
+    Set<@BinaryName String> annotationNames = getAnnotationNamesFromIndex();
+    if (annotationNames != null) {
+      supportedBundledAnnotationClasses.addAll(loadAnnotationClasses(annotationNames));
+      return;
+    }
+
+    URL resourceURL = getResourceURL();
     // see whether the resource URL has a protocol of jar or file
     if (resourceURL != null && resourceURL.getProtocol().contentEquals("jar")) {
       // if the checker class file is contained within a jar, then the resource URL for the
@@ -584,6 +605,45 @@ public class AnnotationClassLoader implements Closeable {
     return supportedBundledAnnotationClasses;
   }
 
+  /**
+   * Reads the index of the qual directory that the build writes for the checkers in checker.jar.
+   * This is much faster than scanning the jar file or the classpath.
+   *
+   * @return a set of fully qualified class names of the annotations, or null if the qual directory
+   *     has no index, for example because it belongs to a checker that is not part of the Checker
+   *     Framework
+   */
+  @SuppressWarnings("signature:assignment") // the index contains binary names
+  private @Nullable Set<@BinaryName String> getAnnotationNamesFromIndex() {
+    ClassLoader loader =
+        classLoader != null
+            ? classLoader
+            : InternalUtils.getClassLoaderForClass(checker.getClass());
+    if (loader == null) {
+      return null;
+    }
+    try (InputStream in =
+        loader.getResourceAsStream(packageNameWithSlashes + SLASH + QUAL_INDEX_FILE)) {
+      if (in == null) {
+        return null;
+      }
+      Set<@BinaryName String> annos = new LinkedHashSet<>();
+      try (BufferedReader reader =
+          new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (!line.isEmpty()) {
+            annos.add(line);
+          }
+        }
+      }
+      return annos;
+    } catch (IOException e) {
+      // Fall back to scanning the qual directory.
+      return null;
+    }
+  }
+
   /**
    * Retrieves the annotation class file names from the qual directory contained inside a jar.
    *
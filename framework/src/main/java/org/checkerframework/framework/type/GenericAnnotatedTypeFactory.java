@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
@@ -109,6 +110,7 @@ import org.checkerframework.framework.type.typeannotator.TypeAnnotator;
 import org.checkerframework.framework.util.Contract;
 import org.checkerframework.framework.util.ContractsFromMethod;
 import org.checkerframework.framework.util.StringToJavaExpression;
+import org.checkerframework.framework.util.TimeBudget;
 import org.checkerframework.framework.util.defaults.QualifierDefaults;
 import org.checkerframework.framework.util.dependenttypes.DependentTypesHelper;
 import org.checkerframework.framework.util.dependenttypes.DependentTypesTreeAnnotator;
@@ -354,8 +356,8 @@ public abstract class GenericAnnotatedTypeFactory<
 
     if (shouldCache) {
       int cacheSize = getCacheSize();
-      flowResultAnalysisCaches = MapsP.createLruCache(cacheSize);
-      initializerCache = MapsP.createLruCache(cacheSize);
+      flowResultAnalysisCaches = createCache(cacheSize);
+      initializerCache = createCache(cacheSize);
     } else {
       flowResultAnalysisCaches = null;
       initializerCache = null;
@@ -464,6 +466,7 @@ public abstract class GenericAnnotatedTypeFactory<
       this.flowResultAnalysisCaches.clear();
       this.initializerCache.clear();
       this.defaultQualifierForUseTypeAnnotator.clearCache();
+      this.defaults.clearScopeCaches();
 
       if (this.checker.getParentChecker() == null) {
         // This is an ultimate parent checker, so after it runs the shared CFG it is using
@@ -1090,7 +1093,8 @@ public abstract class GenericAnnotatedTypeFactory<
   }
 
   /** Map from ClassTree to their dataflow analysis state. */
-  protected final Map<ClassTree, ScanState> scannedClasses = new HashMap<>();
+  protected final Map<ClassTree, ScanState> scannedClasses =
+      concurrentCaches ? new ConcurrentHashMap<>() : new HashMap<>();
 
   /**
    * A set of trees whose corresponding nodes are reachable. This is not an exhaustive set of
@@ -1284,6 +1288,16 @@ public abstract class GenericAnnotatedTypeFactory<
    * Perform a org.checkerframework.dataflow analysis over a single class tree and its nested
    * classes.
    *
+   * <p>The nested classes and lambdas are queued as they are encountered, together with the store
+   * that they capture, and are analyzed one after another on the current thread. They are not
+   * independent units of work: the lambdas of a method are analyzed together with the method,
+   * repeatedly, until the types of their results no longer change, because those types refine the
+   * types in the method (see {@code performFlowAnalysisForMethod}). And all of them use this type
+   * factory's {@link #analysis}, transfer function, and caches, and javac's symbol table and types,
+   * none of which is thread-safe. To type-check on several cores, pass {@code -parallel} to
+   * {@link org.checkerframework.framework.util.CheckerMain}, which checks different compilation
+   * units in different JVMs.
+   *
    * @param classTree the class to analyze
    */
   protected void performFlowAnalysisForClass(ClassTree classTree) {
@@ -1421,8 +1435,24 @@ public abstract class GenericAnnotatedTypeFactory<
         // Now analyze all methods.
         // TODO: at this point, we don't have any information about
         // fields of superclasses.
+        TimeBudget timeBudget = getTimeBudget();
         for (CFGMethod method : methods) {
-          performFlowAnalysisForMethod(ct, method, classQueue, fieldValues, capturedStore);
+          boolean startedBudget = timeBudget.startMethod();
+          try {
+            performFlowAnalysisForMethod(ct, method, classQueue, fieldValues, capturedStore);
+          } catch (RuntimeException e) {
+            TimeBudget.ExceededException exceeded = TimeBudget.getExceeded(e);
+            if (!startedBudget || exceeded == null || exceeded.isClassBudget()) {
+              throw e;
+            }
+            // The results of the method's last, unfinished analysis are never stored, so its
+            // expressions are left without refined types; the visitor does not check it.
+            timeBudget.abandon(method.getMethod());
+          } finally {
+            if (startedBudget) {
+              timeBudget.endMethod();
+            }
+          }
         }
 
         while (!lambdaQueue.isEmpty()) {
@@ -2495,7 +2525,7 @@ public abstract class GenericAnnotatedTypeFactory<
   }
 
   /** For each type, whether it is relevant. A cache to avoid repeated re-computation. */
-  private final Map<TypeMirror, Boolean> isRelevantCache = MapsP.createLruCache(300);
+  private final Map<TypeMirror, Boolean> isRelevantCache = createCache(300);
 
   /**
    * Returns true if users can write type annotations from this type system directly on the given
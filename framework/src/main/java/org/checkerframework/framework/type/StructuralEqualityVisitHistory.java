@@ -12,15 +12,13 @@ public class StructuralEqualityVisitHistory {
 
   /**
    * Types in this history are structurally equal. (Use {@link SubtypeVisitHistory} because it
-   * implements a {@code Map<IPair<AnnotatedTypeMirror, AnnotatedTypeMirror>,
-   * AnnotationMirrorSet>}).
+   * implements a map from pairs of types to sets of hierarchies.)
    */
   private final SubtypeVisitHistory trueHistory;
 
   /**
    * Types in this history are not structurally equal. (Use {@link SubtypeVisitHistory} because it
-   * implements a {@code Map<IPair<AnnotatedTypeMirror, AnnotatedTypeMirror>,
-   * AnnotationMirrorSet>}).
+   * implements a map from pairs of types to sets of hierarchies.)
    */
   private final SubtypeVisitHistory falseHistory;
 
@@ -1,10 +1,12 @@
 package org.checkerframework.framework.type;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
 import javax.lang.model.element.AnnotationMirror;
-import org.checkerframework.javacutil.AnnotationMirrorSet;
-import org.plumelib.util.IPair;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.BugInCF;
 
 /**
  * THIS CLASS IS DESIGNED FOR USE WITH DefaultTypeHierarchy, DefaultRawnessComparer, and
@@ -20,19 +22,61 @@ import org.plumelib.util.IPair;
  * but with a different supertype. For example, if the two types are {@code @A T extends @B
  * Serializable<T>} and {@code @C Serializable<?>}, then isSubtype is first called one those types
  * and then on {@code @B Serializable<T>} and {@code @C Serializable<?>}.
+ *
+ * <p>The history is an open-addressing hash table over parallel arrays, so that {@link #put},
+ * {@link #contains}, and {@link #remove} do not allocate. Each qualifier hierarchy top is assigned a
+ * small index the first time it is seen, and each entry records the set of tops for which it holds
+ * as a bit mask.
  */
-// TODO: do we need to clear the history sometimes?
 public class SubtypeVisitHistory {
 
+  /** The initial number of slots in the table. Must be a power of two. */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** The maximum number of distinct qualifier hierarchy tops, i.e., the width of a bit mask. */
+  private static final int MAX_TOPS = Long.SIZE;
+
+  /** The first type of each entry, or null if the slot is empty. */
+  private @Nullable AnnotatedTypeMirror[] type1s;
+
+  /** The second type of each entry. */
+  private @Nullable AnnotatedTypeMirror[] type2s;
+
+  /** The hash code of each entry, computed from both types. */
+  private int[] hashes;
+
   /**
-   * The keys are pairs of types; the value is the set of qualifier hierarchy roots for which the
-   * key is in a subtype relationship.
+   * For each entry, a bit mask of the indices (into {@link #tops}) of the hierarchies in which the
+   * entry's types are in a subtype relationship. An entry whose mask is 0 was removed, but its slot
+   * is still occupied so that probe sequences stay intact.
    */
-  private final Map<IPair<AnnotatedTypeMirror, AnnotatedTypeMirror>, AnnotationMirrorSet> visited;
+  private long[] masks;
+
+  /** The number of slots that are occupied. */
+  private int occupied = 0;
+
+  /** The qualifier hierarchy tops seen so far; an index into this list is a bit in a mask. */
+  private final List<AnnotationMirror> tops = new ArrayList<>(2);
 
   /** Creates a new SubtypeVisitHistory. */
   public SubtypeVisitHistory() {
-    this.visited = new HashMap<>();
+    this.type1s = new AnnotatedTypeMirror[INITIAL_CAPACITY];
+    this.type2s = new AnnotatedTypeMirror[INITIAL_CAPACITY];
+    this.hashes = new int[INITIAL_CAPACITY];
+    this.masks = new long[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Allocates empty arrays with the given number of slots.
+   *
+   * @param capacity the number of slots; must be a power of two
+   */
+  private void allocate(int capacity) {
+    type1s = new AnnotatedTypeMirror[capacity];
+    type2s = new AnnotatedTypeMirror[capacity];
+    hashes = new int[capacity];
+    masks = new long[capacity];
+    occupied = 0;
   }
 
   /**
@@ -55,28 +99,35 @@ public class SubtypeVisitHistory {
       // Only store information about subtype relations that hold.
       return;
     }
-    IPair<AnnotatedTypeMirror, AnnotatedTypeMirror> key = IPair.of(type1, type2);
-    AnnotationMirrorSet hit = visited.get(key);
-
-    if (hit != null) {
-      hit.add(currentTop);
-    } else {
-      hit = new AnnotationMirrorSet();
-      hit.add(currentTop);
-      this.visited.put(key, hit);
+    long bit = topBit(currentTop, true);
+    int hash = hash(type1, type2);
+    int slot = find(type1, type2, hash);
+    if (slot >= 0) {
+      masks[slot] |= bit;
+      return;
+    }
+
+    if ((occupied + 1) * 2 > type1s.length) {
+      rehash();
     }
+    slot = ~find(type1, type2, hash);
+    type1s[slot] = type1;
+    type2s[slot] = type2;
+    hashes[slot] = hash;
+    masks[slot] = bit;
+    occupied++;
   }
 
   /** Remove {@code type1} and {@code type2}. */
   public void remove(
       AnnotatedTypeMirror type1, AnnotatedTypeMirror type2, AnnotationMirror currentTop) {
-    IPair<AnnotatedTypeMirror, AnnotatedTypeMirror> key = IPair.of(type1, type2);
-    AnnotationMirrorSet hit = visited.get(key);
-    if (hit != null) {
-      hit.remove(currentTop);
-      if (hit.isEmpty()) {
-        visited.remove(key);
-      }
+    long bit = topBit(currentTop, false);
+    if (bit == 0) {
+      return;
+    }
+    int slot = find(type1, type2, hash(type1, type2));
+    if (slot >= 0) {
+      masks[slot] &= ~bit;
     }
   }
 
@@ -88,13 +139,136 @@ public class SubtypeVisitHistory {
    */
   public boolean contains(
       AnnotatedTypeMirror type1, AnnotatedTypeMirror type2, AnnotationMirror currentTop) {
-    IPair<AnnotatedTypeMirror, AnnotatedTypeMirror> key = IPair.of(type1, type2);
-    AnnotationMirrorSet hit = visited.get(key);
-    return hit != null && hit.contains(currentTop);
+    long bit = topBit(currentTop, false);
+    if (bit == 0) {
+      return false;
+    }
+    int slot = find(type1, type2, hash(type1, type2));
+    return slot >= 0 && (masks[slot] & bit) != 0;
+  }
+
+  /**
+   * Returns the bit that represents {@code top} in an entry's mask.
+   *
+   * @param top the top of a qualifier hierarchy
+   * @param create if true, assign a new bit to {@code top} if it does not have one yet
+   * @return the bit for {@code top}, or 0 if it has none and {@code create} is false
+   */
+  private long topBit(AnnotationMirror top, boolean create) {
+    int size = tops.size();
+    // Tops are canonical within a qualifier hierarchy, so check for identity first.
+    for (int i = 0; i < size; i++) {
+      if (tops.get(i) == top) {
+        return 1L << i;
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      if (AnnotationUtils.areSame(tops.get(i), top)) {
+        return 1L << i;
+      }
+    }
+    if (!create) {
+      return 0;
+    }
+    if (size == MAX_TOPS) {
+      throw new BugInCF("SubtypeVisitHistory: more than %d hierarchies", MAX_TOPS);
+    }
+    tops.add(top);
+    return 1L << size;
+  }
+
+  /**
+   * Returns the hash code of the pair of {@code type1} and {@code type2}.
+   *
+   * @param type1 the first type
+   * @param type2 the second type
+   * @return the hash code of the pair
+   */
+  private static int hash(AnnotatedTypeMirror type1, AnnotatedTypeMirror type2) {
+    int h = type1.hashCode() * 31 + type2.hashCode();
+    // Spread the high bits, because the table index is taken from the low bits.
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Returns the slot that contains the given pair, or, if there is no such slot, the bitwise
+   * complement of the empty slot where it would be inserted.
+   *
+   * @param type1 the first type
+   * @param type2 the second type
+   * @param hash the result of {@link #hash} on the types
+   * @return the slot for the pair if it is present, or the complement of an empty slot
+   */
+  private int find(AnnotatedTypeMirror type1, AnnotatedTypeMirror type2, int hash) {
+    int mask = type1s.length - 1;
+    int slot = hash & mask;
+    AnnotatedTypeMirror slotType1;
+    while ((slotType1 = type1s[slot]) != null) {
+      if (hashes[slot] == hash) {
+        AnnotatedTypeMirror slotType2 = type2s[slot];
+        if (slotType2 != null
+            && (slotType1 == type1 || slotType1.equals(type1))
+            && (slotType2 == type2 || slotType2.equals(type2))) {
+          return slot;
+        }
+      }
+      slot = (slot + 1) & mask;
+    }
+    return ~slot;
+  }
+
+  /** Grows the table, dropping entries that were removed from every hierarchy. */
+  private void rehash() {
+    @Nullable AnnotatedTypeMirror[] oldType1s = type1s;
+    @Nullable AnnotatedTypeMirror[] oldType2s = type2s;
+    int[] oldHashes = hashes;
+    long[] oldMasks = masks;
+
+    int live = 0;
+    for (int i = 0; i < oldType1s.length; i++) {
+      if (oldType1s[i] != null && oldMasks[i] != 0) {
+        live++;
+      }
+    }
+    int capacity = oldType1s.length;
+    // Leave room to grow before the next rehash.
+    while ((live + 1) * 4 > capacity) {
+      capacity *= 2;
+    }
+    allocate(capacity);
+
+    int mask = capacity - 1;
+    for (int i = 0; i < oldType1s.length; i++) {
+      if (oldType1s[i] == null || oldMasks[i] == 0) {
+        continue;
+      }
+      int slot = oldHashes[i] & mask;
+      while (type1s[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      type1s[slot] = oldType1s[i];
+      type2s[slot] = oldType2s[i];
+      hashes[slot] = oldHashes[i];
+      masks[slot] = oldMasks[i];
+      occupied++;
+    }
   }
 
   @Override
   public String toString() {
-    return "VisitHistory( " + visited + " )";
+    StringJoiner result = new StringJoiner(", ", "VisitHistory( {", "} )");
+    for (int i = 0; i < type1s.length; i++) {
+      if (type1s[i] == null || masks[i] == 0) {
+        continue;
+      }
+      StringJoiner hierarchies = new StringJoiner(", ", "[", "]");
+      for (int j = 0; j < tops.size(); j++) {
+        if ((masks[i] & (1L << j)) != 0) {
+          hierarchies.add(tops.get(j).toString());
+        }
+      }
+      result.add("<" + type1s[i] + "," + type2s[i] + ">=" + hierarchies);
+    }
+    return result.toString();
   }
 }
@@ -29,7 +29,6 @@ import org.checkerframework.javacutil.TreePathUtil;
 import org.checkerframework.javacutil.TreeUtils;
 import org.checkerframework.javacutil.TypeKindUtils;
 import org.plumelib.util.IPair;
-import org.plumelib.util.MapsP;
 
 /**
  * {@link PropagationTreeAnnotator} adds qualifiers to types where the resulting type is a function
@@ -73,7 +72,7 @@ public class PropagationTreeAnnotator extends TreeAnnotator {
    * and this cache is used to improve performance.
    */
   private final Map<MethodInvocationTree, AnnotatedExecutableType> methodInvocationToType =
-      MapsP.createLruCache(300);
+      atypeFactory.createCache(300);
 
   @Override
   public Void visitNewArray(NewArrayTree arrayTree, AnnotatedTypeMirror arrayType) {
@@ -1,7 +1,9 @@
 package org.checkerframework.framework.type.typeannotator;
 
 import java.util.ArrayDeque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
@@ -42,6 +44,13 @@ public class PropagationTypeAnnotator extends TypeAnnotator {
   /** The parents. */
   private final ArrayDeque<AnnotatedDeclaredType> parents = new ArrayDeque<>();
 
+  /**
+   * The annotated types of the type parameters that have been looked up since the last reset. Like
+   * {@link #parents}, it is state of the traversal in progress, so it is not thread-safe, even with
+   * {@code -AatfConcurrentCaches}.
+   */
+  private final Map<Element, AnnotatedTypeVariable> typeParameters = new HashMap<>();
+
   /**
    * Creates a new PropagationTypeAnnotator.
    *
@@ -57,6 +66,7 @@ public class PropagationTypeAnnotator extends TypeAnnotator {
       // when the PropagationTypeAnnotator is called recursively we don't
       // want the visit method to reset the list of visited types
       super.reset();
+      typeParameters.clear();
     }
   }
 
@@ -130,32 +140,83 @@ public class PropagationTypeAnnotator extends TypeAnnotator {
     }
 
     if (typeParamElement != null) {
-      pause = true;
-      AnnotatedTypeVariable typeParam =
-          (AnnotatedTypeVariable) atypeFactory.getAnnotatedType(typeParamElement);
-      pause = false;
-
-      AnnotationMirrorSet tops = atypeFactory.getQualifierHierarchy().getTopAnnotations();
-
+      boolean propagateExtends;
+      boolean propagateSuper;
       if (AnnotatedTypes.hasNoExplicitBound(wildcard)) {
-        propagateExtendsBound(wildcard, typeParam, tops);
-        propagateSuperBound(wildcard, typeParam, tops);
+        propagateExtends = true;
+        propagateSuper = true;
       } else if (AnnotatedTypes.hasExplicitExtendsBound(wildcard)) {
-        propagateSuperBound(wildcard, typeParam, tops);
+        propagateExtends = false;
+        propagateSuper = true;
       } else if (AnnotatedTypes.hasExplicitSuperBound(wildcard)) {
-        propagateExtendsBound(wildcard, typeParam, tops);
+        propagateExtends = true;
+        propagateSuper = false;
       } else {
         // If this is thrown, then it means that there's a bug in one of the
         // AnnotatedTypes.hasNoExplicit*Bound methods.  Probably something changed in the
         // javac implementation.
         throw new BugInCF("Wildcard is neither unbound nor does it have an explicit bound.");
       }
+
+      AnnotationMirrorSet tops = atypeFactory.getQualifierHierarchy().getTopAnnotations();
+
+      // Computing the annotated type of the type parameter applies all of the factory's
+      // annotators and defaults to it and to its bounds, so only do so if it is needed.
+      if ((propagateExtends && isMissingAnnotations(wildcard.getExtendsBound(), tops))
+          || (propagateSuper && isMissingAnnotations(wildcard.getSuperBound(), tops))) {
+        AnnotatedTypeVariable typeParam = getAnnotatedTypeParameter(typeParamElement);
+        if (propagateExtends) {
+          propagateExtendsBound(wildcard, typeParam, tops);
+        }
+        if (propagateSuper) {
+          propagateSuperBound(wildcard, typeParam, tops);
+        }
+      }
     }
     scan(wildcard.getExtendsBound(), null);
     scan(wildcard.getSuperBound(), null);
     return null;
   }
 
+  /**
+   * Returns the annotated type of the given type parameter. The result is memoized until the next
+   * call to {@link #reset()}, because a type often contains several wildcards that correspond to
+   * the same type parameter.
+   *
+   * @param typeParamElement a type parameter
+   * @return the annotated type of {@code typeParamElement}
+   */
+  private AnnotatedTypeVariable getAnnotatedTypeParameter(Element typeParamElement) {
+    AnnotatedTypeVariable typeParam = typeParameters.get(typeParamElement);
+    if (typeParam == null) {
+      pause = true;
+      typeParam = (AnnotatedTypeVariable) atypeFactory.getAnnotatedType(typeParamElement);
+      pause = false;
+      typeParameters.put(typeParamElement, typeParam);
+    }
+    return typeParam;
+  }
+
+  /**
+   * Returns true if {@link #applyAnnosFromBound} would add an annotation to {@code wildcardBound}.
+   *
+   * @param wildcardBound a bound of a wildcard
+   * @param tops the top annotations
+   * @return true if {@code wildcardBound} is missing an annotation in some hierarchy
+   */
+  private boolean isMissingAnnotations(
+      AnnotatedTypeMirror wildcardBound, Set<? extends AnnotationMirror> tops) {
+    if (wildcardBound.getKind() == TypeKind.TYPEVAR) {
+      return false;
+    }
+    for (AnnotationMirror top : tops) {
+      if (wildcardBound.getPrimaryAnnotationInHierarchy(top) == null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void propagateSuperBound(
       AnnotatedWildcardType wildcard,
       AnnotatedTypeVariable typeParam,
@@ -0,0 +1,556 @@
+package org.checkerframework.framework.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.processing.Processor;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.javacutil.BugInCF;
+import org.checkerframework.javacutil.SystemUtil;
+import org.plumelib.util.MapsP;
+
+/**
+ * A long-running process that compiles on behalf of {@link CheckerMain}, so that repeated
+ * compilations do not each pay for starting a JVM, loading and JIT-compiling the Checker Framework,
+ * and reading the annotated JDK index and stub files. Those are cached process-wide and therefore
+ * survive from one compilation to the next.
+ *
+ * <p>CheckerMain starts a daemon when it is passed {@code -daemon file} and no daemon is running.
+ * The daemon listens on a loopback port and writes that port, a random token that clients must
+ * present, its working directory, and its configuration to {@code file}. Relative paths in a
+ * compilation request are resolved against the daemon's working directory, so CheckerMain only uses
+ * a daemon that was started in its own working directory. The configuration is a digest of the
+ * command that started the daemon's JVM and of the files on its classpath (see {@link
+ * #getConfiguration}), so CheckerMain does not use a daemon that runs a different JDK, different
+ * JVM options, or an older checker.jar; it starts a new one instead. A daemon exits after it has
+ * been idle for {@link #IDLE_TIMEOUT_MILLIS}.
+ *
+ * <p>A client and a starting daemon lock the file {@link #getLockFile}, so that when several
+ * clients find no daemon at once, only one daemon remains.
+ *
+ * <p>The daemon runs one compilation at a time. Checkers named by {@code -processor} are loaded by
+ * the daemon's class loader, or by a child of it for the classes on {@code -processorpath}, so that
+ * the Checker Framework's classes are shared across compilations. Output that a checker prints
+ * directly to {@code System.out} goes to the daemon's log file rather than to the client.
+ */
+public class CheckerDaemon {
+
+  /** How long the daemon waits for a compilation request before it exits: 30 minutes. */
+  public static final int IDLE_TIMEOUT_MILLIS = 30 * 60 * 1000;
+
+  /** How long a client waits to connect to the daemon. */
+  private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+  /**
+   * How long the daemon waits for the next part of a request before it drops the connection, so
+   * that a client that connects but sends nothing cannot block other clients.
+   */
+  static final int REQUEST_TIMEOUT_MILLIS = 10 * 1000;
+
+  /** The maximum number of class loaders for distinct processor paths to keep. */
+  private static final int PROCESSOR_LOADER_CACHE_SIZE = 8;
+
+  /** The socket on which the daemon accepts compilation requests. */
+  private final ServerSocket serverSocket;
+
+  /** The token that each request must start with. */
+  private final String token;
+
+  /** How long the daemon waits for the next part of a request. */
+  private final int requestTimeoutMillis;
+
+  /**
+   * Maps a processor path, and the size and modification time of each file on it, to a class loader
+   * for it whose parent is the daemon's class loader. See {@link #getProcessorLoaderKey}.
+   */
+  private final Map<String, ClassLoader> processorLoaders =
+      MapsP.createLruCache(PROCESSOR_LOADER_CACHE_SIZE);
+
+  /**
+   * Starts a daemon and serves compilation requests until it has been idle for {@link
+   * #IDLE_TIMEOUT_MILLIS}.
+   *
+   * @param args two arguments: the file that describes the daemon to clients, and the
+   *     configuration of the daemon, as computed by {@link #getConfiguration}
+   * @throws IOException if the daemon cannot listen on a port or write the file
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println(
+          "Usage: java " + CheckerDaemon.class.getName() + " daemon-file configuration");
+      System.exit(JavacArguments.EXIT_CMDERR);
+    }
+    File daemonFile = new File(args[0]).getAbsoluteFile();
+    CheckerDaemon daemon = start(daemonFile, args[1], REQUEST_TIMEOUT_MILLIS);
+    if (daemon == null) {
+      System.err.println("A daemon is already running for " + daemonFile);
+      return;
+    }
+    daemon.run(daemonFile);
+  }
+
+  /**
+   * Creates a daemon and writes the file that describes it, unless a daemon with the given
+   * configuration is already running.
+   *
+   * @param daemonFile the file that describes the daemon to clients
+   * @param configuration the configuration of the daemon, as computed by {@link #getConfiguration}
+   * @param requestTimeoutMillis how long the daemon waits for the next part of a request
+   * @return the new daemon, which does not serve requests until {@link #run} is called, or null if
+   *     a daemon is already running
+   * @throws IOException if the daemon cannot listen on a port or write the file
+   */
+  static @Nullable CheckerDaemon start(
+      File daemonFile, String configuration, int requestTimeoutMillis) throws IOException {
+    Files.createDirectories(daemonFile.getAbsoluteFile().toPath().getParent());
+    // Several daemons may be starting at once.  The first one to get the lock is used; the others
+    // find it running and exit.
+    try (FileChannel lockChannel =
+            FileChannel.open(
+                getLockFile(daemonFile).toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock lock = lockChannel.lock()) {
+      if (compile(daemonFile, configuration, null, System.err) != null) {
+        return null;
+      }
+      CheckerDaemon daemon = new CheckerDaemon(requestTimeoutMillis);
+      daemon.writeDaemonFile(daemonFile, configuration);
+      return daemon;
+    }
+  }
+
+  /**
+   * Serves compilation requests until the daemon has been idle for {@link #IDLE_TIMEOUT_MILLIS} or
+   * is closed, and then deletes {@code daemonFile} unless another daemon has replaced it.
+   *
+   * @param daemonFile the file that describes this daemon to clients
+   * @throws IOException if the file cannot be deleted
+   */
+  void run(File daemonFile) throws IOException {
+    try {
+      serve();
+    } finally {
+      serverSocket.close();
+      List<String> lines = readDaemonFile(daemonFile);
+      if (lines != null && lines.get(1).equals(token)) {
+        Files.deleteIfExists(daemonFile.toPath());
+      }
+    }
+  }
+
+  /**
+   * Makes {@link #run} return after the current request.
+   *
+   * @throws IOException if the socket cannot be closed
+   */
+  void close() throws IOException {
+    serverSocket.close();
+  }
+
+  /**
+   * Creates a daemon that listens on an ephemeral loopback port.
+   *
+   * @param requestTimeoutMillis how long the daemon waits for the next part of a request
+   * @throws IOException if the daemon cannot listen on a port
+   */
+  private CheckerDaemon(int requestTimeoutMillis) throws IOException {
+    this.requestTimeoutMillis = requestTimeoutMillis;
+    serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+    serverSocket.setSoTimeout(IDLE_TIMEOUT_MILLIS);
+    byte[] bytes = new byte[16];
+    new SecureRandom().nextBytes(bytes);
+    StringBuilder sb = new StringBuilder();
+    for (byte b : bytes) {
+      sb.append(String.format("%02x", b));
+    }
+    token = sb.toString();
+  }
+
+  /**
+   * Writes the port, token, working directory, and configuration of this daemon to {@code
+   * daemonFile}. The file is replaced atomically, so that a client never reads a partial file.
+   *
+   * @param daemonFile the file that describes the daemon to clients
+   * @param configuration the configuration of this daemon
+   * @throws IOException if the file cannot be written
+   */
+  private void writeDaemonFile(File daemonFile, String configuration) throws IOException {
+    Path target = daemonFile.getAbsoluteFile().toPath();
+    Files.createDirectories(target.getParent());
+    Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+    // The token lets anyone who can read the file run code in this process.
+    tmp.toFile().setReadable(false, false);
+    tmp.toFile().setReadable(true, true);
+    String contents =
+        serverSocket.getLocalPort()
+            + System.lineSeparator()
+            + token
+            + System.lineSeparator()
+            + System.getProperty("user.dir")
+            + System.lineSeparator()
+            + configuration
+            + System.lineSeparator();
+    Files.write(tmp, contents.getBytes(StandardCharsets.UTF_8));
+    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads the lines of a daemon file.
+   *
+   * @param daemonFile the file that describes a daemon
+   * @return the port, token, working directory, and configuration of the daemon, or null if the
+   *     file does not exist or is malformed
+   */
+  private static @Nullable List<String> readDaemonFile(File daemonFile) {
+    try {
+      List<String> lines = Files.readAllLines(daemonFile.toPath(), StandardCharsets.UTF_8);
+      return lines.size() == 4 ? lines : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Serves compilation requests, one at a time, until none arrives for a while or the daemon is
+   * closed.
+   */
+  private void serve() {
+    while (!serverSocket.isClosed()) {
+      Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (SocketTimeoutException e) {
+        return;
+      } catch (IOException e) {
+        if (!serverSocket.isClosed()) {
+          System.err.println("CheckerDaemon: " + e);
+        }
+        continue;
+      }
+      try (Socket client = socket) {
+        client.setSoTimeout(requestTimeoutMillis);
+        serve(client);
+      } catch (IOException e) {
+        // The client went away, or did not send its request in time.  Keep serving other clients.
+        System.err.println("CheckerDaemon: " + e);
+      }
+    }
+  }
+
+  /**
+   * Serves one compilation request. The request is the token, followed by the number of arguments
+   * to javac and the arguments. The response is the output of javac, followed by its exit status.
+   * A request with no arguments just checks that the daemon is alive.
+   *
+   * @param socket the connection to a client
+   * @throws IOException if communicating with the client fails
+   */
+  private void serve(Socket socket) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    // Check the length first, so that a client without the token cannot make the daemon allocate.
+    byte[] expectedToken = token.getBytes(StandardCharsets.UTF_8);
+    if (in.readInt() != expectedToken.length) {
+      return;
+    }
+    byte[] actualToken = new byte[expectedToken.length];
+    in.readFully(actualToken);
+    if (!MessageDigest.isEqual(expectedToken, actualToken)) {
+      return;
+    }
+    int numArgs = in.readInt();
+    List<String> args = new ArrayList<>(numArgs);
+    for (int i = 0; i < numArgs; i++) {
+      args.add(readString(in));
+    }
+
+    StringWriter output = new StringWriter();
+    int exitStatus;
+    try (PrintWriter writer = new PrintWriter(output)) {
+      exitStatus = args.isEmpty() ? 0 : compile(args, writer);
+    }
+    writeString(out, output.toString());
+    out.writeInt(exitStatus);
+    out.flush();
+  }
+
+  /**
+   * Compiles in this process.
+   *
+   * @param args the arguments to javac
+   * @param output where to write diagnostics
+   * @return the exit status of javac
+   */
+  private int compile(List<String> args, PrintWriter output) {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+      JavacArguments javacArgs;
+      try {
+        javacArgs = JavacArguments.parse(compiler, fileManager, args);
+      } catch (IOException e) {
+        output.println("error: " + e.getMessage());
+        return JavacArguments.EXIT_CMDERR;
+      }
+
+      // javac itself would load processors in a new class loader for each compilation.
+      List<String> options = javacArgs.options;
+      List<Processor> processors = null;
+      if (javacArgs.processorNames != null) {
+        try {
+          processors =
+              JavacArguments.createProcessors(
+                  SystemUtil.commaSplitter.split(javacArgs.processorNames),
+                  getProcessorLoader(javacArgs.processorpath));
+        } catch (ReflectiveOperationException | ClassCastException | MalformedURLException e) {
+          output.println("error: cannot instantiate processor: " + e);
+          return JavacArguments.EXIT_CMDERR;
+        }
+      } else if (javacArgs.processorpath != null) {
+        // Let javac discover the processors on the processor path.
+        options.add("-processorpath");
+        options.add(javacArgs.processorpath);
+      }
+
+      Iterable<? extends JavaFileObject> compilationUnits =
+          fileManager.getJavaFileObjectsFromStrings(javacArgs.files);
+      JavaCompiler.CompilationTask task =
+          compiler.getTask(
+              output,
+              fileManager,
+              null,
+              options,
+              javacArgs.classNames.isEmpty() ? null : javacArgs.classNames,
+              compilationUnits);
+      if (processors != null) {
+        task.setProcessors(processors);
+      }
+      return task.call() ? 0 : 1;
+    } catch (IllegalArgumentException e) {
+      output.println("error: " + e.getMessage());
+      return JavacArguments.EXIT_CMDERR;
+    } catch (IOException | RuntimeException e) {
+      e.printStackTrace(output);
+      return JavacArguments.EXIT_ABNORMAL;
+    }
+  }
+
+  /**
+   * Returns the class loader for the annotation processors on the given processor path.
+   *
+   * @param processorpath the value of {@code -processorpath}, or null
+   * @return a class loader for {@code processorpath}, or the daemon's class loader if it is null
+   * @throws MalformedURLException if the processor path is malformed
+   */
+  private ClassLoader getProcessorLoader(@Nullable String processorpath)
+      throws MalformedURLException {
+    ClassLoader loader = CheckerDaemon.class.getClassLoader();
+    if (processorpath != null) {
+      String key = getProcessorLoaderKey(processorpath);
+      ClassLoader cached = key == null ? null : processorLoaders.get(key);
+      if (cached == null) {
+        List<URL> urls = new ArrayList<>();
+        for (String element : SystemUtil.pathSeparatorSplitter.split(processorpath)) {
+          if (!element.isEmpty()) {
+            urls.add(new File(element).toURI().toURL());
+          }
+        }
+        // Delegates to the daemon's class loader first, so the Checker Framework's classes and
+        // their process-wide caches are shared across compilations.
+        cached = new URLClassLoader(urls.toArray(new URL[0]), loader);
+        if (key != null) {
+          processorLoaders.put(key, cached);
+        }
+      }
+      loader = cached;
+    }
+    return loader;
+  }
+
+  /**
+   * Returns the key under which a class loader for the given processor path is cached: the
+   * processor path and the size and modification time of each file on it, so that a class loader is
+   * not reused after a jar file on the processor path has been rebuilt. Returns null if a class
+   * loader for the processor path should not be cached, because a directory is on it: the
+   * modification time of a directory does not change when a class file in it does.
+   *
+   * @param processorpath the value of {@code -processorpath}
+   * @return the key for a class loader for {@code processorpath}, or null if it is not cached
+   */
+  static @Nullable String getProcessorLoaderKey(String processorpath) {
+    StringBuilder result = new StringBuilder(processorpath);
+    for (String element : SystemUtil.pathSeparatorSplitter.split(processorpath)) {
+      if (element.isEmpty()) {
+        continue;
+      }
+      File file = new File(element).getAbsoluteFile();
+      if (file.isDirectory()) {
+        return null;
+      }
+      appendFileStamp(result, file);
+    }
+    return result.toString();
+  }
+
+  /**
+   * Appends the path, size, and modification time of a file to a description of files.
+   *
+   * @param description a description of files; is side-effected by this method
+   * @param file an absolute file
+   */
+  private static void appendFileStamp(StringBuilder description, File file) {
+    description.append('\n').append(file).append('\0');
+    description.append(file.length()).append('\0').append(file.lastModified());
+  }
+
+  /**
+   * Returns the configuration of a daemon: a digest of the command that starts its JVM and of the
+   * path, size, and modification time of each file on its classpath. The command includes the
+   * {@code java} executable, and so the JDK, and the JVM options.
+   *
+   * @param jvmCommand the command that starts the daemon's JVM, up to but excluding the main class
+   * @param classpath the classpath of the daemon's JVM
+   * @return the configuration of a daemon started with {@code jvmCommand}
+   */
+  public static String getConfiguration(List<String> jvmCommand, List<String> classpath) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new BugInCF("SHA-256 is not available", e);
+    }
+    StringBuilder description = new StringBuilder();
+    for (String arg : jvmCommand) {
+      description.append(arg).append('\0');
+    }
+    for (String element : classpath) {
+      appendFileStamp(description, new File(element).getAbsoluteFile());
+    }
+    StringBuilder result = new StringBuilder();
+    for (byte b : digest.digest(description.toString().getBytes(StandardCharsets.UTF_8))) {
+      result.append(String.format("%02x", b));
+    }
+    return result.toString();
+  }
+
+  /**
+   * Returns the file that is locked while a daemon is started for {@code daemonFile}.
+   *
+   * @param daemonFile the file that describes a daemon
+   * @return the lock file for {@code daemonFile}
+   */
+  public static File getLockFile(File daemonFile) {
+    return new File(daemonFile.getAbsolutePath() + ".lock");
+  }
+
+  /**
+   * Compiles in the daemon described by {@code daemonFile}, if it is running, was started in the
+   * current working directory, and has the given configuration.
+   *
+   * @param daemonFile the file that describes the daemon
+   * @param configuration the configuration that the daemon must have, as computed by {@link
+   *     #getConfiguration}
+   * @param args the arguments to javac, or null to just check whether the daemon is alive
+   * @param output where to write the output of javac
+   * @return the exit status of javac, or null if no daemon could be used
+   */
+  public static @Nullable Integer compile(
+      File daemonFile, String configuration, @Nullable List<String> args, PrintStream output) {
+    List<String> lines = readDaemonFile(daemonFile);
+    if (lines == null
+        || !lines.get(2).equals(System.getProperty("user.dir"))
+        || !lines.get(3).equals(configuration)) {
+      return null;
+    }
+    int port;
+    try {
+      port = Integer.parseInt(lines.get(0));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    List<String> request = args == null ? Arrays.asList() : args;
+
+    try (Socket socket = new Socket()) {
+      socket.connect(
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      writeString(out, lines.get(1));
+      out.writeInt(request.size());
+      for (String arg : request) {
+        writeString(out, arg);
+      }
+      out.flush();
+
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      String javacOutput = readString(in);
+      int exitStatus = in.readInt();
+      output.print(javacOutput);
+      output.flush();
+      return exitStatus;
+    } catch (IOException e) {
+      // No daemon is listening, or it exited.
+      return null;
+    }
+  }
+
+  /**
+   * Writes a string of any length.
+   *
+   * @param out the stream to write to
+   * @param s the string to write
+   * @throws IOException if writing fails
+   */
+  static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads a string written by {@link #writeString}.
+   *
+   * @param in the stream to read from
+   * @return the string
+   * @throws IOException if reading fails
+   */
+  static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -10,15 +10,20 @@ import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.StringJoiner;
+import java.util.TreeSet;
 import java.util.jar.JarInputStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -106,6 +111,18 @@ public class CheckerMain {
   /** Command-line argument files (specified with @ on the command line). */
   private final List<File> argListFiles;
 
+  /** The class data sharing archive given by {@link #CDS_ARCHIVE_OPT}, or null. */
+  protected final @Nullable File cdsArchive;
+
+  /** The daemon file given by {@link #DAEMON_OPT}, or null. */
+  protected final @Nullable File daemonFile;
+
+  /** The number of worker JVMs given by {@link #PARALLEL_OPT}, or 1. */
+  protected final int parallelism;
+
+  /** The dependency graph file given by {@link #DEPENDENCY_GRAPH_OPT}, or null. */
+  protected final @Nullable File dependencyGraph;
+
   /**
    * Option name for specifying an alternative checker-qual.jar location. The accompanying value
    * MUST be the path to the jar file (NOT the path to its encompassing directory)
@@ -130,6 +147,40 @@ public class CheckerMain {
    */
   public static final String JDK_PATH_OPT = "-jdkJar";
 
+  /**
+   * Option name for specifying a class data sharing (CDS) archive file for the JVM that runs javac.
+   * The first run writes the classes that it loads to the file, and later runs map them in instead
+   * of loading and verifying them again. This reduces the startup time of each javac invocation.
+   * The option has no effect on JDK 12 and earlier.
+   */
+  public static final String CDS_ARCHIVE_OPT = "-cdsArchive";
+
+  /**
+   * Option name for compiling in a long-running {@link CheckerDaemon}. The accompanying value is
+   * the path of a file that describes the daemon. If no daemon is running, CheckerMain starts one
+   * and compiles in a new JVM as usual; later invocations with the same file compile in the daemon.
+   * The option has no effect on JDK 8.
+   */
+  public static final String DAEMON_OPT = "-daemon";
+
+  /**
+   * Option name for type-checking in several JVMs at once. The accompanying value is the number of
+   * JVMs. Each JVM compiles all the source files but type-checks only some of them; see {@link
+   * ShardedCompilation}. The option has no effect on JDK 8, and it takes precedence over {@link
+   * #DAEMON_OPT}.
+   */
+  public static final String PARALLEL_OPT = "-parallel";
+
+  /**
+   * Option name for compiling the source files package by package, in dependency order, in up to
+   * {@link #PARALLEL_OPT} JVMs at once. The accompanying value is the path of a file that lists the
+   * dependencies between classes or packages, such as the output of {@code jdeps -verbose:class};
+   * see {@link PackageShards}. The javac command line must give a class output directory with
+   * {@code -d}. The option has no effect on JDK 8, and it takes precedence over the hash-based
+   * sharding of {@link #PARALLEL_OPT}.
+   */
+  public static final String DEPENDENCY_GRAPH_OPT = "-dependencyGraph";
+
   /**
    * Construct all the relevant file locations and Java version given the path to this jar and a set
    * of directories in which to search for jars.
@@ -151,6 +202,22 @@ public class CheckerMain {
 
     this.javacJar = extractFileArg(JAVAC_PATH_OPT, new File(searchPath, "javac.jar"), args);
 
+    String cdsArchivePath = extractArg(CDS_ARCHIVE_OPT, null, args);
+    this.cdsArchive = cdsArchivePath == null ? null : new File(cdsArchivePath);
+    String daemonPath = extractArg(DAEMON_OPT, null, args);
+    this.daemonFile = daemonPath == null ? null : new File(daemonPath);
+    String parallelismArg = extractArg(PARALLEL_OPT, "1", args);
+    try {
+      this.parallelism = Integer.parseInt(parallelismArg);
+    } catch (NumberFormatException e) {
+      throw new UserError(PARALLEL_OPT + " requires a number, but got: " + parallelismArg);
+    }
+    if (parallelism < 1) {
+      throw new UserError(PARALLEL_OPT + " requires a positive number, but got: " + parallelismArg);
+    }
+    String dependencyGraphPath = extractArg(DEPENDENCY_GRAPH_OPT, null, args);
+    this.dependencyGraph = dependencyGraphPath == null ? null : new File(dependencyGraphPath);
+
     this.compilationBootclasspath = createCompilationBootclasspath(args);
     this.runtimeClasspath = createRuntimeClasspath(args);
     this.jvmOpts = extractJvmOpts(args);
@@ -159,9 +226,31 @@ public class CheckerMain {
     this.ppOpts = createPpOpts(args);
     this.toolOpts = args;
 
+    if ((parallelism > 1 || dependencyGraph != null) && hasInferOption(toolOpts)) {
+      // Each worker would write its own inference results, and they would not be merged.
+      throw new UserError(
+          "-Ainfer cannot be used with " + PARALLEL_OPT + " or " + DEPENDENCY_GRAPH_OPT);
+    }
+
     assertValidState();
   }
 
+  /**
+   * Returns true if the given arguments contain {@code -Ainfer}, which runs whole-program
+   * inference.
+   *
+   * @param args the arguments to javac
+   * @return true if {@code args} contains {@code -Ainfer}
+   */
+  private static boolean hasInferOption(List<String> args) {
+    for (String arg : args) {
+      if (arg.equals("-Ainfer") || arg.startsWith("-Ainfer=")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /** Assert that required jars exist. */
   protected void assertValidState() {
     if (SystemUtil.jreVersion == 8) {
@@ -432,6 +521,20 @@ public class CheckerMain {
 
   /** Invoke the compiler with all relevant jars on its classpath and/or bootclasspath. */
   public List<String> getExecArguments() {
+    List<String> args = getJvmArguments(runtimeClasspath, true);
+    addMainToArgs(args);
+    addJavacArguments(args, true);
+    return args;
+  }
+
+  /**
+   * Returns the command that starts a JVM with the given classpath, and the options for that JVM.
+   *
+   * @param classpath the classpath of the JVM
+   * @param useCdsArchive if true, use the class data sharing archive, if one was specified
+   * @return the java command and its options
+   */
+  private List<String> getJvmArguments(List<String> classpath, boolean useCdsArchive) {
     List<String> args = new ArrayList<>(jvmOpts.size() + cpOpts.size() + toolOpts.size() + 7);
 
     // TODO: do we need java.exe on Windows?
@@ -475,22 +578,35 @@ public class CheckerMain {
     }
 
     args.add("-classpath");
-    args.add(String.join(File.pathSeparator, runtimeClasspath));
+    args.add(String.join(File.pathSeparator, classpath));
     args.add("-ea");
     // com.sun.tools needs to be enabled separately
     args.add("-ea:com.sun.tools...");
 
+    if (useCdsArchive) {
+      // Before jvmOpts, so that the user can override these options.
+      args.addAll(createCdsJvmOpts());
+    }
     args.addAll(jvmOpts);
+    return args;
+  }
 
-    addMainToArgs(args);
-
+  /**
+   * Adds the arguments to javac, which follow the main class, to {@code args}.
+   *
+   * @param args the list to add to
+   * @param quotePaths if true, quote the classpath and processorpath if they contain spaces
+   */
+  private void addJavacArguments(List<String> args, boolean quotePaths) {
     if (!argsListHasClassPath(argListFiles)) {
+      String classpath = concatenatePaths(cpOpts);
       args.add("-classpath");
-      args.add(quote(concatenatePaths(cpOpts)));
+      args.add(quotePaths ? quote(classpath) : classpath);
     }
     if (!argsListHasProcessorPath(argListFiles)) {
+      String processorpath = concatenatePaths(ppOpts);
       args.add("-processorpath");
-      args.add(quote(concatenatePaths(ppOpts)));
+      args.add(quotePaths ? quote(processorpath) : processorpath);
     }
 
     if (SystemUtil.jreVersion == 8) {
@@ -503,7 +619,28 @@ public class CheckerMain {
     }
 
     args.addAll(toolOpts);
-    return args;
+  }
+
+  /**
+   * Returns the JVM options that make the JVM that runs javac use {@link #cdsArchive}, creating it
+   * if it does not exist.
+   *
+   * @return the JVM options for class data sharing, or an empty list if no archive was specified or
+   *     the JVM does not support dynamic archives
+   */
+  protected List<String> createCdsJvmOpts() {
+    if (cdsArchive == null || SystemUtil.jreVersion < 13) {
+      return Collections.emptyList();
+    }
+    String archive = "-XX:SharedArchiveFile=" + cdsArchive.getAbsolutePath();
+    if (SystemUtil.jreVersion >= 19) {
+      // The JVM re-creates the archive if it is missing or was created by a different JVM.
+      return Arrays.asList("-XX:+AutoCreateSharedArchive", archive);
+    } else if (cdsArchive.exists()) {
+      return Collections.singletonList(archive);
+    } else {
+      return Collections.singletonList("-XX:ArchiveClassesAtExit=" + cdsArchive.getAbsolutePath());
+    }
   }
 
   /** Given a list of paths, concatenate them to form a single path. Also expand wildcards. */
@@ -575,10 +712,301 @@ public class CheckerMain {
       }
     }
 
+    if (dependencyGraph != null && SystemUtil.jreVersion > 8) {
+      return invokeCompilerByPackage(dependencyGraph);
+    }
+    if (parallelism > 1 && SystemUtil.jreVersion > 8) {
+      return invokeCompilerInParallel();
+    }
+
+    if (daemonFile != null && SystemUtil.jreVersion > 8) {
+      List<String> daemonClasspath = getDaemonClasspath();
+      List<String> daemonJvmCommand = getDaemonJvmCommand(daemonClasspath);
+      String configuration = CheckerDaemon.getConfiguration(daemonJvmCommand, daemonClasspath);
+      List<String> javacArgs = new ArrayList<>();
+      addJavacArguments(javacArgs, false);
+      Integer exitStatus = CheckerDaemon.compile(daemonFile, configuration, javacArgs, System.err);
+      if (exitStatus != null) {
+        return exitStatus;
+      }
+      startDaemon(daemonFile, daemonJvmCommand, configuration);
+    }
+
     // Actually invoke the compiler
     return ExecUtil.execute(args.toArray(new String[0]), System.out, System.err);
   }
 
+  /**
+   * Invokes the compiler in {@link #parallelism} JVMs at once, each of which type-checks one shard
+   * of the source files, and prints their merged diagnostics to standard error.
+   *
+   * @return the greatest exit status of the JVMs
+   */
+  private int invokeCompilerInParallel() {
+    List<List<String>> shards = new ArrayList<>(parallelism);
+    for (int i = 0; i < parallelism; i++) {
+      List<String> javacArgs = new ArrayList<>();
+      addJavacArguments(javacArgs, false);
+      javacArgs.add("-A" + ShardedCompilation.SHARD_OPTION + "=" + i + "/" + parallelism);
+      if (i != 0) {
+        // Only the first worker writes class files.
+        javacArgs.add("-proc:only");
+      }
+      shards.add(javacArgs);
+    }
+    try (Workers workers = new Workers(false)) {
+      workers.run(shards);
+      return workers.finish();
+    }
+  }
+
+  /**
+   * Invokes the compiler on the packages of the source files in dependency order, as given by
+   * {@code dependencyGraph}, in up to {@link #parallelism} JVMs at once. Prints the merged
+   * diagnostics to standard error. The errors of a checker do not stop the compilation of other
+   * packages, but if a package cannot be compiled, the packages that depend on it are not compiled,
+   * and are listed.
+   *
+   * @param dependencyGraph the file that lists the dependencies between classes or packages
+   * @return the greatest exit status of the JVMs
+   */
+  private int invokeCompilerByPackage(File dependencyGraph) {
+    List<String> javacArgs = new ArrayList<>();
+    addJavacArguments(javacArgs, false);
+    PackageShards packageShards;
+    try {
+      packageShards = new PackageShards(javacArgs, dependencyGraph);
+    } catch (IOException e) {
+      throw new UserError("Cannot read the source files or the dependency graph: " + e);
+    }
+    if (packageShards.getClassOutputDirectory() == null) {
+      throw new UserError(DEPENDENCY_GRAPH_OPT + " requires a class output directory, given by -d");
+    }
+    // The packages that could not be compiled.
+    Set<String> failed = new TreeSet<>();
+    // The packages that were not compiled, because they depend on a package that failed.
+    Set<String> skipped = new TreeSet<>();
+    try (Workers workers = new Workers(true)) {
+      for (int layer = 0; layer < packageShards.getLayerCount(); layer++) {
+        Set<String> blocked = packageShards.getDependents(failed);
+        for (String pkg : packageShards.getLayerPackages(layer)) {
+          if (blocked.contains(pkg)) {
+            skipped.add(pkg.isEmpty() ? "<unnamed package>" : pkg);
+          }
+        }
+        List<List<String>> shards = packageShards.getShards(layer, blocked, parallelism);
+        List<List<String>> shardArgs = new ArrayList<>(shards.size());
+        for (List<String> shard : shards) {
+          shardArgs.add(packageShards.getArguments(shard));
+        }
+        List<Integer> exitStatuses = workers.run(shardArgs);
+        for (int i = 0; i < shards.size(); i++) {
+          if (exitStatuses.get(i) != 0) {
+            failed.addAll(packageShards.getPackages(shards.get(i)));
+          }
+        }
+      }
+      int exitStatus = workers.finish();
+      if (!skipped.isEmpty()) {
+        System.err.println(
+            "Not checked, because a package that they depend on failed to compile: "
+                + String.join(", ", skipped));
+      }
+      return exitStatus;
+    }
+  }
+
+  /**
+   * The worker JVMs of a compilation, each of which compiles with {@link ShardedCompilation}.
+   * {@link #finish} prints their merged diagnostics to standard error. If the workers are passed
+   * {@code -AsarifOutput}, each writes a file of its own, and {@link #finish} merges the files
+   * into the given one.
+   */
+  private class Workers implements AutoCloseable {
+
+    /** The classpath of the worker JVMs. */
+    private final List<String> classpath;
+
+    /** True if the errors of checkers should not make a worker fail. */
+    private final boolean deferCheckerErrors;
+
+    /** The files to which the workers write their diagnostics. */
+    private final List<File> diagnosticsFiles = new ArrayList<>();
+
+    /** The files to which the workers write SARIF output. */
+    private final List<File> sarifFiles = new ArrayList<>();
+
+    /** The SARIF output file given on the command line, or null if there is none. */
+    private @Nullable String sarifOutput = null;
+
+    /** The workers that are running. */
+    private final List<Process> processes = new ArrayList<>();
+
+    /** The greatest exit status of the workers so far. */
+    private int exitStatus = 0;
+
+    /**
+     * Creates a Workers.
+     *
+     * @param deferCheckerErrors true if the errors of checkers should not make a worker fail; see
+     *     {@link ShardedCompilation#DEFER_CHECKER_ERRORS_OPT}
+     */
+    Workers(boolean deferCheckerErrors) {
+      this.deferCheckerErrors = deferCheckerErrors;
+      classpath = new ArrayList<>(runtimeClasspath);
+      classpath.add(checkerUtilJar.getAbsolutePath());
+      classpath.add(checkerJar.getAbsolutePath());
+    }
+
+    /**
+     * Runs workers at the same time, and waits for all of them to finish.
+     *
+     * @param javacArgsOfWorkers the javac arguments of each worker
+     * @return the exit status of each worker
+     */
+    List<Integer> run(List<List<String>> javacArgsOfWorkers) {
+      String sarifOutputPrefix = "-A" + ShardedCompilation.SARIF_OUTPUT_OPTION + "=";
+      List<Integer> result = new ArrayList<>(javacArgsOfWorkers.size());
+      try {
+        for (List<String> javacArgs : javacArgsOfWorkers) {
+          File diagnosticsFile =
+              File.createTempFile("checker-shard-" + diagnosticsFiles.size() + "-", ".diagnostics");
+          diagnosticsFiles.add(diagnosticsFile);
+          // The archive would not match the workers' classpath.
+          List<String> args = getJvmArguments(classpath, false);
+          args.add(ShardedCompilation.class.getName());
+          if (deferCheckerErrors) {
+            args.add(ShardedCompilation.DEFER_CHECKER_ERRORS_OPT);
+          }
+          args.add(diagnosticsFile.getAbsolutePath());
+          File sarifFile = null;
+          for (String arg : javacArgs) {
+            if (arg.startsWith(sarifOutputPrefix)) {
+              sarifOutput = arg.substring(sarifOutputPrefix.length());
+              if (sarifFile == null) {
+                sarifFile =
+                    File.createTempFile("checker-shard-" + sarifFiles.size() + "-", ".sarif");
+                sarifFiles.add(sarifFile);
+              }
+              arg = sarifOutputPrefix + sarifFile.getAbsolutePath();
+            }
+            args.add(arg);
+          }
+          processes.add(new ProcessBuilder(args).inheritIO().start());
+        }
+        for (Process process : processes) {
+          int status = process.waitFor();
+          result.add(status);
+          exitStatus = Math.max(exitStatus, status);
+        }
+      } catch (IOException e) {
+        throw new UserError("Failed to start the Checker Framework workers: " + e.getMessage());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new UserError("Interrupted while waiting for the Checker Framework workers");
+      } finally {
+        for (Process process : processes) {
+          process.destroy();
+        }
+        processes.clear();
+      }
+      return result;
+    }
+
+    /**
+     * Prints the merged diagnostics of all the workers that have run, and merges their SARIF
+     * files.
+     *
+     * @return the greatest exit status of the workers, or a greater one if a checker issued an
+     *     error or the output of a worker could not be merged
+     */
+    int finish() {
+      int result = ShardedCompilation.printMergedDiagnostics(diagnosticsFiles, System.err);
+      result = Math.max(result, exitStatus);
+      if (sarifOutput != null
+          && !ShardedCompilation.mergeSarifFiles(sarifFiles, new File(sarifOutput), System.err)) {
+        result = Math.max(result, JavacArguments.EXIT_ABNORMAL);
+      }
+      return result;
+    }
+
+    /** Deletes the files that the workers wrote. */
+    @Override
+    public void close() {
+      for (File diagnosticsFile : diagnosticsFiles) {
+        diagnosticsFile.delete();
+      }
+      for (File sarifFile : sarifFiles) {
+        sarifFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Returns the classpath of a {@link CheckerDaemon}.
+   *
+   * @return the classpath of a daemon
+   */
+  private List<String> getDaemonClasspath() {
+    List<String> classpath = new ArrayList<>(runtimeClasspath);
+    classpath.add(checkerUtilJar.getAbsolutePath());
+    classpath.add(checkerJar.getAbsolutePath());
+    return classpath;
+  }
+
+  /**
+   * Returns the command that starts the JVM of a {@link CheckerDaemon}, up to but excluding the
+   * main class. The JVM has the same options as the one that runs javac. It is the JVM that runs
+   * CheckerMain, so that the daemon's JDK is known.
+   *
+   * @param classpath the classpath of the daemon
+   * @return the command that starts the JVM of a daemon
+   */
+  private List<String> getDaemonJvmCommand(List<String> classpath) {
+    // The archive would not match the daemon's classpath.
+    List<String> args = getJvmArguments(classpath, false);
+    args.set(0, new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+    return args;
+  }
+
+  /**
+   * Starts a {@link CheckerDaemon} in the background. The daemon writes its output to a file whose
+   * name is that of {@code daemonFile} with ".log" appended. Does nothing if another process is
+   * starting a daemon for {@code daemonFile}.
+   *
+   * @param daemonFile the file that describes the daemon, once it has started
+   * @param jvmCommand the command that starts the daemon's JVM, from {@link #getDaemonJvmCommand}
+   * @param configuration the configuration of the daemon, from {@link
+   *     CheckerDaemon#getConfiguration}
+   */
+  private void startDaemon(File daemonFile, List<String> jvmCommand, String configuration) {
+    List<String> args = new ArrayList<>(jvmCommand);
+    args.add(CheckerDaemon.class.getName());
+    args.add(daemonFile.getAbsolutePath());
+    args.add(configuration);
+    File logFile = new File(daemonFile.getAbsolutePath() + ".log");
+    try {
+      Files.createDirectories(logFile.getParentFile().toPath());
+      try (FileChannel lockChannel =
+              FileChannel.open(
+                  CheckerDaemon.getLockFile(daemonFile).toPath(),
+                  StandardOpenOption.CREATE,
+                  StandardOpenOption.WRITE);
+          FileLock lock = lockChannel.tryLock()) {
+        if (lock == null) {
+          // Another client or daemon is starting a daemon.
+          return;
+        }
+        new ProcessBuilder(args)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile))
+            .start();
+      }
+    } catch (IOException e) {
+      System.err.println("Failed to start the Checker Framework daemon: " + e);
+    }
+  }
+
   private static void outputArgumentsToFile(String outputFilename, List<String> args) {
     if (outputFilename != null) {
       String errorMessage = null;
@@ -0,0 +1,176 @@
+package org.checkerframework.framework.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.javacutil.SystemUtil;
+import org.checkerframework.javacutil.UserError;
+
+/**
+ * Type-checks source files in this process, repeatedly, with one configuration. A program that
+ * embeds the Checker Framework, such as a code review tool, creates one session and calls {@link
+ * #check} for each set of source files that it needs to check.
+ *
+ * <p>A javac compilation task, and the checkers and type factories that run in it, cannot be
+ * reused: they belong to one javac context, whose symbol table is filled by the compilation. Each
+ * call to {@link #check} therefore runs a new compilation with new checker instances. The session
+ * keeps what outlives a compilation:
+ *
+ * <ul>
+ *   <li>The loaded and JIT-compiled classes of javac and of the Checker Framework, and their
+ *       process-wide caches, such as the parsed stub files and the index of the annotated JDK.
+ *   <li>The file manager, which caches the contents of the jar files and directories on the class
+ *       path. Call {@link #invalidateClasspath} when they change.
+ *   <li>The diagnostics of each class that was checked, stored in the directory given by {@code
+ *       -AresultCacheDir}. A later call does not type-check a class whose source and whose
+ *       dependencies' signatures are unchanged, but reports its stored diagnostics again.
+ * </ul>
+ *
+ * <p>A session runs one compilation at a time; it is not thread-safe.
+ */
+public class CheckingSession implements AutoCloseable {
+
+  /** The system Java compiler. */
+  private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+  /** The fully-qualified names of the checkers to run. */
+  private final List<String> processorNames;
+
+  /** The options passed to javac, including {@code -proc:only} and {@code -AresultCacheDir}. */
+  private final List<String> options;
+
+  /**
+   * The directory that the session created for {@code -AresultCacheDir}, or null if the options
+   * given to the constructor contained {@code -AresultCacheDir}.
+   */
+  private final @Nullable Path ownResultCacheDir;
+
+  /** The file manager that every compilation uses. */
+  private StandardJavaFileManager fileManager;
+
+  /**
+   * Creates a session.
+   *
+   * @param processorNames the fully-qualified names of the checkers to run, as would be passed to
+   *     {@code -processor}
+   * @param options the options to pass to javac, such as {@code -classpath} and checker options.
+   *     They must not name source files. If they do not contain {@code -AresultCacheDir}, the
+   *     session uses a temporary directory, which {@link #close} deletes.
+   * @throws UserError if the temporary directory cannot be created
+   */
+  public CheckingSession(List<String> processorNames, List<String> options) {
+    if (processorNames.isEmpty()) {
+      throw new UserError("A checking session needs at least one checker");
+    }
+    this.processorNames = new ArrayList<>(processorNames);
+    this.options = new ArrayList<>(options);
+    if (!this.options.contains("-proc:only")) {
+      this.options.add("-proc:only");
+    }
+    boolean hasResultCacheDir = false;
+    for (String option : options) {
+      if (option.startsWith("-AresultCacheDir=")) {
+        hasResultCacheDir = true;
+      }
+    }
+    if (hasResultCacheDir) {
+      ownResultCacheDir = null;
+    } else {
+      try {
+        ownResultCacheDir = Files.createTempDirectory("checker-session");
+      } catch (IOException e) {
+        throw new UserError("Cannot create a temporary directory: %s", e.getMessage());
+      }
+      this.options.add("-AresultCacheDir=" + ownResultCacheDir);
+    }
+    this.fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the file manager that the compilations use. A client may use it to create the source
+   * files to check, for example with {@link StandardJavaFileManager#getJavaFileObjects}.
+   *
+   * @return the file manager that the compilations use
+   */
+  public StandardJavaFileManager getFileManager() {
+    return fileManager;
+  }
+
+  /**
+   * Type-checks the given source files.
+   *
+   * @param files the source files to check
+   * @return the diagnostics of javac and of the checkers, in the order they were issued
+   * @throws IllegalArgumentException if the options given to the constructor are invalid
+   * @throws UserError if a checker cannot be instantiated
+   */
+  public List<Diagnostic<? extends JavaFileObject>> check(
+      Collection<? extends JavaFileObject> files) {
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    JavaCompiler.CompilationTask task =
+        compiler.getTask(null, fileManager, diagnostics, options, null, files);
+    try {
+      // Checker instances cannot be shared by compilations.
+      task.setProcessors(
+          JavacArguments.createProcessors(
+              processorNames, CheckingSession.class.getClassLoader()));
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      throw new UserError("Cannot instantiate a checker: %s", e);
+    }
+    task.call();
+    return diagnostics.getDiagnostics();
+  }
+
+  /**
+   * Discards the cached contents of the class path, so that the next call to {@link #check} sees
+   * jar files and class files that changed since the session started. The diagnostics of classes
+   * that depend on changed classes are recomputed.
+   *
+   * @throws UserError if the file manager cannot be closed
+   */
+  public void invalidateClasspath() {
+    closeFileManager();
+    fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Closes the file manager.
+   *
+   * @throws UserError if the file manager cannot be closed
+   */
+  private void closeFileManager() {
+    try {
+      fileManager.close();
+    } catch (IOException e) {
+      throw new UserError("Cannot close the file manager: %s", e.getMessage());
+    }
+  }
+
+  /**
+   * Ends the session, closing the file manager and deleting the temporary directory, if any.
+   *
+   * @throws UserError if the file manager cannot be closed or the directory cannot be deleted
+   */
+  @Override
+  public void close() {
+    closeFileManager();
+    if (ownResultCacheDir != null) {
+      try {
+        SystemUtil.deleteRecursively(ownResultCacheDir);
+      } catch (IOException e) {
+        throw new UserError("Cannot delete %s: %s", ownResultCacheDir, e.getMessage());
+      }
+    }
+  }
+}
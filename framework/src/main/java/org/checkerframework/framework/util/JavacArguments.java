@@ -0,0 +1,166 @@
+package org.checkerframework.framework.util;
+
+import com.sun.tools.javac.main.CommandLine;
+import com.sun.tools.javac.main.Main;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.processing.Processor;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The command-line arguments of a javac invocation, split up as the {@code javax.tools} API expects
+ * them. Used by the classes that run javac in-process on behalf of {@link CheckerMain}.
+ */
+class JavacArguments {
+
+  /** The exit status of javac for an invalid command line. */
+  static final int EXIT_CMDERR = Main.Result.CMDERR.exitCode;
+
+  /** The exit status of javac for an abnormal termination, such as a crash in a processor. */
+  static final int EXIT_ABNORMAL = Main.Result.ABNORMAL.exitCode;
+
+  /** The options, other than {@code -processor} and {@code -processorpath}, and their values. */
+  final List<String> options = new ArrayList<>();
+
+  /** The source files. */
+  final List<String> files = new ArrayList<>();
+
+  /** The names of classes to be processed by annotation processors. */
+  final List<String> classNames = new ArrayList<>();
+
+  /** The argument to {@code -processor}, or null if there is none. */
+  @Nullable String processorNames = null;
+
+  /** The argument to {@code -processorpath}, or null if there is none. */
+  @Nullable String processorpath = null;
+
+  /** Creates an empty JavacArguments; use {@link #parse}. */
+  private JavacArguments() {}
+
+  /**
+   * Splits the given javac command line, after expanding {@code @argfile} arguments.
+   *
+   * @param compiler the compiler that determines how many values each option takes
+   * @param fileManager the file manager that determines how many values each file manager option,
+   *     such as {@code -d} or {@code -classpath}, takes
+   * @param args the command line
+   * @return the command line, split up
+   * @throws IOException if an argument file cannot be read
+   */
+  static JavacArguments parse(
+      JavaCompiler compiler, StandardJavaFileManager fileManager, List<String> args)
+      throws IOException {
+    JavacArguments result = new JavacArguments();
+    List<String> expandedArgs = CommandLine.parse(args);
+    for (int i = 0; i < expandedArgs.size(); i++) {
+      String arg = expandedArgs.get(i);
+      if (arg.equals("-processor") && i + 1 < expandedArgs.size()) {
+        result.processorNames = expandedArgs.get(++i);
+      } else if ((arg.equals("-processorpath") || arg.equals("--processor-path"))
+          && i + 1 < expandedArgs.size()) {
+        result.processorpath = expandedArgs.get(++i);
+      } else if (arg.startsWith("-")) {
+        int numValues = compiler.isSupportedOption(arg);
+        if (numValues == -1) {
+          numValues = fileManager.isSupportedOption(arg);
+        }
+        result.options.add(arg);
+        for (int j = 0; j < numValues && i + 1 < expandedArgs.size(); j++) {
+          result.options.add(expandedArgs.get(++i));
+        }
+      } else if (arg.endsWith(".java")) {
+        result.files.add(arg);
+      } else {
+        result.classNames.add(arg);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the value of the given annotation processor option, {@code -Akey=value}.
+   *
+   * @param key the name of the option
+   * @return the value of the option, or null if it is not given or has no value
+   */
+  @Nullable String getProcessorOption(String key) {
+    String prefix = "-A" + key + "=";
+    String result = null;
+    for (String option : options) {
+      if (option.startsWith(prefix)) {
+        // As in javac, the last occurrence wins.
+        result = option.substring(prefix.length());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Replaces the directories for class files and generated source files, given by {@code -d} and
+   * {@code -s}, by the given ones.
+   *
+   * @param classDirectory the new directory for class files
+   * @param sourceDirectory the new directory for generated source files
+   */
+  void setOutputDirectories(String classDirectory, String sourceDirectory) {
+    List<String> newOptions = new ArrayList<>(options.size() + 4);
+    for (int i = 0; i < options.size(); i++) {
+      String option = options.get(i);
+      if ((option.equals("-d") || option.equals("-s")) && i + 1 < options.size()) {
+        i++;
+      } else {
+        newOptions.add(option);
+      }
+    }
+    newOptions.add("-d");
+    newOptions.add(classDirectory);
+    newOptions.add("-s");
+    newOptions.add(sourceDirectory);
+    options.clear();
+    options.addAll(newOptions);
+  }
+
+  /**
+   * Returns the options, including {@code -processor} and {@code -processorpath}, so that javac
+   * itself loads the annotation processors.
+   *
+   * @return all the options
+   */
+  List<String> getOptionsWithProcessors() {
+    List<String> result = new ArrayList<>(options.size() + 4);
+    result.addAll(options);
+    if (processorNames != null) {
+      result.add("-processor");
+      result.add(processorNames);
+    }
+    if (processorpath != null) {
+      result.add("-processorpath");
+      result.add(processorpath);
+    }
+    return result;
+  }
+
+  /**
+   * Instantiates the given annotation processors, as javac does for {@code -processor}. A processor
+   * cannot be used by more than one compilation, so each compilation needs new instances.
+   *
+   * @param processorNames the fully-qualified names of the processors
+   * @param loader the class loader that loads the processors
+   * @return new instances of the processors
+   * @throws ReflectiveOperationException if a processor cannot be instantiated
+   * @throws ClassCastException if a class is not a processor
+   */
+  static List<Processor> createProcessors(Iterable<String> processorNames, ClassLoader loader)
+      throws ReflectiveOperationException {
+    List<Processor> processors = new ArrayList<>();
+    for (String name : processorNames) {
+      Class<? extends Processor> processorClass =
+          Class.forName(name, true, loader).asSubclass(Processor.class);
+      processors.add(processorClass.getDeclaredConstructor().newInstance());
+    }
+    return processors;
+  }
+}
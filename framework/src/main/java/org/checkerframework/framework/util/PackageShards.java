@@ -0,0 +1,496 @@
+package org.checkerframework.framework.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Partitions the source files of a javac command line by package, so that {@link CheckerMain} can
+ * compile and type-check the packages in separate JVMs.
+ *
+ * <p>Packages that depend on one another, directly or indirectly, in both directions are compiled
+ * together. The resulting groups of packages are compiled in layers: a group is in a later layer
+ * than every group that it depends on, and the groups of one layer are compiled at the same time.
+ * Each compilation puts the class output directory on its classpath, so that it reads the classes
+ * of earlier layers rather than compiling their sources again. If a package cannot be compiled,
+ * the packages that depend on it, given by {@link #getDependents}, cannot be compiled either, and
+ * {@link #getShards} leaves them out of later layers.
+ *
+ * <p>The source path is emptied, so that a compilation does not compile the sources of another
+ * package implicitly, instead of reading its classes.
+ *
+ * <p>The dependencies are read from a file that is computed ahead of time, for example by {@code
+ * jdeps -verbose:class}. Each line of the form {@code from -> to}, where {@code from} and {@code
+ * to} are class or package names, is a dependency; other lines are ignored, as are classes that
+ * are not in a package with source files. A dependency that is missing from the file causes
+ * spurious "cannot find symbol" errors.
+ */
+public class PackageShards {
+
+  /** Matches a dependency in a dependency graph file. */
+  private static final Pattern DEPENDENCY = Pattern.compile("^\\s*(\\S+)\\s+->\\s+(\\S+)");
+
+  /** The javac arguments other than source files and the classpath. */
+  private final List<String> options = new ArrayList<>();
+
+  /** The classpath given on the command line, or the empty string. */
+  private String classpath = "";
+
+  /** The class output directory, given by {@code -d}, or null if there is none. */
+  private @Nullable String classOutputDirectory = null;
+
+  /** Maps each package to its source files, in command-line order. */
+  private final Map<String, List<String>> filesByPackage = new TreeMap<>();
+
+  /** Maps each source file to its package. */
+  private final Map<String, String> packageOfFile = new HashMap<>();
+
+  /** Maps each package to the packages, with source files, on which it depends. */
+  private final Map<String, Set<String>> dependencies = new HashMap<>();
+
+  /**
+   * The layers of the package dependency graph. Each layer is a list of strongly connected
+   * components, and each component is a sorted list of packages.
+   */
+  private final List<List<List<String>>> layers;
+
+  /**
+   * Creates a PackageShards for the given javac command line.
+   *
+   * @param javacArgs the arguments to javac; {@code @argfile} arguments are expanded
+   * @param dependencyGraph the file that lists the dependencies between classes or packages
+   * @throws IOException if a file cannot be read
+   */
+  public PackageShards(List<String> javacArgs, File dependencyGraph) throws IOException {
+    List<String> args = expandArgFiles(javacArgs);
+    for (int i = 0; i < args.size(); i++) {
+      String arg = args.get(i);
+      if ((arg.equals("-classpath") || arg.equals("-cp") || arg.equals("--class-path"))
+          && i + 1 < args.size()) {
+        // As for javac, the last classpath wins.
+        classpath = args.get(++i);
+      } else if (arg.startsWith("--class-path=")) {
+        classpath = arg.substring("--class-path=".length());
+      } else if ((arg.equals("-sourcepath") || arg.equals("--source-path"))
+          && i + 1 < args.size()) {
+        // Replaced by an empty source path.
+        i++;
+      } else if (arg.startsWith("--source-path=")) {
+        // Replaced by an empty source path.
+      } else if (arg.endsWith(".java") && !arg.startsWith("-")) {
+        String pkg = readPackage(arg);
+        filesByPackage.computeIfAbsent(pkg, k -> new ArrayList<>()).add(arg);
+        packageOfFile.put(arg, pkg);
+      } else {
+        if (arg.equals("-d") && i + 1 < args.size()) {
+          classOutputDirectory = args.get(i + 1);
+        }
+        options.add(arg);
+      }
+    }
+    readDependencies(dependencyGraph);
+    layers = computeLayers();
+  }
+
+  /**
+   * Returns the class output directory, given by {@code -d}, or null if there is none.
+   *
+   * @return the class output directory, or null
+   */
+  public @Nullable String getClassOutputDirectory() {
+    return classOutputDirectory;
+  }
+
+  /**
+   * Returns the number of layers. The packages of a layer can be compiled at the same time, after
+   * the packages of the previous layers.
+   *
+   * @return the number of layers
+   */
+  public int getLayerCount() {
+    return layers.size();
+  }
+
+  /**
+   * Returns the shards of a layer. Each shard is a list of source files; there are at most {@code
+   * maxShards} of them. The result is deterministic.
+   *
+   * @param layer the index of a layer
+   * @param excludedPackages packages whose files are left out; packages that depend on one another
+   *     in both directions are left out together, so this should be closed under {@link
+   *     #getDependents}
+   * @param maxShards the maximum number of shards
+   * @return the shards of the given layer, without the files of {@code excludedPackages}
+   */
+  public List<List<String>> getShards(int layer, Set<String> excludedPackages, int maxShards) {
+    List<List<String>> groups = new ArrayList<>();
+    for (List<String> component : layers.get(layer)) {
+      if (Collections.disjoint(component, excludedPackages)) {
+        groups.add(getFiles(component));
+      }
+    }
+    return balance(groups, maxShards);
+  }
+
+  /**
+   * Returns the packages of a layer.
+   *
+   * @param layer the index of a layer
+   * @return the packages of the given layer, in order; the unnamed package is the empty string
+   */
+  public Set<String> getLayerPackages(int layer) {
+    Set<String> result = new TreeSet<>();
+    for (List<String> component : layers.get(layer)) {
+      result.addAll(component);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the packages that depend on any of the given packages, directly or indirectly.
+   *
+   * @param packages some packages
+   * @return the packages that depend on {@code packages}, in order; includes a package of {@code
+   *     packages} only if it depends on another one, or on itself via other packages
+   */
+  public Set<String> getDependents(Set<String> packages) {
+    Map<String, Set<String>> dependents = invertDependencies();
+    Set<String> result = new TreeSet<>();
+    Deque<String> worklist = new ArrayDeque<>(packages);
+    while (!worklist.isEmpty()) {
+      String pkg = worklist.remove();
+      for (String dependent : dependents.getOrDefault(pkg, Collections.emptySet())) {
+        if (result.add(dependent)) {
+          worklist.add(dependent);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the javac arguments that compile the given shard.
+   *
+   * @param shard the source files of a shard
+   * @return the javac arguments for {@code shard}
+   */
+  public List<String> getArguments(List<String> shard) {
+    List<String> result = new ArrayList<>(options.size() + shard.size() + 2);
+    result.addAll(options);
+    String shardClasspath = classpath;
+    if (classOutputDirectory != null) {
+      shardClasspath =
+          classpath.isEmpty()
+              ? classOutputDirectory
+              : classpath + File.pathSeparator + classOutputDirectory;
+    }
+    if (!shardClasspath.isEmpty()) {
+      result.add("-classpath");
+      result.add(shardClasspath);
+    }
+    // Otherwise, javac would look for sources on the classpath, or on the user's source path, and
+    // might compile another shard's sources rather than read its classes.
+    result.add("-sourcepath");
+    result.add("");
+    result.addAll(shard);
+    return result;
+  }
+
+  /**
+   * Returns the packages of the given shard.
+   *
+   * @param shard the source files of a shard
+   * @return the packages of the files in {@code shard}, in order; the unnamed package is the empty
+   *     string
+   */
+  public Set<String> getPackages(List<String> shard) {
+    Set<String> result = new TreeSet<>();
+    for (String file : shard) {
+      String pkg = packageOfFile.get(file);
+      if (pkg != null) {
+        result.add(pkg);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the source files of the given packages.
+   *
+   * @param packages some packages
+   * @return the source files of {@code packages}
+   */
+  @SuppressWarnings("nullness:argument") // the packages come from filesByPackage
+  private List<String> getFiles(List<String> packages) {
+    List<String> result = new ArrayList<>();
+    for (String pkg : packages) {
+      result.addAll(filesByPackage.get(pkg));
+    }
+    return result;
+  }
+
+  /**
+   * Combines the given groups of files into at most {@code maxShards} shards of similar size.
+   *
+   * @param groups groups of source files, each of which must be in a single shard
+   * @param maxShards the maximum number of shards
+   * @return the shards
+   */
+  /*package-private*/ static List<List<String>> balance(
+      List<List<String>> groups, int maxShards) {
+    List<List<String>> sortedGroups = new ArrayList<>(groups);
+    // Place the largest groups first. The sort is stable, so the result is deterministic.
+    sortedGroups.sort(Comparator.comparingInt((List<String> group) -> group.size()).reversed());
+    int numShards = Math.min(maxShards, groups.size());
+    List<List<String>> shards = new ArrayList<>(numShards);
+    for (int i = 0; i < numShards; i++) {
+      shards.add(new ArrayList<>());
+    }
+    for (List<String> group : sortedGroups) {
+      List<String> smallest = shards.get(0);
+      for (List<String> shard : shards) {
+        if (shard.size() < smallest.size()) {
+          smallest = shard;
+        }
+      }
+      smallest.addAll(group);
+    }
+    return shards;
+  }
+
+  /**
+   * Returns the strongly connected components of the package dependency graph, computed by
+   * Kosaraju's algorithm. A component comes after every component that it depends on.
+   *
+   * @return the strongly connected components of the package dependency graph
+   */
+  /*package-private*/ List<List<String>> getStronglyConnectedComponents() {
+    Map<String, Set<String>> dependents = invertDependencies();
+
+    // First pass: order the packages by the time at which a depth-first search of the dependents
+    // finishes them.
+    List<String> finished = new ArrayList<>(filesByPackage.size());
+    Set<String> visited = new TreeSet<>();
+    for (String start : filesByPackage.keySet()) {
+      if (visited.add(start)) {
+        depthFirstSearch(start, dependents, visited, finished);
+      }
+    }
+
+    // Second pass: in reverse finishing order, collect the packages reachable via dependencies.
+    // This yields a component only after the components that it depends on.
+    List<List<String>> result = new ArrayList<>();
+    visited.clear();
+    for (int i = finished.size() - 1; i >= 0; i--) {
+      String start = finished.get(i);
+      if (visited.add(start)) {
+        List<String> component = new ArrayList<>();
+        depthFirstSearch(start, dependencies, visited, component);
+        Collections.sort(component);
+        result.add(component);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the inverse of {@link #dependencies}.
+   *
+   * @return a map from each package to the packages, with source files, that depend on it
+   */
+  private Map<String, Set<String>> invertDependencies() {
+    Map<String, Set<String>> result = new HashMap<>();
+    for (Map.Entry<String, Set<String>> entry : dependencies.entrySet()) {
+      for (String dependency : entry.getValue()) {
+        result.computeIfAbsent(dependency, k -> new TreeSet<>()).add(entry.getKey());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Groups the strongly connected components of the package dependency graph into layers. A
+   * component is in a later layer than every component that it depends on, and in the first layer
+   * that satisfies this.
+   *
+   * @return the layers, each a list of components
+   */
+  @SuppressWarnings("nullness:unboxing.of.nullable") // every package is in a component
+  private List<List<List<String>>> computeLayers() {
+    List<List<String>> components = getStronglyConnectedComponents();
+
+    // Dependencies come before their dependents in `components`.
+    Map<String, Integer> componentOfPackage = new HashMap<>();
+    for (int i = 0; i < components.size(); i++) {
+      for (String pkg : components.get(i)) {
+        componentOfPackage.put(pkg, i);
+      }
+    }
+    List<List<List<String>>> result = new ArrayList<>();
+    int[] layerOfComponent = new int[components.size()];
+    for (int i = 0; i < components.size(); i++) {
+      int layer = 0;
+      for (String pkg : components.get(i)) {
+        for (String dependency : dependencies.getOrDefault(pkg, Collections.emptySet())) {
+          int dependencyComponent = componentOfPackage.get(dependency);
+          if (dependencyComponent != i) {
+            layer = Math.max(layer, layerOfComponent[dependencyComponent] + 1);
+          }
+        }
+      }
+      layerOfComponent[i] = layer;
+      if (layer == result.size()) {
+        result.add(new ArrayList<>());
+      }
+      result.get(layer).add(components.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Performs an iterative depth-first search, adding each package to {@code finished} when the
+   * search has visited all its successors.
+   *
+   * @param start the package at which to start; must already be in {@code visited}
+   * @param successors the edges of the graph
+   * @param visited the packages that have been visited; is modified
+   * @param finished the packages that have been finished; is modified
+   */
+  private static void depthFirstSearch(
+      String start,
+      Map<String, Set<String>> successors,
+      Set<String> visited,
+      List<String> finished) {
+    Deque<String> stack = new ArrayDeque<>();
+    Deque<Iterator<String>> iterators = new ArrayDeque<>();
+    stack.push(start);
+    iterators.push(successors.getOrDefault(start, Collections.emptySet()).iterator());
+    while (!stack.isEmpty()) {
+      Iterator<String> iterator = iterators.peek();
+      if (iterator.hasNext()) {
+        String next = iterator.next();
+        if (visited.add(next)) {
+          stack.push(next);
+          iterators.push(successors.getOrDefault(next, Collections.emptySet()).iterator());
+        }
+      } else {
+        finished.add(stack.pop());
+        iterators.pop();
+      }
+    }
+  }
+
+  /**
+   * Reads the dependencies between packages with source files from a dependency graph file.
+   *
+   * @param dependencyGraph the file that lists the dependencies between classes or packages
+   * @throws IOException if the file cannot be read
+   */
+  private void readDependencies(File dependencyGraph) throws IOException {
+    for (String line : Files.readAllLines(dependencyGraph.toPath(), StandardCharsets.UTF_8)) {
+      Matcher matcher = DEPENDENCY.matcher(line);
+      if (!matcher.find()) {
+        continue;
+      }
+      String from = getSourcePackage(matcher.group(1));
+      String to = getSourcePackage(matcher.group(2));
+      if (from != null && to != null && !from.equals(to)) {
+        dependencies.computeIfAbsent(from, k -> new TreeSet<>()).add(to);
+      }
+    }
+  }
+
+  /**
+   * Returns the package with source files that the given class or package name denotes.
+   *
+   * @param name the name of a class or package
+   * @return the package with source files that {@code name} is or is in, or null if there is none
+   */
+  private @Nullable String getSourcePackage(String name) {
+    if (filesByPackage.containsKey(name)) {
+      return name;
+    }
+    int dot = name.lastIndexOf('.');
+    String pkg = dot == -1 ? "" : name.substring(0, dot);
+    return filesByPackage.containsKey(pkg) ? pkg : null;
+  }
+
+  /**
+   * Returns the package of the given source file.
+   *
+   * @param file a Java source file
+   * @return the package of {@code file}, or the empty string for the unnamed package
+   * @throws IOException if the file cannot be read
+   */
+  /*package-private*/ static String readPackage(String file) throws IOException {
+    String contents =
+        new String(Files.readAllBytes(new File(file).toPath()), StandardCharsets.UTF_8);
+    return TopLevelDeclarations.scan(contents).packageName;
+  }
+
+  /**
+   * Replaces each {@code @argfile} argument by the arguments in the file. As in javac, arguments
+   * are separated by white space, and may be quoted with double or single quotes.
+   *
+   * @param args javac arguments
+   * @return the arguments, with argument files expanded
+   * @throws IOException if an argument file cannot be read
+   */
+  /*package-private*/ static List<String> expandArgFiles(List<String> args) throws IOException {
+    List<String> result = new ArrayList<>(args.size());
+    for (String arg : args) {
+      if (!arg.startsWith("@")) {
+        result.add(arg);
+        continue;
+      }
+      byte[] bytes = Files.readAllBytes(new File(arg.substring(1)).toPath());
+      String contents = new String(bytes, StandardCharsets.UTF_8);
+      StringBuilder current = new StringBuilder();
+      boolean inArgument = false;
+      char quote = 0;
+      for (int i = 0; i < contents.length(); i++) {
+        char c = contents.charAt(i);
+        if (quote != 0) {
+          if (c == quote) {
+            quote = 0;
+          } else {
+            current.append(c);
+          }
+        } else if (Character.isWhitespace(c)) {
+          if (inArgument) {
+            result.add(current.toString());
+            current.setLength(0);
+            inArgument = false;
+          }
+        } else {
+          inArgument = true;
+          if (c == '"' || c == '\'') {
+            quote = c;
+          } else {
+            current.append(c);
+          }
+        }
+      }
+      if (inArgument) {
+        result.add(current.toString());
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,512 @@
+package org.checkerframework.framework.util;
+
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.tools.javac.api.BasicJavacTask;
+import com.sun.tools.javac.api.ClientCodeWrapper;
+import com.sun.tools.javac.util.JCDiagnostic;
+import com.sun.tools.javac.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.TreeSet;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.javacutil.SystemUtil;
+
+/**
+ * Type-checks a set of compilation units in several JVMs at once, each of which checks one shard of
+ * the compilation units, and merges their diagnostics into one report.
+ *
+ * <p>The type-checking of different compilation units is independent, but the Checker Framework
+ * cannot check them on several threads of one javac: javac's symbol table, type caches, and log
+ * are not thread-safe, and neither are some static caches of the Checker Framework. Instead, each
+ * worker is a separate javac that parses and attributes every compilation unit, so that it sees the
+ * same program as a single javac would, but that passes {@code -AcheckerShard=I/N} so that the
+ * checkers only type-check the compilation units in its shard. Only the first worker generates
+ * class files; the others run with {@code -proc:only}. Every worker runs the other annotation
+ * processors too, so that each sees the classes and members that they generate, but only the files
+ * that the first worker generates are kept: each other worker writes its generated files to a
+ * temporary directory of its own.
+ *
+ * <p>{@link CheckerMain} starts the workers when it is passed {@code -parallel N}. Each worker is
+ * run by {@link #main}, which writes the diagnostics of its compilation to a file. {@link
+ * #printMergedDiagnostics} then prints the diagnostics of all workers in a deterministic order,
+ * without the duplicates that arise because every worker reports the problems, such as javac
+ * errors, that are not specific to its shard. Likewise, if {@code -AsarifOutput} is passed, each
+ * worker writes a SARIF file of its own, and {@link #mergeSarifFiles} combines them.
+ *
+ * <p>When {@link CheckerMain} is passed {@code -dependencyGraph}, each worker compiles some packages
+ * and is passed {@link #DEFER_CHECKER_ERRORS_OPT}. A checker's errors then do not count as errors
+ * of the compilation, which therefore still writes the class files that later workers read, and
+ * the exit status of the worker is non-zero only if the packages could not be compiled. The
+ * checker's errors are still printed as errors by {@link #printMergedDiagnostics}.
+ */
+public class ShardedCompilation {
+
+  /** The annotation processor option that selects a shard: {@code -AcheckerShard=I/N}. */
+  public static final String SHARD_OPTION = "checkerShard";
+
+  /** The annotation processor option that names a SARIF output file: {@code -AsarifOutput=file}. */
+  public static final String SARIF_OUTPUT_OPTION = "sarifOutput";
+
+  /**
+   * The option, passed to {@link #main} before the diagnostics file, that makes the errors that
+   * annotation processors issue after annotation processing, such as those of a checker, not
+   * count as errors of the compilation.
+   */
+  public static final String DEFER_CHECKER_ERRORS_OPT = "-deferCheckerErrors";
+
+  /** The javac diagnostic code of an error issued by an annotation processor. */
+  private static final String PROCESSOR_ERROR_CODE = "compiler.err.proc.messager";
+
+  /** The end of a SARIF file, after the last result, as the Checker Framework writes it. */
+  private static final String SARIF_END = "]}]}";
+
+  /** Do not instantiate. */
+  private ShardedCompilation() {
+    throw new Error("Do not instantiate");
+  }
+
+  /**
+   * Compiles, writing the diagnostics to a file for {@link #printMergedDiagnostics}, and exits with
+   * the exit status of javac. Any other output of javac goes to standard error.
+   *
+   * @param args optionally {@link #DEFER_CHECKER_ERRORS_OPT}, then the file to write the
+   *     diagnostics to, followed by the arguments to javac
+   * @throws IOException if the diagnostics cannot be written
+   */
+  public static void main(String[] args) throws IOException {
+    boolean deferCheckerErrors = args.length != 0 && args[0].equals(DEFER_CHECKER_ERRORS_OPT);
+    int first = deferCheckerErrors ? 1 : 0;
+    if (args.length <= first) {
+      System.err.println(
+          "Usage: java "
+              + ShardedCompilation.class.getName()
+              + " ["
+              + DEFER_CHECKER_ERRORS_OPT
+              + "] diagnostics-file javac-args...");
+      System.exit(JavacArguments.EXIT_CMDERR);
+    }
+    File diagnosticsFile = new File(args[first]);
+    List<String> javacArgs = Arrays.asList(args).subList(first + 1, args.length);
+    int exitStatus;
+    try (DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(diagnosticsFile.toPath())))) {
+      exitStatus = compile(javacArgs, new DiagnosticWriter(out), deferCheckerErrors);
+    }
+    System.exit(exitStatus);
+  }
+
+  /**
+   * Compiles in this process.
+   *
+   * @param args the arguments to javac
+   * @param diagnostics receives the diagnostics
+   * @param deferCheckerErrors if true, the errors that annotation processors issue after annotation
+   *     processing go to {@code diagnostics} without counting as errors of the compilation
+   * @return the exit status of javac
+   */
+  private static int compile(
+      List<String> args, DiagnosticWriter diagnostics, boolean deferCheckerErrors) {
+    PrintWriter output = new PrintWriter(System.err, true);
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    Path privateOutputDirectory = null;
+    try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+      JavacArguments javacArgs;
+      try {
+        javacArgs = JavacArguments.parse(compiler, fileManager, args);
+      } catch (IOException e) {
+        output.println("error: " + e.getMessage());
+        return JavacArguments.EXIT_CMDERR;
+      }
+      if (!isFirstShard(javacArgs)) {
+        // Keep the files that other annotation processors generate from racing with those of the
+        // first worker.
+        privateOutputDirectory = Files.createTempDirectory("checker-shard");
+        Path classDirectory = Files.createDirectory(privateOutputDirectory.resolve("classes"));
+        Path sourceDirectory = Files.createDirectory(privateOutputDirectory.resolve("sources"));
+        javacArgs.setOutputDirectories(classDirectory.toString(), sourceDirectory.toString());
+      }
+      Iterable<? extends JavaFileObject> compilationUnits =
+          fileManager.getJavaFileObjectsFromStrings(javacArgs.files);
+      JavaCompiler.CompilationTask task =
+          compiler.getTask(
+              output,
+              fileManager,
+              diagnostics,
+              javacArgs.getOptionsWithProcessors(),
+              javacArgs.classNames.isEmpty() ? null : javacArgs.classNames,
+              compilationUnits);
+      diagnostics.task = (BasicJavacTask) task;
+      if (deferCheckerErrors) {
+        new CheckerErrorHandler(diagnostics.task, diagnostics);
+      }
+      boolean success = task.call();
+      if (diagnostics.exception != null) {
+        diagnostics.exception.printStackTrace(output);
+        return JavacArguments.EXIT_ABNORMAL;
+      }
+      return success ? 0 : 1;
+    } catch (IllegalArgumentException e) {
+      output.println("error: " + e.getMessage());
+      return JavacArguments.EXIT_CMDERR;
+    } catch (IOException | RuntimeException e) {
+      e.printStackTrace(output);
+      return JavacArguments.EXIT_ABNORMAL;
+    } finally {
+      if (privateOutputDirectory != null) {
+        try {
+          SystemUtil.deleteRecursively(privateOutputDirectory);
+        } catch (IOException e) {
+          // Leave it for the operating system to clean up.
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns true if the compilation is not a worker of a sharded compilation, or is its first
+   * worker.
+   *
+   * @param javacArgs the arguments of a compilation
+   * @return true unless the compilation is a worker other than the first
+   */
+  private static boolean isFirstShard(JavacArguments javacArgs) {
+    String shard = javacArgs.getProcessorOption(SHARD_OPTION);
+    return shard == null || shard.startsWith("0/");
+  }
+
+  /**
+   * Prints the diagnostics that the workers wrote, sorted by file and position and without
+   * duplicates, followed by the number of errors and warnings, as javac would.
+   *
+   * @param diagnosticsFiles the files written by the workers
+   * @param output where to print the diagnostics
+   * @return the exit status that javac would have for the diagnostics: 0 if there are no errors, 1
+   *     if there are, or 4 if a file could not be read
+   */
+  public static int printMergedDiagnostics(List<File> diagnosticsFiles, PrintStream output) {
+    boolean complete = true;
+    TreeSet<SourcedDiagnostic> merged = new TreeSet<>();
+    for (File file : diagnosticsFiles) {
+      try (DataInputStream in =
+          new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+        while (true) {
+          SourcedDiagnostic diagnostic;
+          try {
+            diagnostic = SourcedDiagnostic.read(in);
+          } catch (EOFException e) {
+            break;
+          }
+          merged.add(diagnostic);
+        }
+      } catch (IOException e) {
+        output.println("error: cannot read diagnostics from " + file + ": " + e.getMessage());
+        complete = false;
+      }
+    }
+
+    int errors = 0;
+    int warnings = 0;
+    for (SourcedDiagnostic diagnostic : merged) {
+      output.println(diagnostic.text);
+      if (diagnostic.kind == Diagnostic.Kind.ERROR) {
+        errors++;
+      } else if (diagnostic.kind == Diagnostic.Kind.WARNING
+          || diagnostic.kind == Diagnostic.Kind.MANDATORY_WARNING) {
+        warnings++;
+      }
+    }
+    if (errors != 0) {
+      output.println(errors + (errors == 1 ? " error" : " errors"));
+    }
+    if (warnings != 0) {
+      output.println(warnings + (warnings == 1 ? " warning" : " warnings"));
+    }
+    output.flush();
+    return !complete ? JavacArguments.EXIT_ABNORMAL : errors != 0 ? 1 : 0;
+  }
+
+  /**
+   * Writes the results of the SARIF files that the workers wrote to one SARIF file, sorted and
+   * without duplicates. The files must have been written by the Checker Framework, which writes
+   * the beginning of the document on the first line and each result on a line of its own. A file
+   * that a worker did not finish, because it crashed, contributes the results that it contains.
+   *
+   * @param sarifFiles the files written by the workers
+   * @param output the file to write
+   * @param errors where to print errors
+   * @return true if all files could be read and {@code output} could be written
+   */
+  public static boolean mergeSarifFiles(List<File> sarifFiles, File output, PrintStream errors) {
+    boolean complete = true;
+    String header = null;
+    TreeSet<String> results = new TreeSet<>();
+    for (File file : sarifFiles) {
+      List<String> lines;
+      try {
+        lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        errors.println("error: cannot read " + file + ": " + e.getMessage());
+        complete = false;
+        continue;
+      }
+      if (lines.isEmpty()) {
+        // The worker stopped before its checker started.
+        continue;
+      }
+      if (header == null) {
+        header = lines.get(0);
+      }
+      for (String line : lines.subList(1, lines.size())) {
+        if (line.endsWith(",")) {
+          line = line.substring(0, line.length() - 1);
+        }
+        if (line.startsWith("{") && line.endsWith("}")) {
+          results.add(line);
+        }
+      }
+    }
+    if (header == null) {
+      return complete;
+    }
+    try (Writer out = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+      out.write(header);
+      String separator = "\n";
+      for (String result : results) {
+        out.write(separator);
+        out.write(result);
+        separator = ",\n";
+      }
+      out.write("\n" + SARIF_END + "\n");
+    } catch (IOException e) {
+      errors.println("error: cannot write " + output + ": " + e.getMessage());
+      return false;
+    }
+    return complete;
+  }
+
+  /** Writes each diagnostic, formatted as javac would print it, to a stream. */
+  private static class DiagnosticWriter implements DiagnosticListener<JavaFileObject> {
+
+    /** The stream to write to. */
+    private final DataOutputStream out;
+
+    /** The compilation whose diagnostics are written; set before the compilation starts. */
+    @MonotonicNonNull BasicJavacTask task;
+
+    /** The first exception thrown when writing a diagnostic, or null if there was none. */
+    @Nullable IOException exception = null;
+
+    /**
+     * Creates a DiagnosticWriter.
+     *
+     * @param out the stream to write to
+     */
+    DiagnosticWriter(DataOutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+      JCDiagnostic jcDiagnostic =
+          diagnostic instanceof ClientCodeWrapper.DiagnosticSourceUnwrapper
+              ? ((ClientCodeWrapper.DiagnosticSourceUnwrapper) diagnostic).d
+              : diagnostic instanceof JCDiagnostic ? (JCDiagnostic) diagnostic : null;
+      String text;
+      if (jcDiagnostic != null && task != null) {
+        // Format the diagnostic exactly as javac would print it, with the source line.
+        Log log = Log.instance(task.getContext());
+        text = log.getDiagnosticFormatter().format(jcDiagnostic, Locale.getDefault());
+      } else {
+        text = diagnostic.toString();
+      }
+      JavaFileObject source = diagnostic.getSource();
+      SourcedDiagnostic sourced =
+          new SourcedDiagnostic(
+              source == null ? "" : source.toUri().toString(),
+              diagnostic.getPosition(),
+              diagnostic.getKind(),
+              text);
+      try {
+        sourced.write(out);
+      } catch (IOException e) {
+        if (exception == null) {
+          exception = e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Passes the errors that annotation processors issue after annotation processing, such as those
+   * of a checker, to a {@link DiagnosticWriter} instead of to javac's log, so that they do not
+   * count as errors of the compilation. javac still writes class files if there are no other
+   * errors. Other diagnostics go to the log as usual.
+   */
+  private static class CheckerErrorHandler extends Log.DiagnosticHandler {
+
+    /** Receives the errors that do not go to the log. */
+    private final DiagnosticWriter diagnostics;
+
+    /** True once annotation processing has finished. */
+    private boolean afterAnnotationProcessing = false;
+
+    /**
+     * Creates a CheckerErrorHandler and installs it in the log of the given compilation.
+     *
+     * @param task the compilation
+     * @param diagnostics receives the errors that do not go to the log
+     */
+    @SuppressWarnings("this-escape") // install only stores this in the log
+    CheckerErrorHandler(BasicJavacTask task, DiagnosticWriter diagnostics) {
+      this.diagnostics = diagnostics;
+      // Errors that a processor issues during annotation processing end the compilation anyway.
+      task.addTaskListener(
+          new TaskListener() {
+            @Override
+            public void finished(TaskEvent e) {
+              if (e.getKind() == TaskEvent.Kind.ANNOTATION_PROCESSING) {
+                afterAnnotationProcessing = true;
+              }
+            }
+          });
+      install(Log.instance(task.getContext()));
+    }
+
+    @Override
+    public void report(JCDiagnostic diagnostic) {
+      if (afterAnnotationProcessing
+          && diagnostic.getKind() == Diagnostic.Kind.ERROR
+          && diagnostic.getCode().equals(PROCESSOR_ERROR_CODE)) {
+        diagnostics.report(diagnostic);
+      } else {
+        prev.report(diagnostic);
+      }
+    }
+  }
+
+  /**
+   * A formatted diagnostic and the location that it is sorted by. Diagnostics that are not about a
+   * source file come first.
+   */
+  private static class SourcedDiagnostic implements Comparable<SourcedDiagnostic> {
+
+    /** The URI of the source file, or the empty string if there is none. */
+    final String source;
+
+    /** The position in the source file, or {@link Diagnostic#NOPOS}. */
+    final long position;
+
+    /** The kind of the diagnostic. */
+    final Diagnostic.Kind kind;
+
+    /** The diagnostic, formatted as javac would print it. */
+    final String text;
+
+    /**
+     * Creates a SourcedDiagnostic.
+     *
+     * @param source the URI of the source file, or the empty string if there is none
+     * @param position the position in the source file, or {@link Diagnostic#NOPOS}
+     * @param kind the kind of the diagnostic
+     * @param text the diagnostic, formatted as javac would print it
+     */
+    SourcedDiagnostic(String source, long position, Diagnostic.Kind kind, String text) {
+      this.source = source;
+      this.position = position;
+      this.kind = kind;
+      this.text = text;
+    }
+
+    /**
+     * Writes this diagnostic to a stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    void write(DataOutputStream out) throws IOException {
+      CheckerDaemon.writeString(out, source);
+      out.writeLong(position);
+      CheckerDaemon.writeString(out, kind.name());
+      CheckerDaemon.writeString(out, text);
+    }
+
+    /**
+     * Reads a diagnostic written by {@link #write}.
+     *
+     * @param in the stream to read from
+     * @return the diagnostic
+     * @throws EOFException if the stream contains no more diagnostics
+     * @throws IOException if reading fails
+     */
+    static SourcedDiagnostic read(DataInputStream in) throws IOException {
+      String source = CheckerDaemon.readString(in);
+      long position = in.readLong();
+      Diagnostic.Kind kind;
+      try {
+        kind = Diagnostic.Kind.valueOf(CheckerDaemon.readString(in));
+      } catch (IllegalArgumentException e) {
+        throw new IOException("bad diagnostic kind", e);
+      }
+      String text = CheckerDaemon.readString(in);
+      return new SourcedDiagnostic(source, position, kind, text);
+    }
+
+    @Override
+    public int compareTo(SourcedDiagnostic other) {
+      int result = source.compareTo(other.source);
+      if (result != 0) {
+        return result;
+      }
+      result = Long.compare(position, other.position);
+      if (result != 0) {
+        return result;
+      }
+      result = kind.compareTo(other.kind);
+      if (result != 0) {
+        return result;
+      }
+      return text.compareTo(other.text);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (!(obj instanceof SourcedDiagnostic)) {
+        return false;
+      }
+      SourcedDiagnostic other = (SourcedDiagnostic) obj;
+      return position == other.position
+          && kind == other.kind
+          && source.equals(other.source)
+          && text.equals(other.text);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(source, position, kind, text);
+    }
+  }
+}
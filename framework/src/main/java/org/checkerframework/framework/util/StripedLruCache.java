@@ -0,0 +1,138 @@
+package org.checkerframework.framework.util;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.plumelib.util.MapsP;
+
+/**
+ * A thread-safe LRU cache. It is a drop-in replacement for a map created by {@link
+ * MapsP#createLruCache} that may be used from several threads at once.
+ *
+ * <p>The cache is divided into segments, each of which is an LRU cache for the keys whose hash
+ * codes select it, and is guarded by its own lock. Threads that use different segments do not
+ * contend. The least-recently-used entry of a segment is evicted when the segment is full, so the
+ * eviction order is LRU per segment rather than for the whole cache.
+ *
+ * <p>Operations that span segments, such as {@link #size} and iteration, are not atomic: iteration
+ * is over a snapshot of each segment in turn.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class StripedLruCache<K, V> extends AbstractMap<K, V> {
+
+  /** The default number of segments. Must be a power of two. */
+  private static final int DEFAULT_SEGMENTS = 16;
+
+  /** The segments; the size is a power of two. Each segment is guarded by itself. */
+  private final List<Map<K, V>> segments;
+
+  /**
+   * Creates a cache that holds about {@code size} entries.
+   *
+   * @param size the capacity of the cache
+   */
+  public StripedLruCache(int size) {
+    // Small caches get fewer segments, so that each segment still holds several entries.
+    int numSegments = DEFAULT_SEGMENTS;
+    while (numSegments > 1 && size / numSegments < 16) {
+      numSegments /= 2;
+    }
+    int segmentSize = (size + numSegments - 1) / numSegments;
+    segments = new ArrayList<>(numSegments);
+    for (int i = 0; i < numSegments; i++) {
+      segments.add(MapsP.createLruCache(segmentSize));
+    }
+  }
+
+  /**
+   * Returns the segment that holds the given key.
+   *
+   * @param key a key
+   * @return the segment for {@code key}
+   */
+  private Map<K, V> segmentFor(@Nullable Object key) {
+    int h = Objects.hashCode(key);
+    // Spread the high bits, because the segment index is taken from the low bits.
+    h ^= h >>> 16;
+    return segments.get(h & (segments.size() - 1));
+  }
+
+  @Override
+  public @Nullable V get(@Nullable Object key) {
+    Map<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.get(key);
+    }
+  }
+
+  @Override
+  public boolean containsKey(@Nullable Object key) {
+    Map<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.containsKey(key);
+    }
+  }
+
+  @Override
+  public @Nullable V put(K key, V value) {
+    Map<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.put(key, value);
+    }
+  }
+
+  @Override
+  public @Nullable V remove(@Nullable Object key) {
+    Map<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.remove(key);
+    }
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (Map<K, V> segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    for (Map<K, V> segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  /**
+   * Returns a snapshot of the entries. Changes to the cache are not reflected in the result, and
+   * the result is unmodifiable.
+   *
+   * @return a snapshot of the entries of this cache
+   */
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    Set<Map.Entry<K, V>> result = new LinkedHashSet<>();
+    for (Map<K, V> segment : segments) {
+      synchronized (segment) {
+        for (Map.Entry<K, V> entry : segment.entrySet()) {
+          result.add(new SimpleImmutableEntry<>(entry));
+        }
+      }
+    }
+    return Collections.unmodifiableSet(result);
+  }
+}
@@ -0,0 +1,242 @@
+package org.checkerframework.framework.util;
+
+import com.sun.source.tree.MethodTree;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.framework.source.SourceChecker;
+import org.checkerframework.javacutil.UserError;
+
+/**
+ * The time budgets given by {@code -AmethodTimeBudgetSeconds} and {@code -AclassTimeBudgetSeconds},
+ * which bound the time that a type factory and its visitor may spend on one method or on one
+ * top-level class.
+ *
+ * <p>The budget of a top-level class covers its dataflow analysis and its type-checking, including
+ * those of its nested classes. Each method gets one budget for its dataflow analysis and another
+ * for its type-checking; a method, lambda, or class nested in a method shares the budget of the
+ * outermost method.
+ *
+ * <p>Long-running loops, such as the dataflow fixpoint iteration and type argument inference, call
+ * {@link #check}, which throws an {@link ExceededException} once the current budget is used up. The
+ * code that started the budget catches the exception, possibly wrapped by a {@link
+ * org.checkerframework.javacutil.BugInCF}, and gives up on the method or class: the dataflow
+ * results of an abandoned method are discarded, and the method is then not type-checked, because
+ * without them its expressions have only their declared types, which would lead to false
+ * positives.
+ */
+public class TimeBudget {
+
+  /** The budget for each top-level class, in nanoseconds, or 0 if there is none. */
+  private final long classBudgetNanos;
+
+  /** The budget for each method, in nanoseconds, or 0 if there is none. */
+  private final long methodBudgetNanos;
+
+  /** The number of classes that are being checked; they are nested in one another. */
+  private int classDepth = 0;
+
+  /** True if {@link #classDeadline} applies. */
+  private boolean inClassBudget = false;
+
+  /** The time, as given by {@link System#nanoTime}, when the current class budget is used up. */
+  private long classDeadline;
+
+  /** True if {@link #methodDeadline} applies. */
+  private boolean inMethodBudget = false;
+
+  /** The time, as given by {@link System#nanoTime}, when the current method budget is used up. */
+  private long methodDeadline;
+
+  /** The methods of the current top-level class whose dataflow analysis was abandoned. */
+  private final Set<MethodTree> abandonedMethods =
+      Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /**
+   * Creates the time budgets given by the options of a checker.
+   *
+   * @param checker the checker
+   */
+  public TimeBudget(SourceChecker checker) {
+    this.classBudgetNanos = parseSeconds(checker, "classTimeBudgetSeconds");
+    this.methodBudgetNanos = parseSeconds(checker, "methodTimeBudgetSeconds");
+  }
+
+  /**
+   * Returns the value of an option that gives a number of seconds, in nanoseconds.
+   *
+   * @param checker the checker
+   * @param option the name of the option
+   * @return the value of the option in nanoseconds, or 0 if the option was not passed
+   */
+  private static long parseSeconds(SourceChecker checker, String option) {
+    String value = checker.getOption(option);
+    if (value == null) {
+      return 0;
+    }
+    long seconds;
+    try {
+      seconds = Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      seconds = 0;
+    }
+    if (seconds <= 0) {
+      throw new UserError(
+          "The argument to -A%s must be a positive number of seconds, but it is: %s",
+          option, value);
+    }
+    return TimeUnit.SECONDS.toNanos(seconds);
+  }
+
+  /**
+   * Returns the budget for each top-level class, in seconds.
+   *
+   * @return the budget for each top-level class, in seconds, or 0 if there is none
+   */
+  public long getClassBudgetSeconds() {
+    return TimeUnit.NANOSECONDS.toSeconds(classBudgetNanos);
+  }
+
+  /**
+   * Returns the budget for each method, in seconds.
+   *
+   * @return the budget for each method, in seconds, or 0 if there is none
+   */
+  public long getMethodBudgetSeconds() {
+    return TimeUnit.NANOSECONDS.toSeconds(methodBudgetNanos);
+  }
+
+  /**
+   * Notes that type-checking of a class begins. If the class is a top-level class, starts its
+   * budget. Every call must be matched by a call to {@link #endClass}.
+   *
+   * @return true if this call started a budget, so that the caller should handle an {@link
+   *     ExceededException} for the class
+   */
+  public boolean startClass() {
+    classDepth++;
+    if (classDepth != 1 || classBudgetNanos == 0) {
+      return false;
+    }
+    inClassBudget = true;
+    classDeadline = System.nanoTime() + classBudgetNanos;
+    return true;
+  }
+
+  /** Notes that type-checking of a class, started by {@link #startClass}, is over. */
+  public void endClass() {
+    classDepth--;
+    if (classDepth == 0) {
+      inClassBudget = false;
+      abandonedMethods.clear();
+    }
+  }
+
+  /**
+   * Starts the budget of a method, unless the method is nested in a method whose budget has already
+   * started. If this returns true, the caller must call {@link #endMethod}.
+   *
+   * @return true if this call started a budget, so that the caller should handle an {@link
+   *     ExceededException} for the method
+   */
+  public boolean startMethod() {
+    if (inMethodBudget || methodBudgetNanos == 0) {
+      return false;
+    }
+    inMethodBudget = true;
+    methodDeadline = System.nanoTime() + methodBudgetNanos;
+    return true;
+  }
+
+  /** Ends the budget of a method, started by {@link #startMethod}. */
+  public void endMethod() {
+    inMethodBudget = false;
+  }
+
+  /**
+   * Notes that the dataflow analysis of a method was abandoned because it used up its budget.
+   *
+   * @param method the method
+   */
+  public void abandon(MethodTree method) {
+    abandonedMethods.add(method);
+  }
+
+  /**
+   * Returns true if the dataflow analysis of a method was abandoned because it used up its budget.
+   *
+   * @param method a method of the current top-level class
+   * @return true if the dataflow analysis of {@code method} was abandoned
+   */
+  public boolean isAbandoned(MethodTree method) {
+    return !abandonedMethods.isEmpty() && abandonedMethods.contains(method);
+  }
+
+  /**
+   * Throws an exception if the current budget of a method or of a top-level class is used up.
+   *
+   * @throws ExceededException if the current budget is used up
+   */
+  public void check() {
+    if (!inClassBudget && !inMethodBudget) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (inClassBudget && now - classDeadline > 0) {
+      throw new ExceededException(true);
+    }
+    if (inMethodBudget && now - methodDeadline > 0) {
+      throw new ExceededException(false);
+    }
+  }
+
+  /**
+   * Returns the {@link ExceededException} that {@code t} is or that caused {@code t}, if any. Code
+   * that wraps every exception in a {@link org.checkerframework.javacutil.BugInCF} may have wrapped
+   * it.
+   *
+   * @param t a throwable
+   * @return the {@link ExceededException} in the causal chain of {@code t}, or null if there is
+   *     none
+   */
+  public static @Nullable ExceededException getExceeded(Throwable t) {
+    for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ExceededException) {
+        return (ExceededException) cause;
+      }
+    }
+    return null;
+  }
+
+  /** Thrown by {@link #check} when a budget is used up. */
+  public static class ExceededException extends RuntimeException {
+
+    /** serialVersionUID */
+    private static final long serialVersionUID = 1;
+
+    /** True if the budget of a top-level class, rather than of a method, is used up. */
+    private final boolean classBudget;
+
+    /**
+     * Creates an ExceededException.
+     *
+     * @param classBudget true if the budget of a top-level class, rather than of a method, is used
+     *     up
+     */
+    ExceededException(boolean classBudget) {
+      super(classBudget ? "class time budget exceeded" : "method time budget exceeded");
+      this.classBudget = classBudget;
+    }
+
+    /**
+     * Returns true if the budget of a top-level class, rather than of a method, is used up.
+     *
+     * @return true if the budget of a top-level class is used up
+     */
+    public boolean isClassBudget() {
+      return classBudget;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package org.checkerframework.framework.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The package and the top-level types that a Java source file, such as an ajava file, declares.
+ * {@link #scan} finds them much more cheaply than parsing the file: it only skips comments,
+ * literals, and everything within braces or parentheses, and looks at the words that remain.
+ */
+public class TopLevelDeclarations {
+
+  /** The name of the package of the file, or the empty string for the unnamed package. */
+  public final String packageName;
+
+  /**
+   * The simple names of the top-level types that the file declares, in order, or null if the file
+   * is not well-formed enough to tell.
+   */
+  public final @Nullable List<String> typeNames;
+
+  /**
+   * Creates a TopLevelDeclarations.
+   *
+   * @param packageName the name of the package of the file, or the empty string
+   * @param typeNames the simple names of the top-level types of the file, or null
+   */
+  private TopLevelDeclarations(String packageName, @Nullable List<String> typeNames) {
+    this.packageName = packageName;
+    this.typeNames = typeNames == null ? null : Collections.unmodifiableList(typeNames);
+  }
+
+  /**
+   * Finds the package and the top-level types that the given Java source code declares. The
+   * package is the sequence of words and periods after the {@code package} keyword. A type is the
+   * identifier that follows {@code class}, {@code interface}, {@code enum}, or {@code record}
+   * outside of braces and parentheses.
+   *
+   * <p>The package is found even if the rest of the file is not well-formed, as long as the
+   * package declaration itself is.
+   *
+   * @param source the contents of a Java source file
+   * @return the package and the top-level types declared in {@code source}
+   */
+  public static TopLevelDeclarations scan(String source) {
+    Lexer lexer = new Lexer(source);
+    String packageName = "";
+    List<String> typeNames = new ArrayList<>();
+    int braceDepth = 0;
+    int parenDepth = 0;
+    // True if the previous token was a type declaration keyword.
+    boolean expectName = false;
+    // True if the previous token was ".", so that an identifier is not a keyword.
+    boolean afterDot = false;
+    // True until the first type declaration, after which there can be no package declaration.
+    boolean beforeTypes = true;
+    String token;
+    while ((token = lexer.next()) != null) {
+      if (Lexer.isWord(token)) {
+        if (braceDepth == 0 && parenDepth == 0) {
+          if (expectName) {
+            typeNames.add(token);
+            expectName = false;
+          } else if (token.equals("package") && beforeTypes && !afterDot) {
+            StringBuilder name = new StringBuilder();
+            while ((token = lexer.next()) != null && !token.equals(";")) {
+              name.append(token);
+            }
+            if (token == null) {
+              return new TopLevelDeclarations("", null);
+            }
+            packageName = name.toString();
+          } else {
+            expectName =
+                !afterDot
+                    && (token.equals("class")
+                        || token.equals("interface")
+                        || token.equals("enum")
+                        || token.equals("record"));
+            beforeTypes &= !expectName;
+          }
+        }
+        afterDot = false;
+      } else {
+        if (token.equals("{")) {
+          braceDepth++;
+        } else if (token.equals("}")) {
+          braceDepth--;
+        } else if (token.equals("(")) {
+          parenDepth++;
+        } else if (token.equals(")")) {
+          parenDepth--;
+        }
+        if (braceDepth < 0 || parenDepth < 0) {
+          return new TopLevelDeclarations(packageName, null);
+        }
+        expectName = false;
+        afterDot = token.equals(".");
+      }
+    }
+    boolean wellFormed = !lexer.isMalformed() && braceDepth == 0 && parenDepth == 0;
+    return new TopLevelDeclarations(packageName, wellFormed ? typeNames : null);
+  }
+
+  /**
+   * Splits Java source code into tokens, skipping white space and comments. A token is an
+   * identifier or keyword, a string, text block, or character literal, or a single other character.
+   * This is not a complete Java lexer: for example, a number is several tokens.
+   */
+  private static class Lexer {
+
+    /** The Java source code. */
+    private final String source;
+
+    /** The index in {@link #source} at which the next token starts. */
+    private int position = 0;
+
+    /** True if the source code ended within a comment or a literal. */
+    private boolean malformed = false;
+
+    /**
+     * Creates a Lexer.
+     *
+     * @param source Java source code
+     */
+    Lexer(String source) {
+      this.source = source;
+    }
+
+    /**
+     * Returns true if the given token is an identifier or keyword.
+     *
+     * @param token a token returned by {@link #next}
+     * @return true if {@code token} is an identifier or keyword
+     */
+    static boolean isWord(String token) {
+      return Character.isJavaIdentifierStart(token.charAt(0));
+    }
+
+    /**
+     * Returns true if the source code ended within a comment or a literal. After that, {@link
+     * #next} returns null.
+     *
+     * @return true if the source code ended within a comment or a literal
+     */
+    boolean isMalformed() {
+      return malformed;
+    }
+
+    /**
+     * Returns the next token.
+     *
+     * @return the next token, or null if there are no more tokens
+     */
+    @Nullable String next() {
+      int length = source.length();
+      int i = position;
+      while (i < length) {
+        char c = source.charAt(i);
+        if (Character.isWhitespace(c)) {
+          i++;
+        } else if (source.startsWith("//", i)) {
+          int eol = source.indexOf('\n', i);
+          i = (eol == -1) ? length : eol + 1;
+        } else if (source.startsWith("/*", i)) {
+          int end = source.indexOf("*/", i + 2);
+          if (end == -1) {
+            malformed = true;
+            i = length;
+          } else {
+            i = end + 2;
+          }
+        } else {
+          break;
+        }
+      }
+      if (i >= length) {
+        position = length;
+        return null;
+      }
+      int start = i;
+      char c = source.charAt(i);
+      if (Character.isJavaIdentifierStart(c)) {
+        do {
+          i++;
+        } while (i < length && Character.isJavaIdentifierPart(source.charAt(i)));
+      } else if (c == '"' || c == '\'') {
+        i = skipLiteral(start);
+        if (i == -1) {
+          malformed = true;
+          position = length;
+          return null;
+        }
+      } else {
+        i++;
+      }
+      position = i;
+      return source.substring(start, i);
+    }
+
+    /**
+     * Returns the index just after the string, text block, or character literal that starts at
+     * {@code start}.
+     *
+     * @param start the index of the opening quote of a literal in {@link #source}
+     * @return the index after the closing quote of the literal, or -1 if it is not closed
+     */
+    private int skipLiteral(int start) {
+      boolean textBlock = source.startsWith("\"\"\"", start);
+      char quote = source.charAt(start);
+      int i = textBlock ? start + 3 : start + 1;
+      while (i < source.length()) {
+        char c = source.charAt(i);
+        if (c == '\\') {
+          i += 2;
+        } else if (textBlock ? source.startsWith("\"\"\"", i) : c == quote) {
+          return textBlock ? i + 3 : i + 1;
+        } else if (c == '\n' && !textBlock) {
+          return -1;
+        } else {
+          i++;
+        }
+      }
+      return -1;
+    }
+  }
+}
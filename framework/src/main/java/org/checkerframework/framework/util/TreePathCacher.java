@@ -2,11 +2,18 @@ package org.checkerframework.framework.util;
 
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeParameterTree;
+import com.sun.source.tree.VariableTree;
 import com.sun.source.util.TreePath;
 import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import javax.lang.model.element.Element;
 import org.checkerframework.checker.interning.qual.FindDistinct;
+import org.checkerframework.checker.interning.qual.InternedDistinct;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
@@ -15,11 +22,30 @@ import org.checkerframework.checker.nullness.qual.Nullable;
  * <p>This class replicates some logic from TreePath.getPath but also adds caching to all
  * intermediate TreePaths that are generated. The intermediate TreePaths are reused when other
  * targets have overlapping paths.
+ *
+ * <p>The first time a tree that is not cached is looked up in a compilation unit, the whole
+ * compilation unit is indexed in a single scan: the TreePath of every tree and the declaration of
+ * every variable and type parameter are recorded. Later lookups in the same compilation unit do not
+ * rescan it.
+ *
+ * <p>A TreePathCacher may only be used from one thread at a time; {@link Synchronized} is a variant
+ * that may be used from several threads at once.
  */
 public class TreePathCacher extends TreeScanner<TreePath, Tree> {
 
   private final Map<Tree, @Nullable TreePath> foundPaths = new HashMap<>(32);
 
+  /**
+   * The declarations of the variables and type parameters in {@link #indexedRoot}. Other
+   * declarations are found directly by {@link com.sun.source.util.Trees#getTree(Element)}.
+   */
+  private final Map<Element, Tree> declarations = new IdentityHashMap<>();
+
+  /**
+   * The compilation unit that has been indexed, or null if none has been indexed since clearing.
+   */
+  private @Nullable @InternedDistinct CompilationUnitTree indexedRoot;
+
   /**
    * The TreePath of the previous tree scanned. It is always set back to null after a scan has
    * completed.
@@ -55,9 +81,6 @@ public class TreePathCacher extends TreeScanner<TreePath, Tree> {
    *     root
    */
   public @Nullable TreePath getPath(CompilationUnitTree root, @FindDistinct Tree target) {
-    // This method uses try/catch and the private {@code Result} exception for control flow to
-    // stop the superclass from scanning other subtrees when target is found.
-
     if (foundPaths.containsKey(target)) {
       return foundPaths.get(target);
     }
@@ -67,43 +90,54 @@ public class TreePathCacher extends TreeScanner<TreePath, Tree> {
       return path;
     }
 
-    try {
-      this.scan(path, target);
-    } catch (Result result) {
-      return result.path;
+    if (indexedRoot != root) {
+      index(root);
+      if (foundPaths.containsKey(target)) {
+        return foundPaths.get(target);
+      }
     }
-    // If a path wasn't found, cache null so the whole compilation unit isn't searched again.
+    // The whole compilation unit has been indexed, so target is not in it. Cache null so the
+    // index is not consulted again.
     foundPaths.put(target, null);
     return null;
   }
 
-  /** The result of {@link #getPath}. This exception is used for control flow. */
-  private static class Result extends Error {
-    /** Unique identifier for serialization. */
-    private static final long serialVersionUID = 4948452207518392627L;
-
-    /** The result of {@link #getPath}. */
-    @SuppressWarnings("serial") // I do not intend to serialize Result objects
-    private final TreePath path;
-
-    /**
-     * Create a {@link #getPath} result.
-     *
-     * @param path the result of {@link #getPath}
-     */
-    Result(TreePath path) {
-      this.path = path;
+  /**
+   * Returns the declaration of a variable or type parameter in the given compilation unit.
+   *
+   * @param root the compilation unit to search in
+   * @param elt a variable or type parameter
+   * @return the declaration of {@code elt}, or null if it is not declared in {@code root}
+   */
+  public @Nullable Tree getDeclaration(CompilationUnitTree root, Element elt) {
+    if (indexedRoot != root) {
+      index(root);
     }
+    return declarations.get(elt);
+  }
+
+  /**
+   * Records the TreePath of every tree in {@code root}, and the declaration of every variable and
+   * type parameter in it.
+   *
+   * @param root the compilation unit to index
+   */
+  @SuppressWarnings("interning:assignment") // used in == tests
+  private void index(CompilationUnitTree root) {
+    declarations.clear();
+    indexedRoot = root;
+    this.scan(new TreePath(root), null);
   }
 
   public void clear() {
     foundPaths.clear();
+    declarations.clear();
+    indexedRoot = null;
   }
 
   /** Scan a single node. The current path is updated for the duration of the scan. */
-  @SuppressWarnings("interning:not.interned") // assertion
   @Override
-  public TreePath scan(Tree tree, Tree target) {
+  public TreePath scan(Tree tree, @Nullable Tree target) {
     TreePath prev = path;
     if (tree != null) {
       TreePath foundPath = foundPaths.get(tree);
@@ -112,15 +146,51 @@ public class TreePathCacher extends TreeScanner<TreePath, Tree> {
         foundPaths.put(tree, foundPath);
       }
       this.path = foundPath;
+      if (tree instanceof VariableTree || tree instanceof TypeParameterTree) {
+        Element elt = TreeInfo.symbolFor((JCTree) tree);
+        if (elt != null) {
+          declarations.put(elt, tree);
+        }
+      }
     }
 
-    if (tree == target) {
-      throw new Result(path);
-    }
     try {
       return super.scan(tree, target);
     } finally {
       this.path = prev;
     }
   }
+
+  /** A TreePathCacher whose methods are synchronized, so that several threads may use it. */
+  public static class Synchronized extends TreePathCacher {
+
+    /** Creates a new synchronized TreePathCacher. */
+    public Synchronized() {}
+
+    @Override
+    public synchronized boolean isCached(Tree target) {
+      return super.isCached(target);
+    }
+
+    @Override
+    public synchronized void addPath(Tree target, TreePath path) {
+      super.addPath(target, path);
+    }
+
+    @Override
+    public synchronized @Nullable TreePath getPath(
+        CompilationUnitTree root, @FindDistinct Tree target) {
+      return super.getPath(root, target);
+    }
+
+    @Override
+    public synchronized @Nullable Tree getDeclaration(CompilationUnitTree root, Element elt) {
+      return super.getDeclaration(root, elt);
+    }
+
+    @Override
+    public synchronized void clear() {
+      super.clear();
+    }
+  }
 }
@@ -0,0 +1,786 @@
+package org.checkerframework.framework.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.javacutil.SystemUtil;
+import org.checkerframework.javacutil.UserError;
+
+/**
+ * Runs whole-program inference on each of a list of projects, several projects at a time, and
+ * summarizes the results. It does what {@code checker/bin/wpi-many.sh} followed by {@code
+ * checker/bin/wpi-summary.sh} do, and takes the same command-line arguments as {@code
+ * wpi-many.sh}, plus:
+ *
+ * <dl>
+ *   <dt>{@code -j N}
+ *   <dd>Run WPI on at most N projects at a time. The default is the number of processors, reduced
+ *       so that each project gets the memory given by {@code -m}.
+ *   <dt>{@code -m GB}
+ *   <dd>The memory, in gigabytes, that WPI on one project needs, including the build tool and the
+ *       compiler; the default is 4. It only limits the default of {@code -j}.
+ *   <dt>{@code -T seconds}
+ *   <dd>Stop the processing of a project that takes longer than this, including all the processes
+ *       that it started. Unlike {@code -t}, which bounds each run of the checker, this bounds all
+ *       the iterations of WPI on a project. Requires the {@code timeout} command.
+ *   <dt>{@code -w file}
+ *   <dd>The {@code wpi.sh} script to run. The default is {@code
+ *       $CHECKERFRAMEWORK/checker/bin/wpi.sh}.
+ * </dl>
+ *
+ * <p>The iterations of WPI on one project depend on one another, so they run in order, in one run
+ * of {@code wpi.sh}. Different projects are independent. Each project has its own working
+ * directory and log files, and the failure of one project does not stop the others. Before any
+ * project is processed, WpiMany downloads dljc and builds the Checker Framework if needed, as
+ * {@code wpi.sh} would, and passes dljc to each run of {@code wpi.sh} in the {@code DLJC}
+ * environment variable; otherwise, the concurrent runs of {@code wpi.sh} would all start the same
+ * Gradle build.
+ *
+ * <p>Each worker thread mostly waits for the processes that it starts, so the number of threads is
+ * the number of projects that are processed at once.
+ */
+public class WpiMany {
+
+  /** The exit status for an invalid command line or if no results are available. */
+  private static final int EXIT_FAILURE = 1;
+
+  /** The exit status if WPI could not be run on some project because of an infrastructure error. */
+  private static final int EXIT_PROJECT_FAILURE = 5;
+
+  /** The exit status of the {@code timeout} command when the command timed out. */
+  private static final int TIMEOUT_STATUS = 124;
+
+  /** How long {@code timeout} waits after sending SIGTERM before it sends SIGKILL. */
+  private static final String TIMEOUT_KILL_AFTER = "60s";
+
+  /** The message in a WPI log for a project that has no build file. */
+  private static final String NO_BUILD_FILE = "no build file found for";
+
+  /** The message in a WPI log for a project whose build failed, as older versions of dljc wrote. */
+  private static final String BUILD_FAILED_OLD = "dljc could not run the Checker Framework";
+
+  /** The message in a WPI log for a project whose build failed. */
+  private static final String BUILD_FAILED = "dljc could not run the build successfully";
+
+  /** The message in a WPI log for a project on which a run of the checker timed out. */
+  private static final String DLJC_TIMED_OUT = "dljc timed out for";
+
+  /** The message written to a project's log if {@code -T} stopped the processing of the project. */
+  private static final String TASK_TIMED_OUT = "wpi-many task timed out for";
+
+  /** The messages in a WPI log that indicate that WPI could not produce results. */
+  private static final List<String> NO_RESULTS_MESSAGES =
+      Arrays.asList(NO_BUILD_FILE, BUILD_FAILED_OLD, BUILD_FAILED, DLJC_TIMED_OUT, TASK_TIMED_OUT);
+
+  /** The directory in which the projects are cloned and WPI is run. */
+  private final File outDir;
+
+  /** The directory that holds the logs and results: {@link #outDir} with "-results" appended. */
+  private final File resultsDir;
+
+  /** The file that lists the repositories and commits to run WPI on. */
+  private final File inList;
+
+  /** The value of {@code -t}, or null if it was not given. */
+  private final @Nullable String timeout;
+
+  /** The value of {@code -g}. */
+  private final String gradleCacheDir;
+
+  /** True if {@code -s} was given: keep unusable projects rather than deleting them. */
+  private final boolean skipUnusable;
+
+  /** The number of projects to process at once. */
+  /*package-private*/ final int parallelism;
+
+  /** The value of {@code -T}, or null if it was not given. */
+  private final @Nullable String taskTimeout;
+
+  /** The {@code wpi.sh} script. */
+  private final File wpiScript;
+
+  /** The arguments to pass to dljc. */
+  private final List<String> dljcArgs;
+
+  /** The dljc executable that {@code wpi.sh} runs; set by {@link #bootstrap}. */
+  private @MonotonicNonNull String dljc = null;
+
+  /**
+   * Runs WPI on each of a list of projects, and exits with status 0 if results are available for
+   * some project and no project failed unexpectedly.
+   *
+   * @param args the command-line arguments; see the class documentation
+   */
+  public static void main(String[] args) {
+    int exitStatus;
+    try {
+      exitStatus = new WpiMany(args).run();
+    } catch (UserError e) {
+      System.err.println("error: " + e.getMessage());
+      exitStatus = EXIT_FAILURE;
+    }
+    System.exit(exitStatus);
+  }
+
+  /**
+   * Creates a WpiMany from command-line arguments.
+   *
+   * @param args the command-line arguments; see the class documentation
+   * @throws UserError if the arguments or the environment are invalid
+   */
+  /*package-private*/ WpiMany(String[] args) {
+    String outDirArg = null;
+    String inListArg = null;
+    String timeoutArg = null;
+    String gradleCacheDirArg = ".gradle";
+    boolean skip = false;
+    String parallelismArg = null;
+    String memoryArg = "4";
+    String taskTimeoutArg = null;
+    String wpiScriptArg = null;
+    int i = 0;
+    for (; i < args.length; i++) {
+      String arg = args[i];
+      if (arg.equals("--")) {
+        i++;
+        break;
+      }
+      if (arg.equals("-s")) {
+        skip = true;
+        continue;
+      }
+      if (i + 1 == args.length) {
+        throw new UserError("Missing argument for %s", arg);
+      }
+      String value = args[++i];
+      switch (arg) {
+        case "-o":
+          outDirArg = value;
+          break;
+        case "-i":
+          inListArg = value;
+          break;
+        case "-t":
+          timeoutArg = value;
+          break;
+        case "-g":
+          gradleCacheDirArg = value;
+          break;
+        case "-j":
+          parallelismArg = value;
+          break;
+        case "-m":
+          memoryArg = value;
+          break;
+        case "-T":
+          taskTimeoutArg = value;
+          break;
+        case "-w":
+          wpiScriptArg = value;
+          break;
+        default:
+          throw new UserError("Unknown argument: %s", arg);
+      }
+    }
+    if (outDirArg == null) {
+      throw new UserError("You must specify an output directory using the -o argument.");
+    }
+    if (inListArg == null) {
+      throw new UserError("You must specify an input file using the -i argument.");
+    }
+
+    this.outDir = new File(outDirArg).getAbsoluteFile();
+    this.resultsDir = new File(outDir.getPath() + "-results");
+    this.inList = new File(inListArg).getAbsoluteFile();
+    this.timeout = timeoutArg;
+    this.gradleCacheDir = gradleCacheDirArg;
+    this.skipUnusable = skip;
+    this.taskTimeout = taskTimeoutArg;
+    if (taskTimeoutArg != null) {
+      parsePositive("-T", taskTimeoutArg);
+    }
+    this.parallelism =
+        parallelismArg != null
+            ? parsePositive("-j", parallelismArg)
+            : defaultParallelism(parsePositive("-m", memoryArg));
+    if (wpiScriptArg == null) {
+      String checkerFramework = System.getenv("CHECKERFRAMEWORK");
+      if (checkerFramework == null || checkerFramework.isEmpty()) {
+        throw new UserError(
+            "CHECKERFRAMEWORK is not set; it must be set to a locally-built Checker Framework.");
+      }
+      wpiScriptArg = checkerFramework + "/checker/bin/wpi.sh";
+    }
+    this.wpiScript = new File(wpiScriptArg).getAbsoluteFile();
+    if (!wpiScript.isFile()) {
+      throw new UserError("File does not exist: %s", wpiScript);
+    }
+    this.dljcArgs = Collections.unmodifiableList(Arrays.asList(args).subList(i, args.length));
+  }
+
+  /**
+   * Parses a positive integer argument.
+   *
+   * @param option the option that the argument is for
+   * @param value the argument
+   * @return the value of the argument
+   * @throws UserError if the argument is not a positive integer
+   */
+  private static int parsePositive(String option, String value) {
+    int result;
+    try {
+      result = Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      result = 0;
+    }
+    if (result <= 0) {
+      throw new UserError(
+          "The argument to %s must be a positive integer, but it is: %s", option, value);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of projects to process at once on this machine: the number of processors,
+   * but no more than fit in physical memory.
+   *
+   * @param memoryPerTaskGb the memory, in gigabytes, that the processing of one project needs
+   * @return the number of projects to process at once
+   */
+  @SuppressWarnings("deprecation") // getTotalPhysicalMemorySize is the only method in Java 8
+  private static int defaultParallelism(int memoryPerTaskGb) {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    long memory =
+        os instanceof com.sun.management.OperatingSystemMXBean
+            ? ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize()
+            : -1;
+    return defaultParallelism(Runtime.getRuntime().availableProcessors(), memory, memoryPerTaskGb);
+  }
+
+  /**
+   * Returns the number of projects to process at once: the number of processors, but no more than
+   * fit in memory, and at least one.
+   *
+   * @param processors the number of processors
+   * @param memory the physical memory, in bytes, or -1 if it is not known
+   * @param memoryPerTaskGb the memory, in gigabytes, that the processing of one project needs
+   * @return the number of projects to process at once
+   */
+  /*package-private*/ static int defaultParallelism(
+      int processors, long memory, int memoryPerTaskGb) {
+    long result = processors;
+    if (memory != -1) {
+      result = Math.min(result, memory / (memoryPerTaskGb * 1024L * 1024L * 1024L));
+    }
+    return (int) Math.max(result, 1);
+  }
+
+  /** A project to run WPI on: a line of the input file. */
+  /*package-private*/ static class Project {
+
+    /** The URL of the git repository. */
+    final String repo;
+
+    /** The commit to use. */
+    final String hash;
+
+    /** The name of the repository. */
+    final String name;
+
+    /** The name of the repository and the commit, which identifies the project's files. */
+    final String nameHash;
+
+    /**
+     * Creates a Project.
+     *
+     * @param repo the URL of the git repository, of the form https://github.com/user/repository
+     * @param hash the commit to use
+     * @throws UserError if the URL is not of the expected form
+     */
+    Project(String repo, String hash) {
+      String[] parts = repo.split("/", -1);
+      if (parts.length < 5 || parts[4].isEmpty()) {
+        throw new UserError("The repository URL must be https://github.com/user/repo: %s", repo);
+      }
+      this.repo = repo;
+      this.hash = hash;
+      this.name = parts[4];
+      this.nameHash = name + "-" + hash;
+    }
+  }
+
+  /** The outcome of processing one project. */
+  /*package-private*/ enum Outcome {
+    /** WPI ran on the project; its log tells whether results are available. */
+    COMPLETED,
+    /** The project cannot be built, so WPI could not be run. */
+    UNUSABLE,
+    /** The processing of the project took longer than {@code -T}. */
+    TIMED_OUT,
+    /** WPI could not be run because of an error in the infrastructure, such as git. */
+    FAILED
+  }
+
+  /**
+   * Runs WPI on every project and prints a summary.
+   *
+   * @return the exit status
+   * @throws UserError if the input cannot be read or the output directories cannot be created
+   */
+  private int run() {
+    List<Project> projects = readProjects();
+    try {
+      Files.createDirectories(outDir.toPath());
+      Files.createDirectories(resultsDir.toPath());
+    } catch (IOException e) {
+      throw new UserError("Cannot create %s: %s", resultsDir, e.getMessage());
+    }
+    System.out.printf(
+        "Running WPI on %d projects, %d at a time. Results will be placed in %s%n",
+        projects.size(), parallelism, resultsDir);
+
+    dljc = bootstrap();
+
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    List<Future<Outcome>> futures = new ArrayList<>(projects.size());
+    for (Project project : projects) {
+      futures.add(executor.submit(() -> processProject(project)));
+    }
+    executor.shutdown();
+    int exitStatus = 0;
+    try {
+      for (int i = 0; i < projects.size(); i++) {
+        Outcome outcome;
+        try {
+          outcome = futures.get(i).get();
+        } catch (ExecutionException e) {
+          System.out.printf("%s: %s%n", projects.get(i).nameHash, e.getCause());
+          outcome = Outcome.FAILED;
+        }
+        if (outcome == Outcome.FAILED) {
+          exitStatus = EXIT_PROJECT_FAILURE;
+        }
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw new UserError("Interrupted while waiting for WPI");
+    }
+
+    List<File> resultsAvailable = summarize(resultsDir, System.out);
+    if (resultsAvailable.isEmpty()) {
+      System.out.println("No results are available.");
+      return EXIT_FAILURE;
+    }
+    return exitStatus;
+  }
+
+  /**
+   * Reads the input file. Each line that is not empty or a comment is a repository URL and a commit
+   * hash, separated by whitespace.
+   *
+   * @return the projects in the input file
+   * @throws UserError if the file cannot be read or is malformed
+   */
+  private List<Project> readProjects() {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(inList.toPath(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UserError("Cannot read %s: %s", inList, e.getMessage());
+    }
+    List<Project> projects = new ArrayList<>(lines.size());
+    Set<String> nameHashes = new HashSet<>();
+    for (String line : lines) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\\s+");
+      if (fields.length < 2) {
+        throw new UserError("%s: expected a repository and a commit hash: %s", inList, line);
+      }
+      Project project = new Project(fields[0], fields[1]);
+      // Two tasks for the same project would use the same directory at the same time.
+      if (!nameHashes.add(project.nameHash)) {
+        System.out.printf("Ignoring duplicate project %s%n", project.nameHash);
+        continue;
+      }
+      projects.add(project);
+    }
+    return projects;
+  }
+
+  /**
+   * Clones a project, runs WPI on it, and copies its logs to {@link #resultsDir}. Does what the
+   * body of the loop in {@code wpi-many.sh} does.
+   *
+   * @param project the project
+   * @return the outcome
+   * @throws IOException if a file cannot be read or written
+   * @throws InterruptedException if interrupted while waiting for a process
+   */
+  private Outcome processProject(Project project) throws IOException, InterruptedException {
+    File projectDir = new File(outDir, project.nameHash);
+    File repoDir = new File(projectDir, project.name);
+    File wpiOut = new File(resultsDir, project.nameHash + "-wpi-out");
+    Files.deleteIfExists(wpiOut.toPath());
+
+    if (!repoDir.isDirectory()) {
+      Files.createDirectories(repoDir.toPath());
+      if (runCommand(repoDir, wpiOut, "git", "init") != 0
+          || runCommand(repoDir, wpiOut, "git", "remote", "add", "origin", project.repo) != 0
+          || runCommand(repoDir, wpiOut, "git", "fetch", "origin", project.hash) != 0
+          || runCommand(repoDir, wpiOut, "git", "reset", "--hard", "FETCH_HEAD") != 0) {
+        System.out.printf("%s: cannot fetch %s; see %s%n", project.nameHash, project.repo, wpiOut);
+        SystemUtil.deleteRecursively(projectDir.toPath());
+        return Outcome.FAILED;
+      }
+    } else {
+      SystemUtil.deleteRecursively(new File(repoDir, "dljc-out").toPath());
+    }
+    if (runCommand(repoDir, wpiOut, "git", "checkout", project.hash) != 0) {
+      System.out.printf(
+          "%s: git checkout %s failed; see %s%n", project.nameHash, project.hash, wpiOut);
+      return Outcome.FAILED;
+    }
+
+    Files.write(getResultLog(project).toPath(), new byte[0]);
+    boolean timedOut = false;
+    if (new File(repoDir, ".cannot-run-wpi").exists()) {
+      if (skipUnusable) {
+        System.out.printf(
+            "Skipping %s because it has a .cannot-run-wpi file present,"
+                + " indicating that an earlier run of WPI failed.%n",
+            project.nameHash);
+      }
+    } else {
+      System.out.printf("%s: running wpi.sh%n", project.nameHash);
+      List<String> command = getWpiCommand(repoDir);
+      int status = runCommand(projectDir, wpiOut, command.toArray(new String[0]));
+      timedOut = taskTimeout != null && status == TIMEOUT_STATUS;
+      System.out.printf("%s: wpi.sh finished with status %d%n", project.nameHash, status);
+    }
+    return collectResults(project, timedOut);
+  }
+
+  /**
+   * Returns the command that runs {@code wpi.sh} on a project.
+   *
+   * @param repoDir the directory of the project's repository
+   * @return the command that runs {@code wpi.sh} on the project
+   */
+  /*package-private*/ List<String> getWpiCommand(File repoDir) {
+    List<String> command = new ArrayList<>();
+    if (taskTimeout != null) {
+      command.addAll(Arrays.asList("timeout", "--kill-after=" + TIMEOUT_KILL_AFTER, taskTimeout));
+    }
+    command.addAll(Arrays.asList("/bin/bash", wpiScript.getPath(), "-d", repoDir.getPath()));
+    if (timeout != null) {
+      command.add("-t");
+      command.add(timeout);
+    }
+    command.addAll(Arrays.asList("-g", gradleCacheDir, "--"));
+    command.addAll(dljcArgs);
+    return command;
+  }
+
+  /**
+   * Returns the file in {@link #resultsDir} that holds the WPI log of a project.
+   *
+   * @param project the project
+   * @return the WPI log of the project
+   */
+  private File getResultLog(Project project) {
+    return new File(resultsDir, project.nameHash + "-wpi-stdout.log");
+  }
+
+  /**
+   * Determines the outcome of running {@code wpi.sh} on a project, and copies the project's WPI log
+   * and checker output to {@link #resultsDir}. Deletes the project if WPI could not be run on it,
+   * unless {@code -s} was given.
+   *
+   * @param project the project
+   * @param timedOut true if the processing of the project took longer than {@code -T}
+   * @return the outcome
+   * @throws IOException if a file cannot be read or written
+   */
+  /*package-private*/ Outcome collectResults(Project project, boolean timedOut)
+      throws IOException {
+    File projectDir = new File(outDir, project.nameHash);
+    File repoDir = new File(projectDir, project.name);
+    File resultLog = getResultLog(project);
+    if (timedOut) {
+      Files.write(
+          resultLog.toPath(),
+          (TASK_TIMED_OUT + " " + project.nameHash + System.lineSeparator())
+              .getBytes(StandardCharsets.UTF_8));
+      return Outcome.TIMED_OUT;
+    }
+
+    File cannotRunWpi = new File(repoDir, ".cannot-run-wpi");
+    if (cannotRunWpi.exists()) {
+      System.out.printf("%s: cannot run WPI; see %s%n", project.nameHash, cannotRunWpi);
+      if (!skipUnusable) {
+        System.out.printf("Deleting %s because WPI could not be run.%n", project.nameHash);
+        SystemUtil.deleteRecursively(projectDir.toPath());
+      }
+      return Outcome.UNUSABLE;
+    }
+
+    File dljcOut = new File(repoDir, "dljc-out");
+    File wpiStdout = new File(dljcOut, "wpi-stdout.log");
+    if (wpiStdout.isFile()) {
+      Files.write(
+          resultLog.toPath(),
+          Files.readAllBytes(wpiStdout.toPath()),
+          StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND);
+    }
+    File typecheckOut = new File(dljcOut, "typecheck.out");
+    if (typecheckOut.isFile()) {
+      Files.copy(
+          typecheckOut.toPath(),
+          new File(resultsDir, project.nameHash + "-typecheck.out").toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.COPY_ATTRIBUTES);
+    }
+    if (resultLog.length() == 0 || !typecheckOut.isFile()) {
+      File wpiOut = new File(resultsDir, project.nameHash + "-wpi-out");
+      System.out.printf("%s: WPI produced no output; see %s%n", project.nameHash, wpiOut);
+      return Outcome.FAILED;
+    }
+    return Outcome.COMPLETED;
+  }
+
+  /**
+   * Does what {@code wpi.sh} does before it runs WPI on a project: downloads dljc, unless the
+   * {@code DLJC} environment variable is set, and builds the Checker Framework, if they are
+   * missing.
+   *
+   * @return the dljc executable
+   * @throws UserError if {@code DLJC} names a file that does not exist, or if a build fails
+   */
+  private String bootstrap() {
+    File scriptDir = wpiScript.getParentFile();
+    File checkerFrameworkDir = new File(scriptDir, "../..");
+    String dljcEnv = System.getenv("DLJC");
+    File dljcFile;
+    if (dljcEnv == null || dljcEnv.isEmpty()) {
+      dljcFile = new File(scriptDir, ".do-like-javac/dljc");
+      if (!dljcFile.isFile()) {
+        runGradle(checkerFrameworkDir, "getDoLikeJavac");
+      }
+    } else {
+      dljcFile = new File(dljcEnv);
+      if (!dljcFile.isFile()) {
+        throw new UserError("DLJC is set to %s, which is not a file or does not exist.", dljcEnv);
+      }
+    }
+    if (!new File(scriptDir, "../dist/checker.jar").isFile()) {
+      runGradle(checkerFrameworkDir, "assembleForJavac");
+    }
+    return dljcFile.getAbsolutePath();
+  }
+
+  /**
+   * Runs a Gradle task of the Checker Framework, printing its output.
+   *
+   * @param checkerFrameworkDir the directory of the Checker Framework
+   * @param task the task to run
+   * @throws UserError if the task fails
+   */
+  private static void runGradle(File checkerFrameworkDir, String task) {
+    System.out.printf("Running ./gradlew %s in %s%n", task, checkerFrameworkDir);
+    int status;
+    try {
+      Process process =
+          new ProcessBuilder("./gradlew", task)
+              .directory(checkerFrameworkDir)
+              .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+              .redirectError(ProcessBuilder.Redirect.INHERIT)
+              .start();
+      // The task gets no input.
+      process.getOutputStream().close();
+      status = process.waitFor();
+    } catch (IOException e) {
+      throw new UserError("Cannot run ./gradlew %s: %s", task, e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UserError("Interrupted while running ./gradlew %s", task);
+    }
+    if (status != 0) {
+      throw new UserError("./gradlew %s failed with status %d", task, status);
+    }
+  }
+
+  /**
+   * Runs a command and waits for it to finish. The command gets the dljc executable in the {@code
+   * DLJC} environment variable.
+   *
+   * @param dir the working directory of the command
+   * @param output the file to append the standard output and standard error of the command to
+   * @param command the command and its arguments
+   * @return the exit status of the command
+   * @throws IOException if the command cannot be started
+   * @throws InterruptedException if interrupted while waiting for the command
+   */
+  private int runCommand(File dir, File output, String... command)
+      throws IOException, InterruptedException {
+    ProcessBuilder pb =
+        new ProcessBuilder(command)
+            .directory(dir)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(output));
+    pb.environment().put("GIT_TERMINAL_PROMPT", "0");
+    if (dljc != null) {
+      pb.environment().put("DLJC", dljc);
+    }
+    Process process = pb.start();
+    // The command gets no input.
+    process.getOutputStream().close();
+    try {
+      return process.waitFor();
+    } finally {
+      process.destroy();
+    }
+  }
+
+  /**
+   * Prints a summary of the WPI logs in a results directory, as {@code wpi-summary.sh} does, and
+   * writes the logs of the projects for which results are available to {@code
+   * results_available.txt} in that directory, as {@code wpi-many.sh} does. The only difference is
+   * that a project that {@code -T} stopped counts as timed out.
+   *
+   * @param resultsDir the results directory
+   * @param out where to print the summary
+   * @return the logs of the projects for which results are available
+   * @throws UserError if a file cannot be read or the list cannot be written
+   */
+  /*package-private*/ static List<File> summarize(File resultsDir, PrintStream out) {
+    File[] logs = resultsDir.listFiles((dir, name) -> name.endsWith(".log"));
+    if (logs == null) {
+      logs = new File[0];
+    }
+    Arrays.sort(logs);
+    int noBuildFile = 0;
+    int buildFailed = 0;
+    int timeouts = 0;
+    List<File> timedOut = new ArrayList<>();
+    List<File> resultsAvailable = new ArrayList<>();
+    for (File log : logs) {
+      String text;
+      try {
+        text = new String(Files.readAllBytes(log.toPath()), StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        throw new UserError("Cannot read %s: %s", log, e.getMessage());
+      }
+      noBuildFile += countOccurrences(text, NO_BUILD_FILE);
+      buildFailed += countOccurrences(text, BUILD_FAILED_OLD);
+      buildFailed += countOccurrences(text, BUILD_FAILED);
+      int logTimeouts =
+          countOccurrences(text, DLJC_TIMED_OUT) + countOccurrences(text, TASK_TIMED_OUT);
+      timeouts += logTimeouts;
+      if (logTimeouts != 0) {
+        timedOut.add(log);
+      }
+      // As in wpi-many.sh, which uses "grep -vl": results are available if some line of the log,
+      // even an empty one, contains none of the messages. An empty log has no lines.
+      String[] lines = text.split("\\R", -1);
+      // The last element is what follows the last line terminator, which is not a line if empty.
+      int numLines = lines[lines.length - 1].isEmpty() ? lines.length - 1 : lines.length;
+      boolean available = false;
+      for (int i = 0; i < numLines; i++) {
+        String line = lines[i];
+        if (NO_RESULTS_MESSAGES.stream().noneMatch(line::contains)) {
+          available = true;
+          break;
+        }
+      }
+      if (available) {
+        resultsAvailable.add(log);
+      }
+    }
+
+    try {
+      Files.write(
+          new File(resultsDir, "results_available.txt").toPath(),
+          resultsAvailable.stream().map(File::getPath).collect(Collectors.toList()),
+          StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UserError("Cannot write results_available.txt: %s", e.getMessage());
+    }
+
+    int numberOfProjects = Math.max(logs.length, 1);
+    out.printf("number of projects: %d (100%%)%n", logs.length);
+    out.printf(
+        "no maven or gradle build file: %d (~%d%%)%n",
+        noBuildFile, noBuildFile * 100 / numberOfProjects);
+    out.printf("build failed: %d (~%d%%)%n", buildFailed, buildFailed * 100 / numberOfProjects);
+    out.printf("timed out: %d (~%d%%)%n", timeouts, timeouts * 100 / numberOfProjects);
+    out.println();
+    out.println("timeouts:");
+    out.println();
+    for (File log : timedOut) {
+      out.println(log.getPath());
+    }
+    out.println();
+    out.println("results are available for these projects: ");
+    out.println();
+    if (resultsAvailable.isEmpty()) {
+      // wpi-summary.sh prints the empty list as an empty line.
+      out.println();
+    }
+    for (File log : resultsAvailable) {
+      out.println(log.getPath());
+    }
+    out.println();
+    // wpi-many.sh writes loc.txt if it can count lines of code; WpiMany never does.
+    File loc = new File(resultsDir, "loc.txt");
+    if (loc.isFile()) {
+      out.println("LoC of projects with available results:");
+      try {
+        out.print(new String(Files.readAllBytes(loc.toPath()), StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        throw new UserError("Cannot read %s: %s", loc, e.getMessage());
+      }
+    } else {
+      out.println("No LoC count found for projects with available results");
+    }
+    return resultsAvailable;
+  }
+
+  /**
+   * Returns the number of occurrences of a string in a text.
+   *
+   * @param text the text
+   * @param s the string to count
+   * @return the number of non-overlapping occurrences of {@code s} in {@code text}
+   */
+  private static int countOccurrences(String text, String s) {
+    int count = 0;
+    for (int i = text.indexOf(s); i != -1; i = text.indexOf(s, i + s.length())) {
+      count++;
+    }
+    return count;
+  }
+}
@@ -51,7 +51,6 @@ import org.checkerframework.javacutil.BugInCF;
 import org.checkerframework.javacutil.ElementUtils;
 import org.checkerframework.javacutil.TreeUtils;
 import org.checkerframework.javacutil.TypesUtils;
-import org.plumelib.util.MapsP;
 import org.plumelib.util.StringsPlume;
 
 /**
@@ -106,17 +105,31 @@ public class QualifierDefaults {
   private static final int CACHE_SIZE = 300;
 
   /** Mapping from an Element to the bound type. */
-  protected final Map<Element, BoundType> elementToBoundType = MapsP.createLruCache(CACHE_SIZE);
+  protected final Map<Element, BoundType> elementToBoundType;
 
   /**
-   * Defaults that apply for a certain Element. On the one hand this is used for caching (an earlier
-   * name for the field was "qualifierCache"). It can also be used by type systems to set defaults
-   * for certain Elements.
+   * Defaults that type systems have set for certain Elements, via {@link #addElementDefault}. These
+   * replace the defaults that would otherwise apply at the Element.
    */
   private final IdentityHashMap<Element, DefaultSet> elementDefaults = new IdentityHashMap<>();
 
+  /**
+   * The defaults that apply at each element scope that has been queried in the current compilation
+   * unit, including those inherited from enclosing scopes. Scopes at which no defaults apply map to
+   * {@link DefaultSet#EMPTY}, so that {@link #defaultsAt} does not walk the enclosing elements
+   * again. (An earlier name for this field was "qualifierCache".) Cleared by {@link
+   * #clearScopeCaches}.
+   */
+  private final Map<Element, DefaultSet> scopeDefaults;
+
+  /**
+   * Whether conservative defaults apply at each element scope that has been queried in the current
+   * compilation unit; see {@link #applyConservativeDefaults}. Cleared by {@link #clearScopeCaches}.
+   */
+  private final Map<Element, Boolean> scopeConservativeDefaults;
+
   /** A mapping of Element &rarr; Whether or not that element is AnnotatedFor this type system. */
-  private final IdentityHashMap<Element, Boolean> elementAnnotatedFors = new IdentityHashMap<>();
+  private final Map<Element, Boolean> elementAnnotatedFors;
 
   /** CLIMB locations whose standard default is top for a given type system. */
   public static final List<TypeUseLocation> STANDARD_CLIMB_DEFAULTS_TOP =
@@ -180,6 +193,11 @@ public class QualifierDefaults {
   public QualifierDefaults(Elements elements, AnnotatedTypeFactory atypeFactory) {
     this.elements = elements;
     this.atypeFactory = atypeFactory;
+    this.elementToBoundType = atypeFactory.createCache(CACHE_SIZE);
+    boolean concurrentCaches = atypeFactory.getChecker().hasOption("atfConcurrentCaches");
+    this.scopeDefaults = createIdentityMap(concurrentCaches);
+    this.scopeConservativeDefaults = createIdentityMap(concurrentCaches);
+    this.elementAnnotatedFors = createIdentityMap(concurrentCaches);
     this.useConservativeDefaultsBytecode =
         atypeFactory.getChecker().useConservativeDefault("bytecode");
     this.useConservativeDefaultsSource = atypeFactory.getChecker().useConservativeDefault("source");
@@ -192,6 +210,21 @@ public class QualifierDefaults {
         TreeUtils.getMethod(DefaultQualifier.List.class, "value", 0, processingEnv);
   }
 
+  /**
+   * Creates an identity map for one of the caches of this object, which are filled while types are
+   * looked up.
+   *
+   * @param <K> the type of keys
+   * @param <V> the type of values
+   * @param concurrentCaches true if the map must be thread-safe, because {@code
+   *     -AatfConcurrentCaches} was passed
+   * @return a new identity map
+   */
+  private static <K, V> Map<K, V> createIdentityMap(boolean concurrentCaches) {
+    Map<K, V> map = new IdentityHashMap<>();
+    return concurrentCaches ? Collections.synchronizedMap(map) : map;
+  }
+
   @Override
   public String toString() {
     // displays the checked and unchecked code defaults
@@ -329,6 +362,30 @@ public class QualifierDefaults {
     }
     prevset.add(new Default(elementDefaultAnno, location));
     elementDefaults.put(elem, prevset);
+    // The new default may apply to scopes that have already been looked up.
+    scopeDefaults.clear();
+  }
+
+  /**
+   * Clears the caches of the defaults that apply at each element scope. Called when a new
+   * compilation unit is processed, because most of the cached scopes are the local variables and
+   * methods of the previous compilation unit.
+   */
+  public void clearScopeCaches() {
+    scopeDefaults.clear();
+    scopeConservativeDefaults.clear();
+  }
+
+  /**
+   * Returns true if results that depend on declaration annotations may be cached. They may not be
+   * while annotation files are being parsed, because those annotations are not complete yet.
+   *
+   * @return true if results that depend on declaration annotations may be cached
+   */
+  private boolean mayCacheScopes() {
+    return atypeFactory.shouldCache
+        && !atypeFactory.stubTypes.isParsing()
+        && !atypeFactory.ajavaTypes.isParsing();
   }
 
   private void checkIsValidUncheckedCodeLocation(
@@ -630,9 +687,7 @@ public class QualifierDefaults {
       }
     }
 
-    if (atypeFactory.shouldCache
-        && !atypeFactory.stubTypes.isParsing()
-        && !atypeFactory.ajavaTypes.isParsing()) {
+    if (mayCacheScopes()) {
       elementAnnotatedFors.put(elt, elementAnnotatedForThisChecker);
     }
 
@@ -651,6 +706,26 @@ public class QualifierDefaults {
       return DefaultSet.EMPTY;
     }
 
+    DefaultSet cached = scopeDefaults.get(elt);
+    if (cached != null) {
+      return cached;
+    }
+
+    DefaultSet result = computeDefaultsAt(elt);
+    if (mayCacheScopes()) {
+      scopeDefaults.put(elt, result);
+    }
+    return result;
+  }
+
+  /**
+   * Computes the defaults that apply to the given Element, considering defaults from enclosing
+   * Elements. Clients should call {@link #defaultsAt}, which caches the result.
+   *
+   * @param elt the element
+   * @return the defaults
+   */
+  private DefaultSet computeDefaultsAt(Element elt) {
     if (elementDefaults.containsKey(elt)) {
       return elementDefaults.get(elt);
     }
@@ -699,16 +774,11 @@ public class QualifierDefaults {
 
     DefaultSet parentDefaults = defaultsAt(parent);
     if (qualifiers == null || qualifiers.isEmpty()) {
-      qualifiers = parentDefaults;
+      // Share the parent's set, so that scopes without their own defaults cost no allocation.
+      return parentDefaults;
     } else {
       qualifiers.addAll(parentDefaults);
-    }
-
-    if (qualifiers != null && !qualifiers.isEmpty()) {
-      elementDefaults.put(elt, qualifiers);
       return qualifiers;
-    } else {
-      return DefaultSet.EMPTY;
     }
   }
 
@@ -728,6 +798,25 @@ public class QualifierDefaults {
       return false;
     }
 
+    Boolean cached = scopeConservativeDefaults.get(annotationScope);
+    if (cached != null) {
+      return cached;
+    }
+    boolean result = computeApplyConservativeDefaults(annotationScope);
+    if (mayCacheScopes()) {
+      scopeConservativeDefaults.put(annotationScope, result);
+    }
+    return result;
+  }
+
+  /**
+   * Computes whether the conservative default should be applied for the given element. Clients
+   * should call {@link #applyConservativeDefaults}, which caches the result.
+   *
+   * @param annotationScope the element that the conservative default might apply to
+   * @return true if the conservative default applies to the given element
+   */
+  private boolean computeApplyConservativeDefaults(Element annotationScope) {
     // TODO: I would expect this:
     //   atypeFactory.isFromByteCode(annotationScope)) {
     // to work instead of the
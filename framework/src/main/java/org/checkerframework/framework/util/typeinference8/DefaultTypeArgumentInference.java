@@ -20,6 +20,7 @@ import javax.lang.model.type.TypeVariable;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedExecutableType;
+import org.checkerframework.framework.util.TimeBudget;
 import org.checkerframework.framework.util.typeinference8.types.ContainsInferenceVariable;
 import org.checkerframework.framework.util.typeinference8.types.Variable;
 import org.checkerframework.framework.util.typeinference8.util.Theta;
@@ -114,6 +115,11 @@ public class DefaultTypeArgumentInference implements TypeArgumentInference {
         return result.swapTypeVariables(methodType, expressionTree);
       }
     } catch (Exception ex) {
+      TimeBudget.ExceededException exceeded = TimeBudget.getExceeded(ex);
+      if (exceeded != null) {
+        // Not a failure of inference; the code that started the budget handles it.
+        throw exceeded;
+      }
       if (typeFactory
           .getChecker()
           .getBooleanOption("convertTypeArgInferenceCrashToWarning", true)) {
@@ -17,6 +17,7 @@ import javax.lang.model.type.TypeKind;
 import org.checkerframework.framework.source.SourceChecker;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedExecutableType;
+import org.checkerframework.framework.util.TimeBudget;
 import org.checkerframework.framework.util.typeinference8.bound.BoundSet;
 import org.checkerframework.framework.util.typeinference8.bound.CaptureBound;
 import org.checkerframework.framework.util.typeinference8.constraint.AdditionalArgument;
@@ -567,6 +568,10 @@ public class InvocationTypeInference {
           try {
             c.addAll(new AdditionalArgument(expression).reduce(context));
           } catch (Exception e) {
+            TimeBudget.ExceededException exceeded = TimeBudget.getExceeded(e);
+            if (exceeded != null) {
+              throw exceeded;
+            }
             // Sometimes in order to create the additional argument constraint, other inference
             // variables must be resolved first. This happens when a lambda parameter is used in the
             // additional argument constraint.
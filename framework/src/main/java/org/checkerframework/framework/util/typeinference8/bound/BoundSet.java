@@ -320,6 +320,7 @@ public class BoundSet implements ReductionResult {
     int count = 0;
     do {
       count++;
+      context.typeFactory.getTimeBudget().check();
       List<Variable> instantiations = getInstantiatedVariables();
       boolean boundsChangeInst = false;
       if (!instantiations.isEmpty()) {
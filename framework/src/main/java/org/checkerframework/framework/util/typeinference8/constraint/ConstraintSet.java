@@ -349,6 +349,7 @@ public class ConstraintSet implements ReductionResult {
       if (this.list.size() > BoundSet.MAX_INCORPORATION_STEPS) {
         throw new BugInCF("TO MANY CONSTRAINTS: %s", context.pathToExpression.getLeaf());
       }
+      context.typeFactory.getTimeBudget().check();
       BoundSet result = reduceOneStep(context);
       boundSet.merge(result);
     }
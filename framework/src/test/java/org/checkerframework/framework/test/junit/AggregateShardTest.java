@@ -0,0 +1,40 @@
+package org.checkerframework.framework.test.junit;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Runs the tests of {@link AggregateTest} split into shards by {@code -AcheckerShard}, which
+ * assigns the independent subcheckers of an aggregate checker to different shards.
+ */
+public class AggregateShardTest extends ShardedPerDirectoryTest {
+
+  /**
+   * @param testFiles the files containing test code, which will be type-checked
+   */
+  public AggregateShardTest(List<File> testFiles) {
+    super(
+        testFiles,
+        Collections.singletonList(
+            "org.checkerframework.framework.testchecker.aggregate.AggregateOfCompoundChecker"),
+        "aggregate",
+        "-AresolveReflection");
+  }
+
+  @Parameters
+  public static String[] getTestDirs() {
+    return new String[] {"aggregate"};
+  }
+
+  @Override
+  protected List<File> getShardedTestFiles() {
+    // The Java error in JavaErrorTest.java would stop the checking of the other files, which is
+    // why AggregateTest checks each file separately.
+    return testFiles.stream()
+        .filter(file -> !file.getName().equals("JavaErrorTest.java"))
+        .collect(Collectors.toList());
+  }
+}
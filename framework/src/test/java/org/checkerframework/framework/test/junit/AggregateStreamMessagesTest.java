@@ -0,0 +1,30 @@
+package org.checkerframework.framework.test.junit;
+
+import java.io.File;
+import org.checkerframework.framework.test.CheckerFrameworkPerFileTest;
+import org.checkerframework.framework.testchecker.aggregate.AggregateOfCompoundChecker;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Runs the tests of {@link AggregateTest} with {@code -AstreamMessages}, which prints the messages
+ * of the subcheckers as they are issued instead of sorting them. The same messages must be issued.
+ */
+public class AggregateStreamMessagesTest extends CheckerFrameworkPerFileTest {
+
+  /**
+   * @param file the file containing test code, which will be type-checked
+   */
+  public AggregateStreamMessagesTest(File file) {
+    super(
+        file,
+        AggregateOfCompoundChecker.class,
+        "aggregate",
+        "-AresolveReflection",
+        "-AstreamMessages");
+  }
+
+  @Parameters
+  public static String[] getTestDirs() {
+    return new String[] {"aggregate"};
+  }
+}
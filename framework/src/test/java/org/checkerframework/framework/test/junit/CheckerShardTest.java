@@ -0,0 +1,26 @@
+package org.checkerframework.framework.test.junit;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import org.junit.runners.Parameterized.Parameters;
+
+/** Runs the tests of {@link SubtypingEncryptedTest} split into shards by {@code -AcheckerShard}. */
+public class CheckerShardTest extends ShardedPerDirectoryTest {
+
+  /**
+   * @param testFiles the files containing test code, which will be type-checked
+   */
+  public CheckerShardTest(List<File> testFiles) {
+    super(
+        testFiles,
+        Collections.singletonList("org.checkerframework.common.subtyping.SubtypingChecker"),
+        "subtyping",
+        "-Aquals=org.checkerframework.framework.testchecker.util.Encrypted,org.checkerframework.framework.testchecker.util.PolyEncrypted,org.checkerframework.common.subtyping.qual.Unqualified");
+  }
+
+  @Parameters
+  public static String[] getTestDirs() {
+    return new String[] {"subtyping"};
+  }
+}
@@ -0,0 +1,191 @@
+package org.checkerframework.framework.test.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.checkerframework.framework.util.CheckingSession;
+import org.checkerframework.javacutil.SystemUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests that a {@link CheckingSession} can check several sets of files, one after another. */
+public class CheckingSessionTest {
+
+  /** The value of {@code -Aquals}. */
+  private static final String QUALS =
+      "-Aquals=org.checkerframework.framework.testchecker.util.Encrypted,"
+          + "org.checkerframework.common.subtyping.qual.Unqualified";
+
+  /** The directory that holds the source files and the class files. */
+  private Path dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("checking-session-test");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    SystemUtil.deleteRecursively(dir);
+  }
+
+  @Test
+  public void checksSeveralCompilations() throws IOException {
+    Path a =
+        write(
+            "A.java",
+            "import org.checkerframework.framework.testchecker.util.Encrypted;",
+            "public class A {",
+            "  void assign(String s) {",
+            "    @Encrypted String e = s;",
+            "  }",
+            "}");
+    Path b =
+        write(
+            "B.java",
+            "import org.checkerframework.framework.testchecker.util.Encrypted;",
+            "public class B {",
+            "  @Encrypted String get(String s) {",
+            "    return s;",
+            "  }",
+            "}");
+    try (CheckingSession session =
+        new CheckingSession(
+            Collections.singletonList("org.checkerframework.common.subtyping.SubtypingChecker"),
+            Arrays.asList(
+                "-classpath", System.getProperty("java.class.path"), "-Anomsgtext", QUALS))) {
+      List<String> expectedA = Collections.singletonList("A.java:4: (assignment)");
+      Assert.assertEquals(expectedA, check(session, a));
+      Assert.assertEquals(Collections.singletonList("B.java:4: (return)"), check(session, b));
+      // The second time, the diagnostics of A come from the session's result cache.
+      Assert.assertEquals(expectedA, check(session, a));
+      Assert.assertEquals(
+          Arrays.asList("A.java:4: (assignment)", "B.java:4: (return)"), check(session, a, b));
+    }
+  }
+
+  @Test
+  public void invalidateClasspath() throws IOException {
+    Path classes = Files.createDirectory(dir.resolve("classes"));
+    Path lib =
+        write(
+            "Lib.java",
+            "import org.checkerframework.framework.testchecker.util.Encrypted;",
+            "public class Lib {",
+            "  public static @Encrypted String get(@Encrypted String s) {",
+            "    return s;",
+            "  }",
+            "}");
+    compile(lib, classes);
+    Path test =
+        write(
+            "Test.java",
+            "import org.checkerframework.framework.testchecker.util.Encrypted;",
+            "public class Test {",
+            "  @Encrypted String get(@Encrypted String s) {",
+            "    return Lib.get(s);",
+            "  }",
+            "}");
+    try (CheckingSession session =
+        new CheckingSession(
+            Collections.singletonList("org.checkerframework.common.subtyping.SubtypingChecker"),
+            Arrays.asList(
+                "-classpath",
+                classes + File.pathSeparator + System.getProperty("java.class.path"),
+                "-Anomsgtext",
+                QUALS))) {
+      Assert.assertEquals(Collections.emptyList(), check(session, test));
+
+      // Lib.get no longer returns an encrypted string.
+      write(
+          "Lib.java",
+          "import org.checkerframework.framework.testchecker.util.Encrypted;",
+          "public class Lib {",
+          "  public static String get(@Encrypted String s) {",
+          "    return s;",
+          "  }",
+          "}");
+      compile(lib, classes);
+      session.invalidateClasspath();
+      Assert.assertEquals(Collections.singletonList("Test.java:4: (return)"), check(session, test));
+    }
+  }
+
+  /**
+   * Writes a file in {@link #dir}.
+   *
+   * @param name the name of the file
+   * @param lines the lines of the file
+   * @return the file
+   * @throws IOException if the file cannot be written
+   */
+  private Path write(String name, String... lines) throws IOException {
+    return Files.write(dir.resolve(name), Arrays.asList(lines), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Compiles a source file without running a checker.
+   *
+   * @param source the source file
+   * @param outputDir the directory to write the class files to
+   * @throws IOException if the file manager cannot be closed
+   */
+  private static void compile(Path source, Path outputDir) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+      boolean success =
+          compiler
+              .getTask(
+                  null,
+                  fileManager,
+                  null,
+                  Arrays.asList(
+                      "-proc:none",
+                      "-classpath",
+                      System.getProperty("java.class.path"),
+                      "-d",
+                      outputDir.toString()),
+                  null,
+                  fileManager.getJavaFileObjects(source.toFile()))
+              .call();
+      Assert.assertTrue("Cannot compile " + source, success);
+    }
+  }
+
+  /**
+   * Checks source files in a session.
+   *
+   * @param session the session
+   * @param sources the source files
+   * @return the diagnostics, each as "file:line: message", in the order they were issued
+   */
+  private static List<String> check(CheckingSession session, Path... sources) {
+    List<JavaFileObject> files = new ArrayList<>();
+    for (Path source : sources) {
+      session.getFileManager().getJavaFileObjects(source.toFile()).forEach(files::add);
+    }
+    List<String> result = new ArrayList<>();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : session.check(files)) {
+      String file =
+          diagnostic.getSource() == null
+              ? "<none>"
+              : new File(diagnostic.getSource().getName()).getName();
+      result.add(file + ":" + diagnostic.getLineNumber() + ": " + diagnostic.getMessage(null));
+    }
+    return result;
+  }
+}
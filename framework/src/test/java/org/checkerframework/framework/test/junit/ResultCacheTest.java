@@ -0,0 +1,167 @@
+package org.checkerframework.framework.test.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.checkerframework.framework.util.CheckingSession;
+import org.checkerframework.javacutil.SystemUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@code -AresultCacheDir}: a class whose source and whose dependencies' signatures are
+ * unchanged is not checked again, but its stored diagnostics are reported.
+ */
+public class ResultCacheTest {
+
+  /** The lines of Lib.java, whose method returns an encrypted string. */
+  private static final String[] LIB =
+      new String[] {
+        "import org.checkerframework.framework.testchecker.util.Encrypted;",
+        "public class Lib {",
+        "  public static @Encrypted String get(@Encrypted String s) {",
+        "    return s;",
+        "  }",
+        "}"
+      };
+
+  /** The lines of Test.java, which has one error. */
+  private static final String[] TEST =
+      new String[] {
+        "import org.checkerframework.framework.testchecker.util.Encrypted;",
+        "public class Test {",
+        "  @Encrypted String get(@Encrypted String s) {",
+        "    return Lib.get(s);",
+        "  }",
+        "  void assign(String s) {",
+        "    @Encrypted String e = s;",
+        "  }",
+        "}"
+      };
+
+  /** The directory that holds the source files and the result cache. */
+  private Path dir;
+
+  /** The directory passed to {@code -AresultCacheDir}. */
+  private Path cacheDir;
+
+  /** Lib.java. */
+  private Path libFile;
+
+  /** Test.java. */
+  private Path testFile;
+
+  /** The session that checks the source files. */
+  private CheckingSession session;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("result-cache-test");
+    cacheDir = dir.resolve("cache");
+    libFile = dir.resolve("Lib.java");
+    testFile = dir.resolve("Test.java");
+    Files.write(libFile, Arrays.asList(LIB), StandardCharsets.UTF_8);
+    Files.write(testFile, Arrays.asList(TEST), StandardCharsets.UTF_8);
+    session =
+        new CheckingSession(
+            Collections.singletonList("org.checkerframework.common.subtyping.SubtypingChecker"),
+            Arrays.asList(
+                "-classpath",
+                System.getProperty("java.class.path"),
+                "-Anomsgtext",
+                "-AresultCacheDir=" + cacheDir,
+                "-Aquals=org.checkerframework.framework.testchecker.util.Encrypted,"
+                    + "org.checkerframework.common.subtyping.qual.Unqualified"));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    session.close();
+    SystemUtil.deleteRecursively(dir);
+  }
+
+  @Test
+  public void replaysUnchangedClasses() throws IOException {
+    List<String> first = check();
+    Assert.assertEquals(Collections.singletonList("Test.java:7: (assignment)"), first);
+    Assert.assertTrue("No results were stored in " + cacheDir, listCacheFiles().size() != 0);
+
+    // Change the stored message, so that the test can tell whether it was replayed.
+    for (Path cacheFile : listCacheFiles()) {
+      String contents = new String(Files.readAllBytes(cacheFile), StandardCharsets.UTF_8);
+      Files.write(
+          cacheFile,
+          contents.replace("(assignment)", "(xssignment)").getBytes(StandardCharsets.UTF_8));
+    }
+    Assert.assertEquals(Collections.singletonList("Test.java:7: (xssignment)"), check());
+  }
+
+  @Test
+  public void rechecksChangedSource() throws IOException {
+    check();
+    List<String> lines = new ArrayList<>(Arrays.asList(TEST));
+    lines.add(1, "// A new line.");
+    Files.write(testFile, lines, StandardCharsets.UTF_8);
+    Assert.assertEquals(Collections.singletonList("Test.java:8: (assignment)"), check());
+  }
+
+  @Test
+  public void rechecksClassesWhoseDependencyChanged() throws IOException {
+    check();
+    // Lib.get no longer returns an encrypted string, which Test.get relies on.  Test.java is
+    // unchanged.
+    List<String> lines = new ArrayList<>(Arrays.asList(LIB));
+    lines.set(2, "  public static String get(@Encrypted String s) {");
+    Files.write(libFile, lines, StandardCharsets.UTF_8);
+    Assert.assertEquals(
+        Arrays.asList("Test.java:4: (return)", "Test.java:7: (assignment)"), check());
+  }
+
+  /**
+   * Checks Lib.java and Test.java.
+   *
+   * @return the diagnostics, each as "file:line: message", in the order they were issued
+   */
+  private List<String> check() {
+    Iterable<? extends JavaFileObject> files =
+        session.getFileManager().getJavaFileObjects(libFile.toFile(), testFile.toFile());
+    List<JavaFileObject> fileList = new ArrayList<>();
+    files.forEach(fileList::add);
+    List<String> result = new ArrayList<>();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : session.check(fileList)) {
+      String file =
+          diagnostic.getSource() == null
+              ? "<none>"
+              : new File(diagnostic.getSource().getName()).getName();
+      result.add(file + ":" + diagnostic.getLineNumber() + ": " + diagnostic.getMessage(null));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the files in the result cache.
+   *
+   * @return the files in the result cache
+   * @throws IOException if the directory cannot be read
+   */
+  private List<Path> listCacheFiles() throws IOException {
+    if (!Files.isDirectory(cacheDir)) {
+      return Collections.emptyList();
+    }
+    try (Stream<Path> list = Files.list(cacheDir)) {
+      return list.collect(Collectors.toList());
+    }
+  }
+}
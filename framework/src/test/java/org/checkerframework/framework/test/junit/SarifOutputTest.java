@@ -0,0 +1,358 @@
+package org.checkerframework.framework.test.junit;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.checkerframework.framework.util.CheckingSession;
+import org.checkerframework.javacutil.SystemUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@code -AsarifOutput}: the file must be well-formed JSON in the SARIF 2.1.0 format and must
+ * contain the diagnostics that the checker printed.
+ */
+public class SarifOutputTest {
+
+  /** The lines of Test.java, which has two errors. */
+  private static final String[] TEST =
+      new String[] {
+        "import org.checkerframework.framework.testchecker.util.Encrypted;",
+        "public class Test {",
+        "  @Encrypted String get(String s) {",
+        "    return s;",
+        "  }",
+        "  void assign(String s) {",
+        "    @Encrypted String e = s;",
+        "  }",
+        "}"
+      };
+
+  @Test
+  public void writesDiagnostics() throws IOException {
+    Path dir = Files.createTempDirectory("sarif-output-test");
+    try {
+      Path testFile = dir.resolve("Test.java");
+      Path sarifFile = dir.resolve("out.sarif");
+      Files.write(testFile, Arrays.asList(TEST), StandardCharsets.UTF_8);
+      List<Diagnostic<? extends JavaFileObject>> diagnostics;
+      try (CheckingSession session =
+          new CheckingSession(
+              Collections.singletonList("org.checkerframework.common.subtyping.SubtypingChecker"),
+              // Without -Anomsgtext, the messages contain newlines, which must be escaped.
+              Arrays.asList(
+                  "-classpath",
+                  System.getProperty("java.class.path"),
+                  "-AsarifOutput=" + sarifFile,
+                  "-Aquals=org.checkerframework.framework.testchecker.util.Encrypted,"
+                      + "org.checkerframework.common.subtyping.qual.Unqualified"))) {
+        List<JavaFileObject> files = new ArrayList<>();
+        session.getFileManager().getJavaFileObjects(testFile.toFile()).forEach(files::add);
+        diagnostics = session.check(files);
+      }
+      Assert.assertEquals(2, diagnostics.size());
+
+      String sarif = new String(Files.readAllBytes(sarifFile), StandardCharsets.UTF_8);
+      Map<?, ?> log = (Map<?, ?>) new JsonParser(sarif).parse();
+      Assert.assertEquals("2.1.0", log.get("version"));
+      List<?> runs = (List<?>) log.get("runs");
+      Assert.assertEquals(1, runs.size());
+      Map<?, ?> run = (Map<?, ?>) runs.get(0);
+      Map<?, ?> driver = (Map<?, ?>) ((Map<?, ?>) run.get("tool")).get("driver");
+      Assert.assertEquals(
+          "org.checkerframework.common.subtyping.SubtypingChecker", driver.get("name"));
+
+      List<?> results = (List<?>) run.get("results");
+      Assert.assertEquals(diagnostics.size(), results.size());
+      for (int i = 0; i < results.size(); i++) {
+        Diagnostic<? extends JavaFileObject> diagnostic = diagnostics.get(i);
+        Map<?, ?> result = (Map<?, ?>) results.get(i);
+        Assert.assertEquals("error", result.get("level"));
+        Assert.assertEquals(
+            diagnostic.getMessage(null), ((Map<?, ?>) result.get("message")).get("text"));
+        Map<?, ?> location = (Map<?, ?>) ((List<?>) result.get("locations")).get(0);
+        Map<?, ?> physicalLocation = (Map<?, ?>) location.get("physicalLocation");
+        Map<?, ?> region = (Map<?, ?>) physicalLocation.get("region");
+        Assert.assertEquals(
+            diagnostic.getLineNumber(), ((Double) region.get("startLine")).longValue());
+      }
+      Assert.assertEquals("return", ((Map<?, ?>) results.get(0)).get("ruleId"));
+      Assert.assertEquals("assignment", ((Map<?, ?>) results.get(1)).get("ruleId"));
+    } finally {
+      SystemUtil.deleteRecursively(dir);
+    }
+  }
+
+  /**
+   * A parser for JSON text. Objects become maps, arrays become lists, and numbers become doubles.
+   * It throws an {@link AssertionError} if the text is not well-formed.
+   */
+  private static class JsonParser {
+
+    /** The value of the JSON literal {@code null}. */
+    static final Object NULL = new Object();
+
+    /** The text to parse. */
+    private final String text;
+
+    /** The position of the next character to read. */
+    private int pos = 0;
+
+    /**
+     * Creates a JsonParser.
+     *
+     * @param text the text to parse
+     */
+    JsonParser(String text) {
+      this.text = text;
+    }
+
+    /**
+     * Parses the text, which must consist of one JSON value.
+     *
+     * @return the value
+     */
+    Object parse() {
+      Object result = parseValue();
+      skipWhitespace();
+      if (pos != text.length()) {
+        throw error("text after the value");
+      }
+      return result;
+    }
+
+    /**
+     * Parses a JSON value.
+     *
+     * @return the value
+     */
+    private Object parseValue() {
+      skipWhitespace();
+      if (pos == text.length()) {
+        throw error("end of text");
+      }
+      char c = text.charAt(pos);
+      switch (c) {
+        case '{':
+          return parseObject();
+        case '[':
+          return parseArray();
+        case '"':
+          return parseString();
+        case 't':
+          return parseLiteral("true", Boolean.TRUE);
+        case 'f':
+          return parseLiteral("false", Boolean.FALSE);
+        case 'n':
+          return parseLiteral("null", NULL);
+        default:
+          return parseNumber();
+      }
+    }
+
+    /**
+     * Parses a JSON object.
+     *
+     * @return the object
+     */
+    private Map<String, Object> parseObject() {
+      Map<String, Object> result = new LinkedHashMap<>();
+      expect('{');
+      skipWhitespace();
+      if (peek('}')) {
+        pos++;
+        return result;
+      }
+      do {
+        skipWhitespace();
+        String key = parseString();
+        skipWhitespace();
+        expect(':');
+        if (result.put(key, parseValue()) != null) {
+          throw error("duplicate key " + key);
+        }
+        skipWhitespace();
+      } while (consume(','));
+      expect('}');
+      return result;
+    }
+
+    /**
+     * Parses a JSON array.
+     *
+     * @return the array
+     */
+    private List<Object> parseArray() {
+      List<Object> result = new ArrayList<>();
+      expect('[');
+      skipWhitespace();
+      if (peek(']')) {
+        pos++;
+        return result;
+      }
+      do {
+        result.add(parseValue());
+        skipWhitespace();
+      } while (consume(','));
+      expect(']');
+      return result;
+    }
+
+    /**
+     * Parses a JSON string.
+     *
+     * @return the string
+     */
+    private String parseString() {
+      expect('"');
+      StringBuilder sb = new StringBuilder();
+      while (true) {
+        if (pos == text.length()) {
+          throw error("unterminated string");
+        }
+        char c = text.charAt(pos++);
+        if (c == '"') {
+          return sb.toString();
+        } else if (c < 0x20) {
+          throw error("unescaped control character");
+        } else if (c != '\\') {
+          sb.append(c);
+          continue;
+        }
+        if (pos == text.length()) {
+          throw error("unterminated string");
+        }
+        char escape = text.charAt(pos++);
+        switch (escape) {
+          case '"':
+          case '\\':
+          case '/':
+            sb.append(escape);
+            break;
+          case 'b':
+            sb.append('\b');
+            break;
+          case 'f':
+            sb.append('\f');
+            break;
+          case 'n':
+            sb.append('\n');
+            break;
+          case 'r':
+            sb.append('\r');
+            break;
+          case 't':
+            sb.append('\t');
+            break;
+          case 'u':
+            if (pos + 4 > text.length()) {
+              throw error("bad unicode escape");
+            }
+            try {
+              sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+            } catch (NumberFormatException e) {
+              throw error("bad unicode escape");
+            }
+            pos += 4;
+            break;
+          default:
+            throw error("bad escape");
+        }
+      }
+    }
+
+    /**
+     * Parses a JSON number.
+     *
+     * @return the number
+     */
+    private Double parseNumber() {
+      int start = pos;
+      while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+        pos++;
+      }
+      try {
+        return Double.valueOf(text.substring(start, pos));
+      } catch (NumberFormatException e) {
+        pos = start;
+        throw error("bad value");
+      }
+    }
+
+    /**
+     * Parses a literal such as {@code true}.
+     *
+     * @param literal the literal
+     * @param value the value of the literal
+     * @return {@code value}
+     */
+    private Object parseLiteral(String literal, Object value) {
+      if (!text.startsWith(literal, pos)) {
+        throw error("bad value");
+      }
+      pos += literal.length();
+      return value;
+    }
+
+    /** Skips whitespace. */
+    private void skipWhitespace() {
+      while (pos < text.length() && " \t\n\r".indexOf(text.charAt(pos)) >= 0) {
+        pos++;
+      }
+    }
+
+    /**
+     * Returns true if the next character is {@code c}.
+     *
+     * @param c a character
+     * @return true if the next character is {@code c}
+     */
+    private boolean peek(char c) {
+      return pos < text.length() && text.charAt(pos) == c;
+    }
+
+    /**
+     * Reads the next character if it is {@code c}.
+     *
+     * @param c a character
+     * @return true if the next character was {@code c}
+     */
+    private boolean consume(char c) {
+      if (peek(c)) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Reads the next character, which must be {@code c}.
+     *
+     * @param c a character
+     */
+    private void expect(char c) {
+      if (!consume(c)) {
+        throw error("expected '" + c + "'");
+      }
+    }
+
+    /**
+     * Returns an error about the text at the current position.
+     *
+     * @param problem a description of the problem
+     * @return an error about the text at the current position
+     */
+    private AssertionError error(String problem) {
+      return new AssertionError("Malformed JSON at offset " + pos + ": " + problem + "\n" + text);
+    }
+  }
+}
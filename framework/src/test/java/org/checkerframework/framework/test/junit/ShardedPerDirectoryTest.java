@@ -0,0 +1,88 @@
+package org.checkerframework.framework.test.junit;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+import org.checkerframework.framework.test.CheckerFrameworkPerDirectoryTest;
+import org.checkerframework.framework.test.TestConfiguration;
+import org.checkerframework.framework.test.TestConfigurationBuilder;
+import org.checkerframework.framework.test.TestUtilities;
+import org.checkerframework.framework.test.TypecheckExecutor;
+import org.checkerframework.framework.test.TypecheckResult;
+import org.checkerframework.framework.test.diagnostics.TestDiagnostic;
+import org.junit.Assert;
+
+/**
+ * Checks the test files once for each shard of {@code -AcheckerShard=I/N}. Every expected
+ * diagnostic must be issued by some shard, and no shard may issue an unexpected diagnostic.
+ */
+abstract class ShardedPerDirectoryTest extends CheckerFrameworkPerDirectoryTest {
+
+  /** The number of shards. */
+  private static final int SHARD_COUNT = 3;
+
+  /**
+   * Creates a new sharded test.
+   *
+   * @param testFiles the files containing test code, which will be type-checked
+   * @param checkerNames the binary names of the checkers to run
+   * @param testDir the path, relative to currentDir/tests, to the directory of test inputs
+   * @param checkerOptions options to pass to the compiler when running tests
+   */
+  protected ShardedPerDirectoryTest(
+      List<File> testFiles, List<String> checkerNames, String testDir, String... checkerOptions) {
+    super(testFiles, checkerNames, testDir, Collections.emptyList(), checkerOptions);
+  }
+
+  /**
+   * Returns the test files to check in each shard.
+   *
+   * @return the test files to check in each shard
+   */
+  protected List<File> getShardedTestFiles() {
+    return testFiles;
+  }
+
+  @Override
+  public void run() {
+    List<File> files = getShardedTestFiles();
+    if (files.isEmpty()) {
+      return;
+    }
+    List<TestDiagnostic> unexpected = new ArrayList<>();
+    List<TestDiagnostic> missing = null;
+    for (int shard = 0; shard < SHARD_COUNT; shard++) {
+      List<String> options = new ArrayList<>(checkerOptions);
+      options.add("-AcheckerShard=" + shard + "/" + SHARD_COUNT);
+      TestConfiguration config =
+          TestConfigurationBuilder.buildDefaultConfiguration(
+              new File(resolveTestDirectory(), testDir).getPath(),
+              files,
+              classpathExtra,
+              checkerNames,
+              options,
+              TestUtilities.getShouldEmitDebugInfo());
+      TypecheckResult result = new TypecheckExecutor().runTest(config);
+      unexpected.addAll(result.getUnexpectedDiagnostics());
+      if (missing == null) {
+        missing = new ArrayList<>(result.getMissingDiagnostics());
+      } else {
+        // A diagnostic is missing only if no shard issued it.
+        missing.retainAll(result.getMissingDiagnostics());
+      }
+    }
+    if (!unexpected.isEmpty() || !missing.isEmpty()) {
+      StringJoiner summary = new StringJoiner(System.lineSeparator());
+      summary.add("With " + SHARD_COUNT + " shards:");
+      for (TestDiagnostic diagnostic : unexpected) {
+        summary.add("  unexpected: " + diagnostic);
+      }
+      for (TestDiagnostic diagnostic : missing) {
+        summary.add("  missing: " + diagnostic);
+      }
+      Assert.fail(summary.toString());
+    }
+  }
+}
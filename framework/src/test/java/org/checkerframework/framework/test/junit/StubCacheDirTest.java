@@ -0,0 +1,59 @@
+package org.checkerframework.framework.test.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.checkerframework.framework.test.CheckerFrameworkPerDirectoryTest;
+import org.checkerframework.javacutil.SystemUtil;
+import org.junit.Assert;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Runs the tests of {@link ReportTest} with {@code -AstubCacheDir}, twice: the first compilation
+ * writes the index of the stub file, and the second one reads it and parses only the classes that
+ * it uses.
+ */
+public class StubCacheDirTest extends CheckerFrameworkPerDirectoryTest {
+
+  /** The directory passed to {@code -AstubCacheDir}. */
+  private static final Path STUB_CACHE_DIR = Paths.get("build", "tmp", "stub-cache-dir-test");
+
+  /**
+   * @param testFiles the files containing test code, which will be type-checked
+   */
+  public StubCacheDirTest(List<File> testFiles) {
+    super(
+        testFiles,
+        org.checkerframework.common.util.count.report.ReportChecker.class,
+        "report",
+        "-Astubs=tests/report/reporttest.astub",
+        "-AstubCacheDir=" + STUB_CACHE_DIR);
+  }
+
+  @Parameters
+  public static String[] getTestDirs() {
+    return new String[] {"report"};
+  }
+
+  @Override
+  public void run() {
+    deleteStubCacheDir();
+    super.run();
+    Assert.assertTrue(
+        "The first compilation did not write a stub index to " + STUB_CACHE_DIR,
+        Files.isDirectory(STUB_CACHE_DIR) && STUB_CACHE_DIR.toFile().list().length != 0);
+    super.run();
+  }
+
+  /** Deletes {@link #STUB_CACHE_DIR} and its contents, if it exists. */
+  private static void deleteStubCacheDir() {
+    try {
+      SystemUtil.deleteRecursively(STUB_CACHE_DIR);
+    } catch (IOException e) {
+      throw new Error(e);
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package org.checkerframework.framework.test.junit;
+
+import java.io.File;
+import java.util.List;
+import org.checkerframework.framework.test.CheckerFrameworkPerDirectoryTest;
+import org.checkerframework.framework.testchecker.timebudget.TimeBudgetChecker;
+import org.junit.runners.Parameterized.Parameters;
+
+/** Tests {@code -AclassTimeBudgetSeconds}. */
+public class TimeBudgetClassTest extends CheckerFrameworkPerDirectoryTest {
+
+  /**
+   * @param testFiles the files containing test code, which will be type-checked
+   */
+  public TimeBudgetClassTest(List<File> testFiles) {
+    super(
+        testFiles,
+        TimeBudgetChecker.class,
+        "timebudget-class",
+        "-Aquals=org.checkerframework.framework.testchecker.util.Encrypted,org.checkerframework.common.subtyping.qual.Unqualified",
+        "-AclassTimeBudgetSeconds=1");
+  }
+
+  @Parameters
+  public static String[] getTestDirs() {
+    return new String[] {"timebudget-class"};
+  }
+}
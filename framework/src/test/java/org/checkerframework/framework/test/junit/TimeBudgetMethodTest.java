@@ -0,0 +1,28 @@
+package org.checkerframework.framework.test.junit;
+
+import java.io.File;
+import java.util.List;
+import org.checkerframework.framework.test.CheckerFrameworkPerDirectoryTest;
+import org.checkerframework.framework.testchecker.timebudget.TimeBudgetChecker;
+import org.junit.runners.Parameterized.Parameters;
+
+/** Tests {@code -AmethodTimeBudgetSeconds}. */
+public class TimeBudgetMethodTest extends CheckerFrameworkPerDirectoryTest {
+
+  /**
+   * @param testFiles the files containing test code, which will be type-checked
+   */
+  public TimeBudgetMethodTest(List<File> testFiles) {
+    super(
+        testFiles,
+        TimeBudgetChecker.class,
+        "timebudget-method",
+        "-Aquals=org.checkerframework.framework.testchecker.util.Encrypted,org.checkerframework.common.subtyping.qual.Unqualified",
+        "-AmethodTimeBudgetSeconds=1");
+  }
+
+  @Parameters
+  public static String[] getTestDirs() {
+    return new String[] {"timebudget-method"};
+  }
+}
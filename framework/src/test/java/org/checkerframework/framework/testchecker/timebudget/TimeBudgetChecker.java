@@ -0,0 +1,19 @@
+package org.checkerframework.framework.testchecker.timebudget;
+
+import javax.annotation.processing.SupportedOptions;
+import org.checkerframework.common.basetype.BaseTypeChecker;
+import org.checkerframework.common.basetype.BaseTypeVisitor;
+
+/**
+ * A Subtyping Checker whose type-checking of a call to a method named {@code sleep} takes as many
+ * milliseconds as the call's integer literal argument, to test {@code -AmethodTimeBudgetSeconds}
+ * and {@code -AclassTimeBudgetSeconds}.
+ */
+@SupportedOptions({"quals", "qualDirs"})
+public class TimeBudgetChecker extends BaseTypeChecker {
+
+  @Override
+  protected BaseTypeVisitor<?> createSourceVisitor() {
+    return new TimeBudgetVisitor(this);
+  }
+}
@@ -0,0 +1,38 @@
+package org.checkerframework.framework.testchecker.timebudget;
+
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MethodInvocationTree;
+import org.checkerframework.common.basetype.BaseTypeChecker;
+import org.checkerframework.common.basetype.BaseTypeVisitor;
+import org.checkerframework.common.subtyping.SubtypingAnnotatedTypeFactory;
+import org.checkerframework.javacutil.TreeUtils;
+
+/** Visitor for the {@link TimeBudgetChecker}, which sleeps when it visits a call to sleep. */
+public final class TimeBudgetVisitor extends BaseTypeVisitor<SubtypingAnnotatedTypeFactory> {
+
+  public TimeBudgetVisitor(BaseTypeChecker checker) {
+    super(checker);
+  }
+
+  @Override
+  protected SubtypingAnnotatedTypeFactory createTypeFactory() {
+    return new SubtypingAnnotatedTypeFactory(checker);
+  }
+
+  @Override
+  public Void visitMethodInvocation(MethodInvocationTree tree, Void p) {
+    if (TreeUtils.methodName(tree).contentEquals("sleep") && tree.getArguments().size() == 1) {
+      ExpressionTree arg = tree.getArguments().get(0);
+      if (arg instanceof LiteralTree && ((LiteralTree) arg).getValue() instanceof Integer) {
+        try {
+          Thread.sleep((Integer) ((LiteralTree) arg).getValue());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+    // Scanning the arguments checks the time budget.
+    return super.visitMethodInvocation(tree, p);
+  }
+}
@@ -0,0 +1,206 @@
+package org.checkerframework.framework.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.javacutil.SystemUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests {@link CheckerDaemon}: its configuration, its protocol, and the requests it serves. */
+public class CheckerDaemonTest {
+
+  /** The configuration of the daemons that the tests start. */
+  private static final String CONFIGURATION = "test-configuration";
+
+  /** The directory that holds the daemon file and the source and class files. */
+  private Path dir;
+
+  /** The file that describes the daemon. */
+  private File daemonFile;
+
+  /** The daemon, or null if none has been started. */
+  private @Nullable CheckerDaemon daemon = null;
+
+  /** The thread in which the daemon runs, or null if none has been started. */
+  private @Nullable Thread daemonThread = null;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("checker-daemon-test");
+    daemonFile = dir.resolve("daemon").toFile();
+  }
+
+  @After
+  public void tearDown() throws IOException, InterruptedException {
+    if (daemon != null && daemonThread != null) {
+      daemon.close();
+      daemonThread.join();
+    }
+    SystemUtil.deleteRecursively(dir);
+  }
+
+  @Test
+  public void configuration() throws IOException {
+    Path jar = dir.resolve("checker.jar");
+    Files.write(jar, new byte[] {1, 2, 3});
+    List<String> java = Arrays.asList("java", "-Xmx1g");
+    List<String> classpath = Collections.singletonList(jar.toString());
+    String configuration = CheckerDaemon.getConfiguration(java, classpath);
+    Assert.assertEquals(configuration, CheckerDaemon.getConfiguration(java, classpath));
+    Assert.assertNotEquals(
+        configuration, CheckerDaemon.getConfiguration(Arrays.asList("java", "-Xmx2g"), classpath));
+
+    // A rebuilt checker.jar changes the configuration.
+    Files.write(jar, new byte[] {1, 2, 3, 4});
+    Assert.assertNotEquals(configuration, CheckerDaemon.getConfiguration(java, classpath));
+  }
+
+  @Test
+  public void processorLoaderKey() throws IOException {
+    Path jar = dir.resolve("processor.jar");
+    Files.write(jar, new byte[] {1, 2, 3});
+    String key = CheckerDaemon.getProcessorLoaderKey(jar.toString());
+    Assert.assertNotNull(key);
+    Assert.assertEquals(key, CheckerDaemon.getProcessorLoaderKey(jar.toString()));
+    Files.write(jar, new byte[] {1, 2, 3, 4});
+    Assert.assertNotEquals(key, CheckerDaemon.getProcessorLoaderKey(jar.toString()));
+
+    // The class loader for a directory is not cached.
+    Assert.assertNull(
+        CheckerDaemon.getProcessorLoaderKey(jar + File.pathSeparator + dir.toString()));
+  }
+
+  @Test
+  public void noDaemon() {
+    Assert.assertNull(CheckerDaemon.compile(daemonFile, CONFIGURATION, null, System.err));
+  }
+
+  @Test
+  public void compiles() throws IOException {
+    startDaemon(CheckerDaemon.REQUEST_TIMEOUT_MILLIS);
+    Assert.assertEquals(
+        Integer.valueOf(0), CheckerDaemon.compile(daemonFile, CONFIGURATION, null, System.err));
+
+    Path classes = Files.createDirectory(dir.resolve("classes"));
+    Path good = write("Good.java", "class Good {}");
+    StringBuilder output = new StringBuilder();
+    Assert.assertEquals(Integer.valueOf(0), compile(output, "-d", classes.toString(), good));
+    Assert.assertTrue(Files.exists(classes.resolve("Good.class")));
+
+    Path bad = write("Bad.java", "class Bad { int x = \"\"; }");
+    output.setLength(0);
+    Assert.assertEquals(Integer.valueOf(1), compile(output, "-d", classes.toString(), bad));
+    Assert.assertTrue(output.toString(), output.toString().contains("Bad.java:1: error:"));
+
+    output.setLength(0);
+    Assert.assertEquals(Integer.valueOf(2), compile(output, "-nosuchoption", good));
+  }
+
+  @Test
+  public void rejectsWrongConfiguration() throws IOException {
+    startDaemon(CheckerDaemon.REQUEST_TIMEOUT_MILLIS);
+    Assert.assertNull(CheckerDaemon.compile(daemonFile, "other", null, System.err));
+    // A second daemon with the same configuration does not start.
+    Assert.assertNull(
+        CheckerDaemon.start(daemonFile, CONFIGURATION, CheckerDaemon.REQUEST_TIMEOUT_MILLIS));
+  }
+
+  @Test
+  public void rejectsWrongToken() throws IOException {
+    startDaemon(CheckerDaemon.REQUEST_TIMEOUT_MILLIS);
+    List<String> lines = Files.readAllLines(daemonFile.toPath(), StandardCharsets.UTF_8);
+    File forgedFile = dir.resolve("forged").toFile();
+    List<String> forgedLines = new ArrayList<>(lines);
+    String token = lines.get(1);
+    forgedLines.set(1, (token.charAt(0) == '0' ? "1" : "0") + token.substring(1));
+    Files.write(forgedFile.toPath(), forgedLines, StandardCharsets.UTF_8);
+    Assert.assertNull(CheckerDaemon.compile(forgedFile, CONFIGURATION, null, System.err));
+    // The daemon still serves clients that have the token.
+    Assert.assertEquals(
+        Integer.valueOf(0), CheckerDaemon.compile(daemonFile, CONFIGURATION, null, System.err));
+  }
+
+  @Test(timeout = 60 * 1000)
+  public void dropsSilentClients() throws IOException {
+    startDaemon(200);
+    int port =
+        Integer.parseInt(
+            Files.readAllLines(daemonFile.toPath(), StandardCharsets.UTF_8).get(0).trim());
+    try (Socket silent = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      // The daemon drops the silent client after 200 milliseconds, and then serves this one.
+      Assert.assertEquals(
+          Integer.valueOf(0), CheckerDaemon.compile(daemonFile, CONFIGURATION, null, System.err));
+    }
+  }
+
+  /**
+   * Starts a daemon in a new thread.
+   *
+   * @param requestTimeoutMillis how long the daemon waits for the next part of a request
+   * @throws IOException if the daemon cannot be started
+   */
+  private void startDaemon(int requestTimeoutMillis) throws IOException {
+    CheckerDaemon newDaemon = CheckerDaemon.start(daemonFile, CONFIGURATION, requestTimeoutMillis);
+    Assert.assertNotNull(newDaemon);
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                newDaemon.run(daemonFile);
+              } catch (IOException e) {
+                throw new Error(e);
+              }
+            });
+    thread.start();
+    daemon = newDaemon;
+    daemonThread = thread;
+  }
+
+  /**
+   * Compiles in the daemon, without annotation processing.
+   *
+   * @param output receives the output of javac
+   * @param args the arguments to javac; a path is converted to a string
+   * @return the exit status of javac, or null if the daemon could not be used
+   */
+  private @Nullable Integer compile(StringBuilder output, Object... args) {
+    List<String> javacArgs = new ArrayList<>();
+    javacArgs.add("-proc:none");
+    for (Object arg : args) {
+      javacArgs.add(arg.toString());
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Integer result;
+    try (PrintStream out = new PrintStream(bytes, true)) {
+      result = CheckerDaemon.compile(daemonFile, CONFIGURATION, javacArgs, out);
+    }
+    output.append(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    return result;
+  }
+
+  /**
+   * Writes a file in {@link #dir}.
+   *
+   * @param name the name of the file
+   * @param lines the lines of the file
+   * @return the file
+   * @throws IOException if the file cannot be written
+   */
+  private Path write(String name, String... lines) throws IOException {
+    return Files.write(dir.resolve(name), Arrays.asList(lines), StandardCharsets.UTF_8);
+  }
+}
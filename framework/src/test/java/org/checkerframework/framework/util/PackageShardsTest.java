@@ -0,0 +1,223 @@
+package org.checkerframework.framework.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.checkerframework.javacutil.SystemUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests how {@link PackageShards} partitions source files by package. */
+public class PackageShardsTest {
+
+  /** The directory that holds the source files and the dependency graph. */
+  private Path dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("package-shards-test");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    SystemUtil.deleteRecursively(dir);
+  }
+
+  @Test
+  public void readPackage() throws IOException {
+    Assert.assertEquals("a.b", PackageShards.readPackage(write("A.java", "package a.b;")));
+    Assert.assertEquals(
+        "a.b",
+        PackageShards.readPackage(
+            write(
+                "B.java",
+                "// package x;",
+                "/* package y; */",
+                "package a",
+                "    . b ;",
+                "class B {}")));
+    Assert.assertEquals(
+        "p",
+        PackageShards.readPackage(
+            write(
+                "package-info.java",
+                "/** Docs. */",
+                "@Deprecated",
+                "@SuppressWarnings({\"a\", \"package q;\"})",
+                "package p;")));
+    Assert.assertEquals(
+        "", PackageShards.readPackage(write("C.java", "import java.util.List;", "class C {}")));
+    // A package declaration after a type declaration is not one.
+    Assert.assertEquals("", PackageShards.readPackage(write("D.java", "class D {}", "package d;")));
+    // The package is found even if the rest of the file is malformed.
+    Assert.assertEquals(
+        "e", PackageShards.readPackage(write("E.java", "package e;", "class E { \"")));
+  }
+
+  @Test
+  public void layers() throws IOException {
+    PackageShards shards = createPackageShards();
+    Assert.assertEquals(3, shards.getLayerCount());
+    Assert.assertEquals(set("", "a"), shards.getLayerPackages(0));
+    Assert.assertEquals(set("b"), shards.getLayerPackages(1));
+    Assert.assertEquals(set("c", "d"), shards.getLayerPackages(2));
+    Assert.assertEquals(
+        Arrays.asList(
+            Collections.singletonList(""),
+            Collections.singletonList("a"),
+            Collections.singletonList("b"),
+            Arrays.asList("c", "d")),
+        sorted(shards.getStronglyConnectedComponents()));
+    // c and d depend on each other, so they are in one shard.
+    Assert.assertEquals(
+        Collections.singletonList(Arrays.asList(path("c/C.java"), path("d/D.java"))),
+        shards.getShards(2, Collections.emptySet(), 4));
+    Assert.assertEquals(2, shards.getShards(0, Collections.emptySet(), 4).size());
+    Assert.assertEquals(1, shards.getShards(0, Collections.emptySet(), 1).size());
+  }
+
+  @Test
+  public void dependents() throws IOException {
+    PackageShards shards = createPackageShards();
+    Assert.assertEquals(set("b", "c", "d"), shards.getDependents(set("a")));
+    Assert.assertEquals(set("c", "d"), shards.getDependents(set("d")));
+    Assert.assertEquals(set(), shards.getDependents(set("")));
+    Set<String> blocked = shards.getDependents(set("a"));
+    Assert.assertEquals(Collections.emptyList(), shards.getShards(1, blocked, 4));
+    Assert.assertEquals(Collections.emptyList(), shards.getShards(2, blocked, 4));
+    Assert.assertEquals(
+        Collections.singletonList(Collections.singletonList(path("b/B.java"))),
+        shards.getShards(1, shards.getDependents(set("")), 4));
+  }
+
+  @Test
+  public void arguments() throws IOException {
+    PackageShards shards = createPackageShards();
+    Assert.assertEquals(set("a"), shards.getPackages(Collections.singletonList(path("a/A.java"))));
+    Assert.assertEquals(
+        Arrays.asList(
+            "-d",
+            path("out"),
+            "-classpath",
+            "lib.jar" + File.pathSeparator + path("out"),
+            "-sourcepath",
+            "",
+            path("a/A.java")),
+        shards.getArguments(Collections.singletonList(path("a/A.java"))));
+  }
+
+  @Test
+  public void balance() {
+    List<List<String>> groups =
+        Arrays.asList(
+            Arrays.asList("a1"),
+            Arrays.asList("b1", "b2", "b3"),
+            Arrays.asList("c1", "c2"),
+            Arrays.asList("d1", "d2"));
+    Assert.assertEquals(
+        Arrays.asList(Arrays.asList("b1", "b2", "b3", "a1"), Arrays.asList("c1", "c2", "d1", "d2")),
+        PackageShards.balance(groups, 2));
+    Assert.assertEquals(4, PackageShards.balance(groups, 10).size());
+    Assert.assertEquals(Collections.emptyList(), PackageShards.balance(Collections.emptyList(), 2));
+  }
+
+  @Test
+  public void expandArgFiles() throws IOException {
+    String argFile = write("args", "-d out", "  \"a b.java\"\t'c.java'", "d.java");
+    Assert.assertEquals(
+        Arrays.asList("-g", "-d", "out", "a b.java", "c.java", "d.java", "e.java"),
+        PackageShards.expandArgFiles(Arrays.asList("-g", "@" + argFile, "e.java")));
+  }
+
+  /**
+   * Returns a PackageShards for a program whose packages are "", a, b, c, and d. b depends on a, c
+   * depends on b, and c and d depend on each other.
+   *
+   * @return a PackageShards for the program
+   * @throws IOException if a file cannot be written or read
+   */
+  private PackageShards createPackageShards() throws IOException {
+    Files.createDirectories(dir.resolve("a"));
+    Files.createDirectories(dir.resolve("b"));
+    Files.createDirectories(dir.resolve("c"));
+    Files.createDirectories(dir.resolve("d"));
+    List<String> args = new ArrayList<>();
+    args.add("-d");
+    args.add(path("out"));
+    args.add("-classpath");
+    args.add("lib.jar");
+    args.add("-sourcepath");
+    args.add("src");
+    args.add(write("Main.java", "class Main {}"));
+    args.add(write("a/A.java", "package a;", "public class A {}"));
+    args.add(write("b/B.java", "package b;", "public class B extends a.A {}"));
+    args.add(write("c/C.java", "package c;", "public class C extends b.B { d.D d; }"));
+    args.add(write("d/D.java", "package d;", "public class D { c.C c; }"));
+    String dependencyGraph =
+        write(
+            "deps.txt",
+            "b.B -> a.A  classes",
+            "c.C -> b.B  classes",
+            "c.C -> d.D  classes",
+            "d.D -> c.C  classes",
+            "d.D -> d.D",
+            "c -> java.lang.Object  java.base",
+            "not a dependency");
+    return new PackageShards(args, new File(dependencyGraph));
+  }
+
+  /**
+   * Writes a file in {@link #dir}.
+   *
+   * @param name the name of the file, relative to {@link #dir}
+   * @param lines the lines of the file
+   * @return the path of the file
+   * @throws IOException if the file cannot be written
+   */
+  private String write(String name, String... lines) throws IOException {
+    return Files.write(dir.resolve(name), Arrays.asList(lines), StandardCharsets.UTF_8).toString();
+  }
+
+  /**
+   * Returns the path of a file in {@link #dir}.
+   *
+   * @param name the name of the file, relative to {@link #dir}
+   * @return the path of the file
+   */
+  private String path(String name) {
+    return dir.resolve(name).toString();
+  }
+
+  /**
+   * Returns a sorted set of strings.
+   *
+   * @param strings the strings
+   * @return a sorted set of {@code strings}
+   */
+  private static Set<String> set(String... strings) {
+    return new TreeSet<>(Arrays.asList(strings));
+  }
+
+  /**
+   * Returns the given components, sorted by their first package.
+   *
+   * @param components strongly connected components, each a non-empty sorted list of packages
+   * @return the components, sorted by their first package
+   */
+  private static List<List<String>> sorted(List<List<String>> components) {
+    List<List<String>> result = new ArrayList<>(components);
+    result.sort(Comparator.comparing(component -> component.get(0)));
+    return result;
+  }
+}
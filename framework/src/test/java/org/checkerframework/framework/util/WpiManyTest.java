@@ -0,0 +1,313 @@
+package org.checkerframework.framework.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.checkerframework.javacutil.SystemUtil;
+import org.checkerframework.javacutil.UserError;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link WpiMany}: its command-line arguments, how it classifies and summarizes the results
+ * of WPI, and that the summary is the one that {@code wpi-summary.sh} prints.
+ */
+public class WpiManyTest {
+
+  /** The number of bytes in a gigabyte. */
+  private static final long GB = 1024L * 1024L * 1024L;
+
+  /** The directory that holds the input file, the {@code wpi.sh} script, and the output. */
+  private Path dir;
+
+  /** The {@code wpi.sh} script, which is never run. */
+  private String wpiScript;
+
+  /** The input file. */
+  private String inList;
+
+  /** The output directory. */
+  private String outDir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("wpi-many-test");
+    wpiScript = write("wpi.sh", "exit 1");
+    inList = write("projects.txt", "https://github.com/user/repo abc123");
+    outDir = dir.resolve("out").toString();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    SystemUtil.deleteRecursively(dir);
+  }
+
+  @Test
+  public void arguments() {
+    WpiMany wpiMany =
+        new WpiMany(
+            args(
+                "-t",
+                "100",
+                "-g",
+                "/gradle",
+                "-j",
+                "3",
+                "-T",
+                "3600",
+                "--",
+                "--checker",
+                "nullness"));
+    Assert.assertEquals(3, wpiMany.parallelism);
+    File repoDir = new File("repo");
+    Assert.assertEquals(
+        Arrays.asList(
+            "timeout",
+            "--kill-after=60s",
+            "3600",
+            "/bin/bash",
+            wpiScript,
+            "-d",
+            repoDir.getPath(),
+            "-t",
+            "100",
+            "-g",
+            "/gradle",
+            "--",
+            "--checker",
+            "nullness"),
+        wpiMany.getWpiCommand(repoDir));
+
+    wpiMany = new WpiMany(args("-s"));
+    Assert.assertTrue(wpiMany.parallelism >= 1);
+    Assert.assertEquals(
+        Arrays.asList("/bin/bash", wpiScript, "-d", repoDir.getPath(), "-g", ".gradle", "--"),
+        wpiMany.getWpiCommand(repoDir));
+  }
+
+  @Test
+  public void invalidArguments() {
+    assertUserError(
+        "You must specify an output directory using the -o argument.",
+        new String[] {"-i", inList, "-w", wpiScript});
+    assertUserError(
+        "You must specify an input file using the -i argument.",
+        new String[] {"-o", outDir, "-w", wpiScript});
+    assertUserError("Missing argument for -i", new String[] {"-o", outDir, "-i"});
+    assertUserError("Unknown argument: -x", args("-x", "1"));
+    assertUserError(
+        "The argument to -j must be a positive integer, but it is: 0", args("-j", "0"));
+    assertUserError(
+        "The argument to -m must be a positive integer, but it is: four", args("-m", "four"));
+    assertUserError(
+        "The argument to -T must be a positive integer, but it is: -1", args("-T", "-1"));
+    String missing = dir.resolve("missing.sh").toString();
+    // The last -w wins.
+    assertUserError("File does not exist: " + missing, args("-w", missing));
+  }
+
+  @Test
+  public void defaultParallelism() {
+    Assert.assertEquals(8, WpiMany.defaultParallelism(8, 64 * GB, 4));
+    Assert.assertEquals(4, WpiMany.defaultParallelism(8, 16 * GB, 4));
+    Assert.assertEquals(3, WpiMany.defaultParallelism(8, 15 * GB, 4));
+    // At least one project is processed, even if it does not fit in memory.
+    Assert.assertEquals(1, WpiMany.defaultParallelism(8, 2 * GB, 4));
+    // Without the size of the memory, the number of processors is used.
+    Assert.assertEquals(8, WpiMany.defaultParallelism(8, -1, 4));
+  }
+
+  @Test
+  public void collectResults() throws IOException {
+    WpiMany wpiMany = new WpiMany(args());
+    File resultsDir = new File(outDir + "-results");
+    Files.createDirectories(resultsDir.toPath());
+
+    WpiMany.Project completed = new WpiMany.Project("https://github.com/user/completed", "1");
+    write("out/completed-1/completed/dljc-out/wpi-stdout.log", "inference done");
+    write("out/completed-1/completed/dljc-out/typecheck.out", "Test.java:1: error: (return)");
+    Assert.assertEquals(WpiMany.Outcome.COMPLETED, wpiMany.collectResults(completed, false));
+    Assert.assertEquals(
+        Collections.singletonList("inference done"),
+        read(new File(resultsDir, "completed-1-wpi-stdout.log")));
+    Assert.assertEquals(
+        Collections.singletonList("Test.java:1: error: (return)"),
+        read(new File(resultsDir, "completed-1-typecheck.out")));
+
+    WpiMany.Project noOutput = new WpiMany.Project("https://github.com/user/nooutput", "2");
+    write("out/nooutput-2/nooutput/dljc-out/wpi-stdout.log", "dljc timed out for nooutput");
+    Assert.assertEquals(WpiMany.Outcome.FAILED, wpiMany.collectResults(noOutput, false));
+
+    WpiMany.Project unusable = new WpiMany.Project("https://github.com/user/unusable", "3");
+    write("out/unusable-3/unusable/.cannot-run-wpi", "");
+    Assert.assertEquals(WpiMany.Outcome.UNUSABLE, wpiMany.collectResults(unusable, false));
+    // Without -s, an unusable project is deleted.
+    Assert.assertFalse(Files.exists(dir.resolve("out/unusable-3")));
+
+    WpiMany.Project timedOut = new WpiMany.Project("https://github.com/user/timedout", "4");
+    Assert.assertEquals(WpiMany.Outcome.TIMED_OUT, wpiMany.collectResults(timedOut, true));
+    Assert.assertEquals(
+        Collections.singletonList("wpi-many task timed out for timedout-4"),
+        read(new File(resultsDir, "timedout-4-wpi-stdout.log")));
+  }
+
+  @Test
+  public void summarize() throws IOException {
+    Files.createDirectories(dir.resolve("results"));
+    String available = write("results/a.log", "inference done", "dljc timed out for a");
+    write("results/b.log", "no build file found for b");
+    write(
+        "results/c.log",
+        "dljc could not run the build successfully",
+        "dljc could not run the Checker Framework");
+    String timedOut = write("results/d.log", "dljc timed out for d");
+    write("results/e.log");
+    // As with "grep -vl", an empty line is a line that contains none of the messages.
+    String emptyLine = write("results/f.log", "no build file found for f", "");
+    write("results/typecheck.out", "not a log");
+    File resultsDir = dir.resolve("results").toFile();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    List<File> result;
+    try (PrintStream out = new PrintStream(bytes, true, "UTF-8")) {
+      result = WpiMany.summarize(resultsDir, out);
+    }
+    Assert.assertEquals(Arrays.asList(new File(available), new File(emptyLine)), result);
+    Assert.assertEquals(
+        Arrays.asList(available, emptyLine),
+        read(new File(resultsDir, "results_available.txt")));
+    // What wpi-summary.sh prints for these files.
+    Assert.assertEquals(
+        lines(
+            "number of projects: 6 (100%)",
+            "no maven or gradle build file: 2 (~33%)",
+            "build failed: 2 (~33%)",
+            "timed out: 2 (~33%)",
+            "",
+            "timeouts:",
+            "",
+            available,
+            timedOut,
+            "",
+            "results are available for these projects: ",
+            "",
+            available,
+            emptyLine,
+            "",
+            "No LoC count found for projects with available results"),
+        new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void summarizeWithoutResults() throws IOException {
+    Files.createDirectories(dir.resolve("results"));
+    String timedOut = write("results/a.log", "wpi-many task timed out for a");
+    write("results/loc.txt", "Java 100");
+    File resultsDir = dir.resolve("results").toFile();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    List<File> result;
+    try (PrintStream out = new PrintStream(bytes, true, "UTF-8")) {
+      result = WpiMany.summarize(resultsDir, out);
+    }
+    Assert.assertEquals(Collections.emptyList(), result);
+    // Unlike wpi-summary.sh, which only knows the message of dljc, this counts a project that -T
+    // stopped as timed out.
+    Assert.assertEquals(
+        lines(
+            "number of projects: 1 (100%)",
+            "no maven or gradle build file: 0 (~0%)",
+            "build failed: 0 (~0%)",
+            "timed out: 1 (~100%)",
+            "",
+            "timeouts:",
+            "",
+            timedOut,
+            "",
+            "results are available for these projects: ",
+            "",
+            "",
+            "",
+            "LoC of projects with available results:",
+            "Java 100"),
+        new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns command-line arguments that give the input file, the output directory, and the {@code
+   * wpi.sh} script, followed by the given arguments.
+   *
+   * @param moreArgs more arguments
+   * @return the command-line arguments
+   */
+  private String[] args(String... moreArgs) {
+    List<String> result =
+        new ArrayList<>(Arrays.asList("-o", outDir, "-i", inList, "-w", wpiScript));
+    result.addAll(Arrays.asList(moreArgs));
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Asserts that creating a WpiMany from the given arguments throws a {@link UserError}.
+   *
+   * @param message the expected message of the error
+   * @param args the command-line arguments
+   */
+  private static void assertUserError(String message, String[] args) {
+    try {
+      new WpiMany(args);
+      Assert.fail("No error for " + Arrays.toString(args));
+    } catch (UserError e) {
+      Assert.assertEquals(message, e.getMessage());
+    }
+  }
+
+  /**
+   * Writes a file in {@link #dir}, creating the directories that contain it.
+   *
+   * @param name the name of the file, relative to {@link #dir}
+   * @param lines the lines of the file
+   * @return the path of the file
+   * @throws IOException if the file cannot be written
+   */
+  private String write(String name, String... lines) throws IOException {
+    Path file = dir.resolve(name);
+    Files.createDirectories(file.getParent());
+    return Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8).toString();
+  }
+
+  /**
+   * Reads the lines of a file.
+   *
+   * @param file the file
+   * @return the lines of the file
+   * @throws IOException if the file cannot be read
+   */
+  private static List<String> read(File file) throws IOException {
+    return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the given lines, each followed by a line separator.
+   *
+   * @param lines the lines
+   * @return the text that consists of the given lines
+   */
+  private static String lines(String... lines) {
+    List<String> result = new ArrayList<>();
+    for (String line : lines) {
+      result.add(line + System.lineSeparator());
+    }
+    return String.join("", result);
+  }
+}
@@ -0,0 +1,30 @@
+// Run with -AclassTimeBudgetSeconds=1.  The TimeBudgetChecker takes 0.7 seconds to type-check a
+// call to sleep(700).
+
+import org.checkerframework.framework.testchecker.util.Encrypted;
+
+// :: warning: (class.time.budget.exceeded)
+public class ClassTimeBudget {
+
+  static void sleep(int millis) {}
+
+  void slow1() {
+    sleep(700);
+  }
+
+  void slow2() {
+    sleep(700);
+  }
+
+  // The rest of the class is not type-checked.
+  void unchecked(String s) {
+    @Encrypted String e = s;
+  }
+}
+
+class OtherClass {
+  void checked(String s) {
+    // :: error: (assignment)
+    @Encrypted String e = s;
+  }
+}
@@ -0,0 +1,21 @@
+// Run with -AmethodTimeBudgetSeconds=1.  The TimeBudgetChecker takes 1.5 seconds to type-check a
+// call to sleep(1500).
+
+import org.checkerframework.framework.testchecker.util.Encrypted;
+
+public class MethodTimeBudget {
+
+  static void sleep(int millis) {}
+
+  // :: warning: (method.time.budget.exceeded)
+  void slow(String s) {
+    sleep(1500);
+    // The rest of the method is not type-checked.
+    @Encrypted String e = s;
+  }
+
+  void fast(String s) {
+    // :: error: (assignment)
+    @Encrypted String e = s;
+  }
+}
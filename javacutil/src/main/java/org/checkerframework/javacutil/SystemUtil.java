@@ -9,10 +9,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.annotation.processing.ProcessingEnvironment;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.common.value.qual.IntVal;
@@ -53,6 +59,27 @@ public class SystemUtil {
     }
   }
 
+  /**
+   * Deletes a file or directory and everything in it. Does nothing if it does not exist. Symbolic
+   * links are deleted, not followed.
+   *
+   * @param path the file or directory to delete
+   * @throws IOException if a file cannot be deleted
+   */
+  public static void deleteRecursively(Path path) throws IOException {
+    if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+      return;
+    }
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(path)) {
+      // Files before the directories that contain them.
+      paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+    }
+    for (Path p : paths) {
+      Files.delete(p);
+    }
+  }
+
   /**
    * Calls {@code InputStream.available()}, but returns null instead of throwing an IOException.
    *